@@ -0,0 +1,80 @@
+package ch.epfl.imhof;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives a distinct integer id to the strings used as keys of
+ * {@link Attributes} and to the values looked for by filters, so that
+ * attributes can be compared without comparing strings.
+ * <p>
+ * Keys are given their ids when the first {@link Attributes} containing them
+ * is built, and values only when {@link #of} is called for them (by a filter,
+ * for example), so that the table does not grow with the names, references or
+ * other free values of the map. Ids are kept as long as the program runs, and
+ * are never negative. The <code>null</code> string has the id <code>0</code>.
+ * 
+ * @author Matthieu Bovel (250300)
+ */
+public final class AttributeIds {
+    private static final int                                NULL_ID = 0;
+    private static final ConcurrentHashMap<String, Integer> IDS     = new ConcurrentHashMap<>();
+    private static final AtomicInteger                      NEXT_ID = new AtomicInteger(NULL_ID + 1);
+    
+    // Incremented after each new id is in the table, so that an id that was
+    // not found before a change of count() can be found after it.
+    private static final AtomicInteger                      COUNT   = new AtomicInteger();
+    
+    private AttributeIds() {
+    }
+    
+    /**
+     * Returns the id of the given string, giving it a new one if it has none
+     * yet.
+     * 
+     * @param string
+     *            the string whose id to return, or <code>null</code>
+     * @return the id of <code>string</code>
+     */
+    public static int of(String string) {
+        if (string == null) {
+            return NULL_ID;
+        }
+        
+        Integer id = IDS.get(string);
+        
+        if (id == null) {
+            id = IDS.computeIfAbsent(string, s -> NEXT_ID.getAndIncrement());
+            COUNT.incrementAndGet();
+        }
+        
+        return id;
+    }
+    
+    /**
+     * Returns the id of the given string, or <code>-1</code> if it has none.
+     * 
+     * @param string
+     *            the string whose id to return, or <code>null</code>
+     * @return the id of <code>string</code>, or <code>-1</code>
+     */
+    public static int find(String string) {
+        if (string == null) {
+            return NULL_ID;
+        }
+        
+        Integer id = IDS.get(string);
+        
+        return id == null ? -1 : id;
+    }
+    
+    /**
+     * Returns a number that changes each time a new id is given, so that ids
+     * that were not found can be looked for again only when it changed.
+     * 
+     * @return a number that changes each time a new id is given
+     */
+    static int count() {
+        return COUNT.get();
+    }
+}
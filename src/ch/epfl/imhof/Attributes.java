@@ -1,19 +1,38 @@
 package ch.epfl.imhof;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * The <code>Attributes</code> class maps strings keys to string or integer
  * values. It can be associated to any object with {@link Attributed}.
+ * <p>
+ * Keys are also stored as their {@link AttributeIds}, sorted by key id, and
+ * values as their ids if they have one (see {@link #valueId}), so that an
+ * attribute can be looked up and compared without hashing strings, and the
+ * value of the <code>layer</code> attribute is parsed once, when the
+ * attributes are built.
  * 
  * @author Matthieu Bovel (250300)
- *
+ * 
  */
 public final class Attributes {
-    private final Map<String, String> attributes;
+    private static final String LAYER = "layer";
+    
+    private final int[]    keyIds;
+    private final int[]    valueIds;
+    private final String[] keys;
+    private final String[] values;
+    private final boolean  hasLayer;
+    private final int      layer;
+    
+    // The value of AttributeIds.count() when the ids of the values were last
+    // looked for: values without an id can only have one if it changed.
+    private volatile int   valueIdsCount = -1;
     
     /**
      * Constructs a new <code>Attributes</code> object from a
@@ -22,8 +41,44 @@ public final class Attributes {
      * @param attributes
      */
     public Attributes(Map<String, String> attributes) {
-        this.attributes = Collections
-            .unmodifiableMap(new HashMap<>(attributes));
+        int size = attributes.size();
+        long[] order = new long[size];
+        String[] unsortedKeys = attributes.keySet().toArray(new String[size]);
+        
+        for (int i = 0; i != size; ++i) {
+            order[i] = (long) AttributeIds.of(unsortedKeys[i]) << 32 | i;
+        }
+        
+        Arrays.sort(order);
+        
+        keyIds = new int[size];
+        valueIds = new int[size];
+        keys = new String[size];
+        values = new String[size];
+        
+        for (int i = 0; i != size; ++i) {
+            String key = unsortedKeys[(int) order[i]];
+            
+            keyIds[i] = (int) (order[i] >>> 32);
+            keys[i] = key;
+            values[i] = attributes.get(key);
+            valueIds[i] = -1;
+        }
+        
+        int layerIndex = indexOf(AttributeIds.of(LAYER));
+        int parsedLayer = 0;
+        
+        if (layerIndex != -1) {
+            try {
+                parsedLayer = Integer.parseInt(values[layerIndex]);
+            }
+            catch (NumberFormatException e) {
+                layerIndex = -1;
+            }
+        }
+        
+        hasLayer = layerIndex != -1;
+        layer = parsedLayer;
     }
     
     /**
@@ -34,7 +89,7 @@ public final class Attributes {
      *         attributes.
      */
     public Boolean isEmpty() {
-        return attributes.isEmpty();
+        return keys.length == 0;
     }
     
     /**
@@ -47,7 +102,29 @@ public final class Attributes {
      *         specified attribute key
      */
     public Boolean contains(String key) {
-        return attributes.containsKey(key);
+        return indexOf(key) != -1;
+    }
+    
+    /**
+     * Returns <code>true</code> if this set of attributes contains an attribute
+     * whose key has the given id.
+     * 
+     * @param keyId
+     *            the {@link AttributeIds id} of the attribute key
+     * @return <code>true</code> if this set of attributes contains the
+     *         specified attribute key
+     */
+    public boolean contains(int keyId) {
+        return indexOf(keyId) != -1;
+    }
+    
+    /**
+     * Returns the keys of all the attributes of this set of attributes.
+     * 
+     * @return an unmodifiable {@link Set} of the attribute keys
+     */
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(keys)));
     }
     
     /**
@@ -61,7 +138,44 @@ public final class Attributes {
      *         exist.
      */
     public String get(String key) {
-        return attributes.get(key);
+        int index = indexOf(key);
+        
+        return index == -1 ? null : values[index];
+    }
+    
+    /**
+     * Returns the {@link AttributeIds id} of the value associated to the key
+     * with the given id, or <code>-1</code> if an attribute with this key does
+     * not exist or if its value has no id.
+     * 
+     * @param keyId
+     *            the {@link AttributeIds id} of the attribute key
+     * @return the id of the value of the specified attribute, or
+     *         <code>-1</code> if an attribute with the given key does not
+     *         exist
+     */
+    public int valueId(int keyId) {
+        int index = indexOf(keyId);
+        
+        if (index == -1) {
+            return -1;
+        }
+        
+        int count = AttributeIds.count();
+        
+        // Several threads can do this at the same time, as they all write the
+        // same ids.
+        if (count != valueIdsCount) {
+            for (int i = 0; i != valueIds.length; ++i) {
+                if (valueIds[i] == -1) {
+                    valueIds[i] = AttributeIds.find(values[i]);
+                }
+            }
+            
+            valueIdsCount = count;
+        }
+        
+        return valueIds[index];
     }
     
     /**
@@ -78,7 +192,9 @@ public final class Attributes {
      *         not exist.
      */
     public String get(String key, String defaultValue) {
-        return attributes.getOrDefault(key, defaultValue);
+        int index = indexOf(key);
+        
+        return index == -1 ? defaultValue : values[index];
     }
     
     /**
@@ -95,14 +211,20 @@ public final class Attributes {
      *         not exist.
      */
     public int get(String key, int defaultValue) {
-        if (!attributes.containsKey(key)) {
+        if (LAYER.equals(key)) {
+            return layer(defaultValue);
+        }
+        
+        int index = indexOf(key);
+        
+        if (index == -1) {
             return defaultValue;
         }
         
         int i;
         
         try {
-            i = Integer.parseInt(attributes.get(key));
+            i = Integer.parseInt(values[index]);
         }
         catch (NumberFormatException e) {
             return defaultValue;
@@ -111,6 +233,20 @@ public final class Attributes {
         return i;
     }
     
+    /**
+     * Returns the integer value of the <code>layer</code> attribute, parsed
+     * when these attributes were built, or <code>defaultValue</code> if it does
+     * not exist or is not an integer. This is the same as
+     * <code>get("layer", defaultValue)</code>.
+     * 
+     * @param defaultValue
+     *            the default layer
+     * @return the layer, or <code>defaultValue</code>
+     */
+    public int layer(int defaultValue) {
+        return hasLayer ? layer : defaultValue;
+    }
+    
     /**
      * Constructs a new <code>Attributes</code> object from this one containing
      * only the attributes whose key are in <code>keys</code>.
@@ -124,19 +260,39 @@ public final class Attributes {
         Builder builder = new Builder();
         
         for (String key : keysToKeep) {
-            if (attributes.containsKey(key)) {
-                builder.put(key, attributes.get(key));
+            int index = indexOf(key);
+            
+            if (index != -1) {
+                builder.put(key, values[index]);
             }
         }
         
         return builder.build();
     }
     
+    private int indexOf(String key) {
+        int keyId = AttributeIds.find(key);
+        
+        return keyId == -1 ? -1 : indexOf(keyId);
+    }
+    
+    // There are usually only a few attributes, so a linear search is faster
+    // than a binary one.
+    private int indexOf(int keyId) {
+        for (int i = 0; i != keyIds.length && keyIds[i] <= keyId; ++i) {
+            if (keyIds[i] == keyId) {
+                return i;
+            }
+        }
+        
+        return -1;
+    }
+    
     /**
      * Class that helps in the construction of {@link Attributes}.
      * 
      * @author Matthieu Bovel (250300)
-     *
+     * 
      */
     public static class Builder {
         private final Map<String, String> attributes = new HashMap<String, String>();
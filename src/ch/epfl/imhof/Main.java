@@ -2,7 +2,9 @@ package ch.epfl.imhof;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import javax.imageio.ImageIO;
 
@@ -13,12 +15,13 @@ import ch.epfl.imhof.dem.HGTDigitalElevationModel;
 import ch.epfl.imhof.dem.ReliefShader;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.Vector3d;
-import ch.epfl.imhof.osm.OSMMap;
 import ch.epfl.imhof.osm.OSMMapReader;
 import ch.epfl.imhof.osm.OSMToGeoTransformer;
 import ch.epfl.imhof.painting.Color;
 import ch.epfl.imhof.painting.Java2DCanvas;
+import ch.epfl.imhof.painting.SvgCanvas;
 import ch.epfl.imhof.painting.SwissPainter;
+import ch.epfl.imhof.painting.TiledJava2DCanvas;
 import ch.epfl.imhof.projection.CH1903Projection;
 
 /**
@@ -31,6 +34,12 @@ import ch.epfl.imhof.projection.CH1903Projection;
 public final class Main {
     private static CH1903Projection projection = new CH1903Projection();
     
+    // Distance (in meters) up to which a line outside the map (or a tile of
+    // it) can still be seen on it, because of the width of its stroke. At a
+    // 1:25'000 scale, this is 8 mm on paper, more than the reach of any stroke
+    // of the SwissPainter.
+    private static final double VISIBLE_MARGIN = 200;
+    
     /**
      * Prints a map of a part of Switzerland, given the following arguments
      * (separated by spaces in command line) are:
@@ -42,7 +51,12 @@ public final class Main {
      * <li>longitude of the top right point of the map (in degrees),
      * <li>latitude of the top right point of the map (in degrees),
      * <li>resolution of the output (in dpi),
-     * <li>path of the output PNG file.
+     * <li>path of the output PNG file, or of an SVG file (if it ends with
+     * <code>.svg</code>), in which case the relief is not drawn,
+     * <li>optionally, path of a map cache file (see {@link MapCache}), in
+     * which the map read from the OSM file is kept, so that it does not have
+     * to be read again the next time. It is made again when the OSM file
+     * changes.
      * 
      * @see <a href="http://cs108.epfl.ch/p00_intro.html">Introduction to the
      *      project (french)</p>
@@ -50,7 +64,7 @@ public final class Main {
      *            an array of arguments, see detailed description before
      * @throws IOException
      *             if there is a problem when trying to read or write a file
-     *             (either OSM, HGT or the output file)
+     *             (either OSM, HGT, the output file or the map cache file)
      * @throws SAXException
      *             if there is a problem when parsing the OSM XML file
      */
@@ -65,6 +79,7 @@ public final class Main {
             Math.toRadians(Double.parseDouble(args[5])));
         int resolution = Integer.parseInt(args[6]);
         String outputFile = args[7];
+        String cacheFile = args.length > 8 ? args[8] : null;
         
         // Get bottom left and top right points in CH1903 coordinate system
         Point blProjected = projection.project(bl);
@@ -76,18 +91,37 @@ public final class Main {
         int width = (int) Math.round((trProjected.x() - blProjected.x())
                 / (trProjected.y() - blProjected.y()) * height);
         
-        // Read OSM File and paint it
-        Map map = osmGzFileToMap(osmFile);
+        // Read OSM File (or its cache) and paint it
+        Map map = cacheFile == null
+                ? osmGzFileToMap(osmFile)
+                : osmGzFileToMap(osmFile, new File(cacheFile));
         
-        Java2DCanvas canvas = new Java2DCanvas(
+        if (outputFile.endsWith(".svg")) {
+            try (OutputStream stream = new FileOutputStream(outputFile);
+                    SvgCanvas svg = new SvgCanvas(
+                        blProjected,
+                        trProjected,
+                        width,
+                        height,
+                        resolution,
+                        Color.WHITE,
+                        stream)) {
+                SwissPainter.painter().drawMap(map, svg);
+            }
+            
+            return;
+        }
+        
+        TiledJava2DCanvas canvas = new TiledJava2DCanvas(
             blProjected,
             trProjected,
             width,
             height,
             resolution,
-            Color.WHITE);
+            Color.WHITE,
+            Java2DCanvas.SIMPLIFICATION_TOLERANCE);
         
-        SwissPainter.painter().drawMap(map, canvas);
+        canvas.drawMap(SwissPainter.painter(), map, VISIBLE_MARGIN);
         
         // Read HGT file and paint it
         ReliefShader shader = new ReliefShader(
@@ -109,10 +143,32 @@ public final class Main {
         ImageIO.write(finalImage, "png", new File(outputFile));
     }
     
+    // The whole OSM file is cached, so that the cache can be used for any
+    // part of it.
+    private static Map osmGzFileToMap(String osmFile, File cache)
+            throws IOException, SAXException {
+        File source = new File(osmFile);
+        
+        if (MapCache.isUpToDate(cache, source)) {
+            return MapCache.read(cache);
+        }
+        
+        Map map = osmGzFileToMap(osmFile);
+        
+        MapCache.write(map, cache, source);
+        
+        return map;
+    }
+    
     private static Map osmGzFileToMap(String osmFile) throws IOException,
             SAXException {
-        OSMMap osmMap = OSMMapReader.readOSMFile(osmFile, true);
-        return new OSMToGeoTransformer(projection).transform(osmMap);
+        // Decompression of the OSM file can only overlap with its parsing if
+        // there are several processors.
+        return OSMMapReader.readOSMFileToMap(
+            osmFile,
+            true,
+            Runtime.getRuntime().availableProcessors() > 1,
+            new OSMToGeoTransformer(projection));
     }
     
     private static BufferedImage merge(BufferedImage a, BufferedImage b,
@@ -3,18 +3,25 @@ package ch.epfl.imhof;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
+import ch.epfl.imhof.geometry.Envelope;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
 
 /**
  * Represents a projected map made of attributed geometric entities.
+ * <p>
+ * The entities in a given area can be found with {@link #query}, which uses a
+ * spatial index built the first time it is called.
  * 
  * @author Matthieu Bovel (250300)
  */
 public final class Map {
     private final List<Attributed<PolyLine>> polyLines;
     private final List<Attributed<Polygon>>  polygons;
+    private volatile SpatialIndex            polyLinesIndex;
+    private volatile SpatialIndex            polygonsIndex;
     
     /**
      * Constructs a new <code>Map</code> given a list of {@link PolyLine
@@ -50,11 +57,59 @@ public final class Map {
         return polygons;
     }
     
+    /**
+     * Returns a new <code>Map</code> made of the {@link PolyLine PolyLines}
+     * and {@link Polygon Polygons} of this <code>Map</code> whose
+     * {@link Envelope} intersects the given one, in the same order.
+     * <p>
+     * The first call builds the spatial index of this <code>Map</code>, which
+     * takes time proportional to its size (times its logarithm). The
+     * following ones only look at the parts of the index that intersect the
+     * given envelope.
+     * 
+     * @param envelope
+     *            the area to look for
+     * @return the <code>Map</code> of the entities in the given area
+     */
+    public Map query(Envelope envelope) {
+        if (polygonsIndex == null) {
+            buildIndexes();
+        }
+        
+        List<Attributed<PolyLine>> queriedPolyLines = new ArrayList<>();
+        List<Attributed<Polygon>> queriedPolygons = new ArrayList<>();
+        
+        for (int i : polyLinesIndex.query(envelope)) {
+            queriedPolyLines.add(polyLines.get(i));
+        }
+        
+        for (int i : polygonsIndex.query(envelope)) {
+            queriedPolygons.add(polygons.get(i));
+        }
+        
+        return new Map(queriedPolyLines, queriedPolygons);
+    }
+    
+    // The polygons index is built last, so that both are there as soon as it
+    // is.
+    private synchronized void buildIndexes() {
+        if (polygonsIndex == null) {
+            polyLinesIndex = new SpatialIndex(polyLines
+                .stream()
+                .map(p -> p.value().envelope())
+                .collect(Collectors.toList()));
+            polygonsIndex = new SpatialIndex(polygons
+                .stream()
+                .map(p -> p.value().envelope())
+                .collect(Collectors.toList()));
+        }
+    }
+    
     /**
      * A class that helps in the construction of a {@link Map}.
      * 
      * @author Matthieu Bovel (250300)
-     *
+     * 
      */
     static public class Builder {
         private final List<Attributed<PolyLine>> polyLines = new ArrayList<>();
@@ -80,6 +135,19 @@ public final class Map {
             polygons.add(polygon);
         }
         
+        /**
+         * Adds all the {@link PolyLine PolyLines} and {@link Polygon Polygons}
+         * of the given <code>Map</code> to the future <code>Map</code>, after
+         * the ones already added.
+         * 
+         * @param map
+         *            the <code>Map</code> whose elements to add
+         */
+        public void addAll(Map map) {
+            polyLines.addAll(map.polyLines());
+            polygons.addAll(map.polygons());
+        }
+        
         /**
          * Constructs a new <code>Map</code> instance using the data provided to
          * the <code>Map.Builder</code> via {@link #addPolyLine} and
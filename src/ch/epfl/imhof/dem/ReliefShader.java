@@ -89,10 +89,25 @@ public final class ReliefShader {
             height,
             BufferedImage.TYPE_INT_RGB);
         
+        double[] row = new double[2 * width];
+        
         for (int y = 0; y != height; ++y) {
+            // The coordinate change is affine, so the points of a row are
+            // evenly spaced and can be inverted all at once.
+            Point first = coorChange.apply(new Point(0, y));
+            Point second = coorChange.apply(new Point(1, y));
+            double dx = second.x() - first.x();
+            double dy = second.y() - first.y();
+            
+            for (int x = 0; x != width; ++x) {
+                row[2 * x] = first.x() + x * dx;
+                row[2 * x + 1] = first.y() + x * dy;
+            }
+            
+            projection.inverse(row, 0, width);
+            
             for (int x = 0; x != width; ++x) {
-                PointGeo pointGeo = projection.inverse(coorChange
-                    .apply(new Point(x, y)));
+                PointGeo pointGeo = new PointGeo(row[2 * x], row[2 * x + 1]);
                 Vector3d normal = dem.normalAt(pointGeo).normalized();
                 
                 // As vectors are normalized, we do not need to divide the
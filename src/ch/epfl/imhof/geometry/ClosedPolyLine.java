@@ -20,6 +20,18 @@ public final class ClosedPolyLine extends PolyLine {
         super(points);
     }
     
+    /**
+     * Constructs a closed <code>PolyLine</code> given the coordinates of its
+     * points.
+     * 
+     * @param coordinates
+     *            the x-coordinate and the y-coordinate of each point, one after
+     *            the other
+     */
+    public ClosedPolyLine(double[] coordinates) {
+        super(coordinates);
+    }
+    
     /**
      * Returns the area.
      * <p>
@@ -40,17 +52,16 @@ public final class ClosedPolyLine extends PolyLine {
      */
     public boolean containsPoint(Point p) {
         int indice = 0;
-        for (int i = 0; i != points().size(); ++i) {
-            Point p1 = points().get(i);
-            Point p2 = points().get(nextIndex(i));
+        for (int i = 0; i != size(); ++i) {
+            int j = nextIndex(i);
             
-            if (p1.y() <= p.y()) {
-                if (p2.y() > p.y() && isLeft(p, p1, p2)) {
+            if (y(i) <= p.y()) {
+                if (y(j) > p.y() && isLeft(p, x(i), y(i), x(j), y(j))) {
                     ++indice;
                 }
             }
             
-            else if (p2.y() <= p.y() && isLeft(p, p2, p1)) {
+            else if (y(j) <= p.y() && isLeft(p, x(j), y(j), x(i), y(i))) {
                 --indice;
             }
         }
@@ -60,7 +71,7 @@ public final class ClosedPolyLine extends PolyLine {
     /**
      * Returns <code>true</code> if the last point is connected to the first
      * one. This is always false for a {@link ClosedPolyLine}.
-     *
+     * 
      * @see ch.epfl.imhof.geometry.PolyLine#isClosed()
      * @return <code>true</code>
      */
@@ -69,6 +80,14 @@ public final class ClosedPolyLine extends PolyLine {
         return true;
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ClosedPolyLine simplified(double tolerance) {
+        return (ClosedPolyLine) super.simplified(tolerance);
+    }
+    
     /**
      * Returns the signed area.
      * <p>
@@ -80,11 +99,10 @@ public final class ClosedPolyLine extends PolyLine {
     private double signedArea() {
         double area = 0;
         
-        for (int i = 0; i != points().size(); ++i) {
-            Point p1 = points().get(i);
-            Point p2 = points().get(nextIndex(i));
+        for (int i = 0; i != size(); ++i) {
+            int j = nextIndex(i);
             
-            area += p1.x() * p2.y() - p2.x() * p1.y();
+            area += x(i) * y(j) - x(j) * y(i);
         }
         
         return area / 2;
@@ -97,16 +115,20 @@ public final class ClosedPolyLine extends PolyLine {
      * 
      * @param p
      *            the point whose we want to know the location
-     * @param p1
-     *            the first point of the segment
-     * @param p2
-     *            the second point of the segment
+     * @param x1
+     *            the x-coordinate of the first point of the segment
+     * @param y1
+     *            the y-coordinate of the first point of the segment
+     * @param x2
+     *            the x-coordinate of the second point of the segment
+     * @param y2
+     *            the y-coordinate of the second point of the segment
      * @return <code>true</code> if the point is left to the segment (
      *         <code>p1</code>,<code>p2</code>)
      */
-    private boolean isLeft(Point p, Point p1, Point p2) {
-        return (p1.x() - p.x()) * (p2.y() - p.y()) > (p2.x() - p.x())
-                * (p1.y() - p.y());
+    private boolean isLeft(Point p, double x1, double y1, double x2,
+            double y2) {
+        return (x1 - p.x()) * (y2 - p.y()) > (x2 - p.x()) * (y1 - p.y());
     }
     
     /**
@@ -117,6 +139,6 @@ public final class ClosedPolyLine extends PolyLine {
      * @return the index of the next point
      */
     private int nextIndex(int index) {
-        return java.lang.Math.floorMod(index + 1, points().size());
+        return java.lang.Math.floorMod(index + 1, size());
     }
 }
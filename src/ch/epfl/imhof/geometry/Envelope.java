@@ -0,0 +1,137 @@
+package ch.epfl.imhof.geometry;
+
+/**
+ * An axis-aligned rectangle, used to represent the extent of a geometry (the
+ * smallest rectangle containing it) so that geometries that are too far from
+ * each other can be told apart without looking at their points.
+ * 
+ * @author Matthieu Bovel (250300)
+ */
+public final class Envelope {
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    
+    /**
+     * Constructs a new envelope given its bounds.
+     * 
+     * @param minX
+     *            the smallest x-coordinate of the envelope
+     * @param minY
+     *            the smallest y-coordinate of the envelope
+     * @param maxX
+     *            the biggest x-coordinate of the envelope
+     * @param maxY
+     *            the biggest y-coordinate of the envelope
+     * @throws IllegalArgumentException
+     *             if <code>minX</code> is bigger than <code>maxX</code> or if
+     *             <code>minY</code> is bigger than <code>maxY</code>
+     */
+    public Envelope(double minX, double minY, double maxX, double maxY)
+            throws IllegalArgumentException {
+        if (!(minX <= maxX) || !(minY <= maxY)) {
+            throw new IllegalArgumentException(
+                "minimum bounds must not be bigger than maximum bounds");
+        }
+        
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+    
+    /**
+     * Returns the smallest envelope containing the two given points, which
+     * can be any two opposite corners.
+     * 
+     * @param p1
+     *            the first corner
+     * @param p2
+     *            the opposite corner
+     * @return the envelope whose corners are <code>p1</code> and
+     *         <code>p2</code>
+     */
+    public static Envelope of(Point p1, Point p2) {
+        return new Envelope(
+            Math.min(p1.x(), p2.x()),
+            Math.min(p1.y(), p2.y()),
+            Math.max(p1.x(), p2.x()),
+            Math.max(p1.y(), p2.y()));
+    }
+    
+    /**
+     * @return the smallest x-coordinate of the envelope
+     */
+    public double minX() {
+        return minX;
+    }
+    
+    /**
+     * @return the smallest y-coordinate of the envelope
+     */
+    public double minY() {
+        return minY;
+    }
+    
+    /**
+     * @return the biggest x-coordinate of the envelope
+     */
+    public double maxX() {
+        return maxX;
+    }
+    
+    /**
+     * @return the biggest y-coordinate of the envelope
+     */
+    public double maxY() {
+        return maxY;
+    }
+    
+    /**
+     * Returns <code>true</code> if this envelope and the given one have at
+     * least one point in common (envelopes touching each other intersect).
+     * 
+     * @param that
+     *            the other envelope
+     * @return <code>true</code> if the envelopes intersect
+     */
+    public boolean intersects(Envelope that) {
+        return minX <= that.maxX && that.minX <= maxX && minY <= that.maxY
+                && that.minY <= maxY;
+    }
+    
+    /**
+     * Returns <code>true</code> if the given envelope is inside this one
+     * (possibly touching its border).
+     * 
+     * @param that
+     *            the other envelope
+     * @return <code>true</code> if this envelope contains the other one
+     */
+    public boolean contains(Envelope that) {
+        return minX <= that.minX && that.maxX <= maxX && minY <= that.minY
+                && that.maxY <= maxY;
+    }
+    
+    /**
+     * Returns a new envelope, grown by the given margin on each side.
+     * 
+     * @param margin
+     *            the distance to add on each side, must be positive
+     * @return the grown envelope
+     * @throws IllegalArgumentException
+     *             if <code>margin</code> is negative
+     */
+    public Envelope grownBy(double margin) throws IllegalArgumentException {
+        if (!(margin >= 0)) {
+            throw new IllegalArgumentException("margin must be positive");
+        }
+        
+        return new Envelope(
+            minX - margin,
+            minY - margin,
+            maxX + margin,
+            maxY + margin);
+    }
+}
@@ -0,0 +1,210 @@
+package ch.epfl.imhof.geometry;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes polylines and polygons in a binary format, and reads them back. It
+ * is used by the binary files of this project that store many geometries
+ * (map caches and display lists).
+ * <p>
+ * The structure of all the geometries (whether each polyline is closed, and
+ * the size of each polyline or ring) is written first, followed by all their
+ * coordinates, so that the coordinates form a single array of
+ * <code>double</code>s that can be read in one go, for example from a
+ * memory-mapped file. Reading the structure of a geometry gives an array of
+ * <code>int</code>s, from which it is then built with its coordinates.
+ * 
+ * @author Matthieu Bovel (250300)
+ */
+public final class GeometryCodec {
+    private GeometryCodec() {
+    }
+    
+    /**
+     * Writes the structure of the given polyline: whether it is closed and
+     * its size.
+     * 
+     * @param out
+     *            the output to write to
+     * @param polyLine
+     *            the polyline whose structure to write
+     * @throws IOException
+     *             if the structure cannot be written
+     */
+    public static void writeStructure(DataOutput out, PolyLine polyLine)
+            throws IOException {
+        out.writeBoolean(polyLine.isClosed());
+        out.writeInt(polyLine.size());
+    }
+    
+    /**
+     * Writes the structure of the given polygon: the number of its holes, the
+     * size of its shell and the size of each hole.
+     * 
+     * @param out
+     *            the output to write to
+     * @param polygon
+     *            the polygon whose structure to write
+     * @throws IOException
+     *             if the structure cannot be written
+     */
+    public static void writeStructure(DataOutput out, Polygon polygon)
+            throws IOException {
+        out.writeInt(polygon.holes().size());
+        out.writeInt(polygon.shell().size());
+        
+        for (ClosedPolyLine hole : polygon.holes()) {
+            out.writeInt(hole.size());
+        }
+    }
+    
+    /**
+     * Writes the coordinates of the points of the given polyline.
+     * 
+     * @param out
+     *            the output to write to
+     * @param polyLine
+     *            the polyline whose coordinates to write
+     * @throws IOException
+     *             if the coordinates cannot be written
+     */
+    public static void writeCoordinates(DataOutput out, PolyLine polyLine)
+            throws IOException {
+        for (int i = 0; i != polyLine.size(); ++i) {
+            out.writeDouble(polyLine.x(i));
+            out.writeDouble(polyLine.y(i));
+        }
+    }
+    
+    /**
+     * Writes the coordinates of the points of the shell of the given polygon,
+     * followed by those of its holes.
+     * 
+     * @param out
+     *            the output to write to
+     * @param polygon
+     *            the polygon whose coordinates to write
+     * @throws IOException
+     *             if the coordinates cannot be written
+     */
+    public static void writeCoordinates(DataOutput out, Polygon polygon)
+            throws IOException {
+        writeCoordinates(out, polygon.shell());
+        
+        for (ClosedPolyLine hole : polygon.holes()) {
+            writeCoordinates(out, hole);
+        }
+    }
+    
+    /**
+     * Reads the structure of a polyline written by
+     * {@link #writeStructure(DataOutput, PolyLine)}.
+     * 
+     * @param buffer
+     *            the buffer to read from
+     * @return the structure of the polyline, to give to {@link #readPolyLine}
+     * @throws IOException
+     *             if the structure is not valid
+     */
+    public static int[] readPolyLineStructure(ByteBuffer buffer)
+            throws IOException {
+        return new int[] { buffer.get(), readCount(buffer) };
+    }
+    
+    /**
+     * Reads the structure of a polygon written by
+     * {@link #writeStructure(DataOutput, Polygon)}.
+     * 
+     * @param buffer
+     *            the buffer to read from
+     * @return the structure of the polygon, to give to {@link #readPolygon}
+     * @throws IOException
+     *             if the structure is not valid
+     */
+    public static int[] readPolygonStructure(ByteBuffer buffer)
+            throws IOException {
+        int[] sizes = new int[readCount(buffer) + 1];
+        
+        for (int i = 0; i != sizes.length; ++i) {
+            sizes[i] = readCount(buffer);
+        }
+        
+        return sizes;
+    }
+    
+    /**
+     * Reads the coordinates of a polyline, given its structure, and builds it.
+     * 
+     * @param coordinates
+     *            the coordinates to read from
+     * @param structure
+     *            the structure of the polyline, as returned by
+     *            {@link #readPolyLineStructure}
+     * @return the polyline
+     */
+    public static PolyLine readPolyLine(DoubleBuffer coordinates,
+            int[] structure) {
+        double[] xy = readCoordinates(coordinates, structure[1]);
+        
+        return structure[0] != 0
+                ? new ClosedPolyLine(xy)
+                : new OpenPolyLine(xy);
+    }
+    
+    /**
+     * Reads the coordinates of a polygon, given its structure, and builds it.
+     * 
+     * @param coordinates
+     *            the coordinates to read from
+     * @param structure
+     *            the structure of the polygon, as returned by
+     *            {@link #readPolygonStructure}
+     * @return the polygon
+     */
+    public static Polygon readPolygon(DoubleBuffer coordinates,
+            int[] structure) {
+        ClosedPolyLine shell = new ClosedPolyLine(readCoordinates(
+            coordinates,
+            structure[0]));
+        List<ClosedPolyLine> holes = new ArrayList<>(structure.length - 1);
+        
+        for (int i = 1; i != structure.length; ++i) {
+            holes.add(new ClosedPolyLine(readCoordinates(
+                coordinates,
+                structure[i])));
+        }
+        
+        return new Polygon(shell, holes);
+    }
+    
+    /**
+     * Reads a number of elements, written as an <code>int</code>.
+     * 
+     * @param buffer
+     *            the buffer to read from
+     * @return the number read
+     * @throws IOException
+     *             if the number is negative
+     */
+    public static int readCount(ByteBuffer buffer) throws IOException {
+        int count = buffer.getInt();
+        
+        if (count < 0) {
+            throw new IOException("negative count");
+        }
+        
+        return count;
+    }
+    
+    private static double[] readCoordinates(DoubleBuffer coordinates,
+            int size) {
+        double[] xy = new double[2 * size];
+        coordinates.get(xy);
+        return xy;
+    }
+}
@@ -19,6 +19,25 @@ public final class OpenPolyLine extends PolyLine {
         super(points);
     }
     
+    /**
+     * Constructs an open polyline given the coordinates of its points.
+     * 
+     * @param coordinates
+     *            the x-coordinate and the y-coordinate of each point, one after
+     *            the other
+     */
+    public OpenPolyLine(double[] coordinates) {
+        super(coordinates);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OpenPolyLine simplified(double tolerance) {
+        return (OpenPolyLine) super.simplified(tolerance);
+    }
+    
     /**
      * Returns <code>true</code> if the last point is connected to the first
      * one. This is always <code>false</code> for an <code>OpenPolyLine</code>.
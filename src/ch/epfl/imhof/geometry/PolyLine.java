@@ -1,13 +1,26 @@
 package ch.epfl.imhof.geometry;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Basic abstract class to represent a connected series of line segments. It can
  * either be closed ({@link ClosedPolyLine}, meaning that the last point is
  * connected with the first one) or open ({@link OpenPolyLine}).
+ * <p>
+ * The coordinates of the points are packed in a single array (the
+ * x-coordinate and the y-coordinate of each point, one after the other) rather
+ * than stored as {@link Point} objects. They can be read without creating any
+ * object with {@link #x(int)} and {@link #y(int)}, while {@link #points()}
+ * gives a view of them as a list of points.
+ * <p>
+ * The {@link Envelope} of a polyline is computed once, when it is constructed.
+ * The significance of its points, used to simplify it, is computed once too,
+ * the first time it is simplified.
  * 
  * @see <a href="http://en.wikipedia.org/wiki/Polygonal_chain">Polygonal chain,
  *      Wikipedia</a>
@@ -15,7 +28,11 @@ import java.util.List;
  * @author Matthieu Bovel (250300)
  */
 public abstract class PolyLine {
-    private final List<Point> points;
+    private final double[]    coordinates;
+    private final Envelope    envelope;
+    private final List<Point> points = new PointsView();
+    // Computed the first time it is needed, see #simplified.
+    private volatile float[]  significances;
     
     /**
      * Constructs a {@link PolyLine} given a list of points.
@@ -32,8 +49,39 @@ public abstract class PolyLine {
             throw new IllegalArgumentException("points list cannot be empty");
         }
         
-        this.points = Collections
-            .unmodifiableList(new ArrayList<Point>(points));
+        coordinates = new double[2 * points.size()];
+        int i = 0;
+        
+        for (Point point : points) {
+            coordinates[i++] = point.x();
+            coordinates[i++] = point.y();
+        }
+        
+        envelope = envelopeOf(coordinates);
+    }
+    
+    /**
+     * Constructs a {@link PolyLine} given the coordinates of its points.
+     * 
+     * @param coordinates
+     *            the x-coordinate and the y-coordinate of each point, one after
+     *            the other
+     * 
+     * @throws IllegalArgumentException
+     *             if there are no coordinates or if their number is odd
+     */
+    public PolyLine(double[] coordinates) throws IllegalArgumentException {
+        if (coordinates.length == 0) {
+            throw new IllegalArgumentException("points list cannot be empty");
+        }
+        
+        if (coordinates.length % 2 != 0) {
+            throw new IllegalArgumentException(
+                "number of coordinates must be even");
+        }
+        
+        this.coordinates = coordinates.clone();
+        envelope = envelopeOf(coordinates);
     }
     
     /**
@@ -47,6 +95,9 @@ public abstract class PolyLine {
     
     /**
      * Returns the list of points of this polyline.
+     * <p>
+     * The list is an unmodifiable view of the coordinates of this polyline: a
+     * new {@link Point} is created each time an element is read.
      * 
      * @return the list of points
      */
@@ -54,6 +105,53 @@ public abstract class PolyLine {
         return points;
     }
     
+    /**
+     * Returns the number of points of this polyline.
+     * 
+     * @return the number of points
+     */
+    public int size() {
+        return coordinates.length / 2;
+    }
+    
+    /**
+     * Returns the x-coordinate of the point at the given index.
+     * 
+     * @param index
+     *            the index of the point
+     * @return the x-coordinate of the point
+     * @throws IndexOutOfBoundsException
+     *             if <code>index</code> is not between 0 (inclusive) and
+     *             {@link #size()} (exclusive)
+     */
+    public double x(int index) throws IndexOutOfBoundsException {
+        return coordinates[2 * index];
+    }
+    
+    /**
+     * Returns the y-coordinate of the point at the given index.
+     * 
+     * @param index
+     *            the index of the point
+     * @return the y-coordinate of the point
+     * @throws IndexOutOfBoundsException
+     *             if <code>index</code> is not between 0 (inclusive) and
+     *             {@link #size()} (exclusive)
+     */
+    public double y(int index) throws IndexOutOfBoundsException {
+        return coordinates[2 * index + 1];
+    }
+    
+    /**
+     * Returns the envelope of this polyline: the smallest axis-aligned
+     * rectangle containing all of its points.
+     * 
+     * @return the envelope of this polyline
+     */
+    public Envelope envelope() {
+        return envelope;
+    }
+    
     /**
      * Return the first point of this polyline.
      * 
@@ -63,19 +161,324 @@ public abstract class PolyLine {
         return points.get(0);
     }
     
+    /**
+     * Returns the parts of this polyline that are inside the given envelope,
+     * as open polylines. A closed polyline is seen as a line going back to its
+     * first point, not as the area it encloses (see
+     * {@link Polygon#clippedTo(Envelope)}).
+     * <p>
+     * Segments that do not intersect the envelope (as told by the Liang-Barsky
+     * algorithm) are dropped, while those that do are kept whole rather than
+     * cut at the border of the envelope: Java2D antialiases a cut segment a
+     * bit differently, even inside the envelope. A polyline entirely inside
+     * the envelope is returned unchanged, and so is a closed polyline whose
+     * segments all intersect the envelope, so that it is still drawn with a
+     * join rather than two caps at its first point.
+     * 
+     * @see <a
+     *      href="https://en.wikipedia.org/wiki/Liang%E2%80%93Barsky_algorithm">
+     *      Liang-Barsky algorithm, Wikipedia</a>
+     * @param window
+     *            the envelope to clip this polyline to
+     * @return the parts of this polyline that intersect the envelope
+     */
+    public List<PolyLine> clippedTo(Envelope window) {
+        if (window.contains(envelope)) {
+            return Collections.singletonList(this);
+        }
+        
+        List<PolyLine> parts = new ArrayList<>();
+        
+        if (!window.intersects(envelope)) {
+            return parts;
+        }
+        
+        int segments = isClosed() ? size() : size() - 1;
+        boolean firstPartAtStart = false;
+        Builder part = null;
+        // Parameters (between 0 and 1) of the visible part of a segment.
+        double[] t = new double[2];
+        
+        for (int i = 0; i < segments; ++i) {
+            int j = i + 1 == size() ? 0 : i + 1;
+            double dx = x(j) - x(i);
+            double dy = y(j) - y(i);
+            
+            t[0] = 0;
+            t[1] = 1;
+            
+            if (clip(-dx, x(i) - window.minX(), t)
+                    && clip(dx, window.maxX() - x(i), t)
+                    && clip(-dy, y(i) - window.minY(), t)
+                    && clip(dy, window.maxY() - y(i), t)) {
+                if (part == null) {
+                    part = new Builder().addPoint(x(i), y(i));
+                    firstPartAtStart |= i == 0;
+                }
+                
+                part.addPoint(x(j), y(j));
+            }
+            else if (part != null) {
+                parts.add(part.buildOpen());
+                part = null;
+            }
+        }
+        
+        if (part != null && isClosed() && firstPartAtStart && parts.isEmpty()) {
+            return Collections.singletonList(this);
+        }
+        
+        if (part != null) {
+            // The last part of a closed polyline goes on with the first one
+            // when both meet at the first point, which must not be cut.
+            if (isClosed() && firstPartAtStart && !parts.isEmpty()) {
+                PolyLine first = parts.get(0);
+                
+                for (int i = 1; i != first.size(); ++i) {
+                    part.addPoint(first.x(i), first.y(i));
+                }
+                
+                parts.set(0, part.buildOpen());
+            }
+            else {
+                parts.add(part.buildOpen());
+            }
+        }
+        
+        return parts;
+    }
+    
+    /**
+     * Returns this polyline simplified with the Douglas-Peucker algorithm: no
+     * point of this polyline is farther than the given tolerance from the
+     * returned one. Points are only removed, never moved, and the first and
+     * last points (or, for a closed polyline, the first point and the one
+     * farthest from it) are always kept.
+     * <p>
+     * The first call computes the significance of each point: the largest
+     * tolerance for which it is kept. The following calls, whatever their
+     * tolerance, only have to compare it to the significance of each point.
+     * 
+     * @see <a
+     *      href="https://en.wikipedia.org/wiki/Ramer%E2%80%93Douglas%E2%80%93Peucker_algorithm">
+     *      Ramer-Douglas-Peucker algorithm, Wikipedia</a>
+     * @param tolerance
+     *            the largest distance allowed between this polyline and the
+     *            simplified one
+     * @return the simplified polyline, or this polyline if no point can be
+     *         removed
+     */
+    public PolyLine simplified(double tolerance) {
+        float[] significances = significances();
+        int count = 0;
+        
+        for (float significance : significances) {
+            if (significance > tolerance) {
+                ++count;
+            }
+        }
+        
+        if (count == significances.length) {
+            return this;
+        }
+        
+        double[] kept = new double[2 * count];
+        int length = 0;
+        
+        for (int i = 0; i != significances.length; ++i) {
+            if (significances[i] > tolerance) {
+                kept[length++] = x(i);
+                kept[length++] = y(i);
+            }
+        }
+        
+        return isClosed() ? new ClosedPolyLine(kept) : new OpenPolyLine(kept);
+    }
+    
+    private float[] significances() {
+        float[] significances = this.significances;
+        
+        if (significances == null) {
+            significances = computeSignificances();
+            this.significances = significances;
+        }
+        
+        return significances;
+    }
+    
+    // The significance of a point is the distance to the chord it was split
+    // from, but never more than the one of the point that split the chord
+    // before, so that each tolerance keeps the points Douglas-Peucker would.
+    private float[] computeSignificances() {
+        int size = size();
+        float[] significances = new float[size];
+        // Stack of the chords (first and last point indices) left to split,
+        // the last index being size for the first point of a closed polyline.
+        int[] chords = new int[16];
+        float[] chordSignificances = new float[8];
+        int stackSize = 0;
+        int last = size - 1;
+        
+        if (isClosed()) {
+            // The point farthest from the first one (or the first one
+            // itself, if there is no other).
+            last = size > 1 ? farthest(0, size, 1) : 0;
+            chords[0] = last;
+            chords[1] = size;
+            chordSignificances[0] = Float.POSITIVE_INFINITY;
+            stackSize = 1;
+        }
+        
+        significances[0] = Float.POSITIVE_INFINITY;
+        significances[last] = Float.POSITIVE_INFINITY;
+        chords[2 * stackSize] = 0;
+        chords[2 * stackSize + 1] = last;
+        chordSignificances[stackSize++] = Float.POSITIVE_INFINITY;
+        
+        while (stackSize != 0) {
+            --stackSize;
+            
+            int first = chords[2 * stackSize];
+            int end = chords[2 * stackSize + 1];
+            float parentSignificance = chordSignificances[stackSize];
+            
+            if (end - first < 2) {
+                continue;
+            }
+            
+            int split = farthest(first, end, first + 1);
+            float significance = (float) Math.min(
+                Math.sqrt(squaredDistance(split, first, end % size)),
+                parentSignificance);
+            
+            significances[split] = significance;
+            
+            if (2 * stackSize + 4 > chords.length) {
+                chords = Arrays.copyOf(chords, 2 * chords.length);
+                chordSignificances = Arrays.copyOf(
+                    chordSignificances,
+                    2 * chordSignificances.length);
+            }
+            
+            chords[2 * stackSize] = first;
+            chords[2 * stackSize + 1] = split;
+            chordSignificances[stackSize++] = significance;
+            chords[2 * stackSize] = split;
+            chords[2 * stackSize + 1] = end;
+            chordSignificances[stackSize++] = significance;
+        }
+        
+        return significances;
+    }
+    
+    // Returns the index of the point, between from (inclusive) and end
+    // (exclusive), farthest from the segment going from point first to point
+    // end (modulo size), or from if there is none.
+    private int farthest(int first, int end, int from) {
+        int farthest = from;
+        double farthestDistance = -1;
+        
+        for (int i = from; i < end; ++i) {
+            double distance = squaredDistance(i, first, end % size());
+            
+            if (distance > farthestDistance) {
+                farthest = i;
+                farthestDistance = distance;
+            }
+        }
+        
+        return farthest;
+    }
+    
+    // Squared distance between point i and the segment from point a to
+    // point b.
+    private double squaredDistance(int i, int a, int b) {
+        double dx = x(b) - x(a);
+        double dy = y(b) - y(a);
+        double length = dx * dx + dy * dy;
+        double t = 0;
+        
+        if (length != 0) {
+            t = ((x(i) - x(a)) * dx + (y(i) - y(a)) * dy) / length;
+            t = Math.max(0, Math.min(1, t));
+        }
+        
+        double ex = x(i) - x(a) - t * dx;
+        double ey = y(i) - y(a) - t * dy;
+        
+        return ex * ex + ey * ey;
+    }
+    
+    // Clips the parameters t of a segment against one side of the window,
+    // given the projection p of the segment on the normal of this side and
+    // the distance q from the start of the segment to it. Returns false if
+    // nothing of the segment is left.
+    private static boolean clip(double p, double q, double[] t) {
+        if (p == 0) {
+            return q >= 0;
+        }
+        
+        double r = q / p;
+        
+        if (p < 0) {
+            if (r > t[1]) {
+                return false;
+            }
+            
+            t[0] = Math.max(t[0], r);
+        }
+        else {
+            if (r < t[0]) {
+                return false;
+            }
+            
+            t[1] = Math.min(t[1], r);
+        }
+        
+        return true;
+    }
+    
+    private static Envelope envelopeOf(double[] coordinates) {
+        double minX = coordinates[0], maxX = minX;
+        double minY = coordinates[1], maxY = minY;
+        
+        for (int i = 2; i < coordinates.length; i += 2) {
+            minX = Math.min(minX, coordinates[i]);
+            maxX = Math.max(maxX, coordinates[i]);
+            minY = Math.min(minY, coordinates[i + 1]);
+            maxY = Math.max(maxY, coordinates[i + 1]);
+        }
+        
+        return new Envelope(minX, minY, maxX, maxY);
+    }
+    
+    private final class PointsView extends AbstractList<Point> implements
+            RandomAccess {
+        @Override
+        public Point get(int index) {
+            return new Point(x(index), y(index));
+        }
+        
+        @Override
+        public int size() {
+            return PolyLine.this.size();
+        }
+    }
+    
     /**
      * Helper class that aids in the construction of {@link PolyLine PolyLines}.
      * 
      * @author Matthieu Bovel (250300)
      */
     public final static class Builder {
-        private final List<Point> points;
+        private double[] coordinates;
+        private int      length;
         
         /**
          * Constructs a new empty {@link PolyLine} builder.
          */
         public Builder() {
-            points = new ArrayList<Point>();
+            coordinates = new double[16];
         }
         
         /**
@@ -86,7 +489,26 @@ public abstract class PolyLine {
          * @return a {@link ClosedPolyLine}
          */
         public Builder addPoint(Point p) {
-            points.add(p);
+            return addPoint(p.x(), p.y());
+        }
+        
+        /**
+         * Adds a new point to the future {@link PolyLine}, given its
+         * coordinates.
+         * 
+         * @param x
+         *            the x-coordinate of the point to add
+         * @param y
+         *            the y-coordinate of the point to add
+         * @return this builder
+         */
+        public Builder addPoint(double x, double y) {
+            if (length == coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, 2 * length);
+            }
+            
+            coordinates[length++] = x;
+            coordinates[length++] = y;
             return this;
         }
         
@@ -97,7 +519,7 @@ public abstract class PolyLine {
          * @return a {@link OpenPolyLine}
          */
         public OpenPolyLine buildOpen() {
-            return new OpenPolyLine(points);
+            return new OpenPolyLine(Arrays.copyOf(coordinates, length));
         }
         
         /**
@@ -107,7 +529,7 @@ public abstract class PolyLine {
          * @return a {@link ClosedPolyLine}
          */
         public ClosedPolyLine buildClosed() {
-            return new ClosedPolyLine(points);
+            return new ClosedPolyLine(Arrays.copyOf(coordinates, length));
         }
     }
 }
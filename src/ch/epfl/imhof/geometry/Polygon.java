@@ -1,6 +1,7 @@
 package ch.epfl.imhof.geometry;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -57,6 +58,141 @@ public final class Polygon {
         return shell;
     }
     
+    /**
+     * Returns the envelope of the polygon, which is the one of its shell (the
+     * holes being inside the shell).
+     * 
+     * @return the envelope of the polygon
+     */
+    public Envelope envelope() {
+        return shell.envelope();
+    }
+    
+    /**
+     * Returns the part of this polygon that is inside the given envelope, or
+     * <code>null</code> if there is none.
+     * <p>
+     * The shell and each hole are clipped with the Sutherland-Hodgman
+     * algorithm, which can leave edges along the border of the envelope
+     * (where a concave ring goes out of it several times), but no area
+     * outside of it. A polygon entirely inside the envelope is returned
+     * unchanged.
+     * 
+     * @see <a
+     *      href="https://en.wikipedia.org/wiki/Sutherland%E2%80%93Hodgman_algorithm">
+     *      Sutherland-Hodgman algorithm, Wikipedia</a>
+     * @param window
+     *            the envelope to clip this polygon to
+     * @return the clipped polygon, or <code>null</code> if it is empty
+     */
+    public Polygon clippedTo(Envelope window) {
+        if (window.contains(envelope())) {
+            return this;
+        }
+        
+        ClosedPolyLine clippedShell = clip(shell, window);
+        
+        if (clippedShell == null) {
+            return null;
+        }
+        
+        List<ClosedPolyLine> clippedHoles = new ArrayList<>();
+        
+        for (ClosedPolyLine hole : holes) {
+            ClosedPolyLine clippedHole = clip(hole, window);
+            
+            if (clippedHole != null) {
+                clippedHoles.add(clippedHole);
+            }
+        }
+        
+        return new Polygon(clippedShell, clippedHoles);
+    }
+    
+    /**
+     * Returns this polygon with its shell and holes simplified with the given
+     * tolerance, see {@link PolyLine#simplified(double)}.
+     * 
+     * @param tolerance
+     *            the largest distance allowed between a ring of this polygon
+     *            and the simplified one
+     * @return the simplified polygon, or this polygon if no point can be
+     *         removed
+     */
+    public Polygon simplified(double tolerance) {
+        ClosedPolyLine simplifiedShell = shell.simplified(tolerance);
+        List<ClosedPolyLine> simplifiedHoles = new ArrayList<>();
+        boolean changed = simplifiedShell != shell;
+        
+        for (ClosedPolyLine hole : holes) {
+            ClosedPolyLine simplifiedHole = hole.simplified(tolerance);
+            
+            simplifiedHoles.add(simplifiedHole);
+            changed |= simplifiedHole != hole;
+        }
+        
+        return changed ? new Polygon(simplifiedShell, simplifiedHoles) : this;
+    }
+    
+    private static ClosedPolyLine clip(ClosedPolyLine ring, Envelope window) {
+        if (window.contains(ring.envelope())) {
+            return ring;
+        }
+        
+        if (!window.intersects(ring.envelope())) {
+            return null;
+        }
+        
+        double[] xy = new double[2 * ring.size()];
+        
+        for (int i = 0; i != ring.size(); ++i) {
+            xy[2 * i] = ring.x(i);
+            xy[2 * i + 1] = ring.y(i);
+        }
+        
+        xy = clip(xy, 0, window.minX(), true);
+        xy = clip(xy, 0, window.maxX(), false);
+        xy = clip(xy, 1, window.minY(), true);
+        xy = clip(xy, 1, window.maxY(), false);
+        
+        // Less than 3 points enclose no area.
+        return xy.length < 6 ? null : new ClosedPolyLine(xy);
+    }
+    
+    // Clips a ring, given the coordinates of its points, against the line
+    // where the given coordinate (0 for x, 1 for y) equals bound, keeping
+    // what is above it if isMin is true, and below it otherwise.
+    private static double[] clip(double[] xy, int axis, double bound,
+            boolean isMin) {
+        double[] clipped = new double[2 * xy.length];
+        int length = 0;
+        
+        for (int i = 0; i < xy.length; i += 2) {
+            int j = (i + 2) % xy.length;
+            boolean iInside = isMin ? xy[i + axis] >= bound
+                    : xy[i + axis] <= bound;
+            boolean jInside = isMin ? xy[j + axis] >= bound
+                    : xy[j + axis] <= bound;
+            
+            if (iInside) {
+                clipped[length++] = xy[i];
+                clipped[length++] = xy[i + 1];
+            }
+            
+            if (iInside != jInside) {
+                double t = (bound - xy[i + axis])
+                        / (xy[j + axis] - xy[i + axis]);
+                
+                clipped[length + axis] = bound;
+                clipped[length + 1 - axis] = xy[i + 1 - axis] + t
+                        * (xy[j + 1 - axis] - xy[i + 1 - axis]);
+                length += 2;
+            }
+        }
+        
+        return Arrays.copyOf(clipped, length);
+    }
+    
     /**
      * Helper class that aids in the construction of {@link Polygon Polygons}.
      * 
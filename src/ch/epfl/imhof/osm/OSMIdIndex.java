@@ -0,0 +1,125 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash table mapping open street map ids (
+ * <code>long</code>) to non-negative indexes (<code>int</code>).
+ * <p>
+ * Unlike a <code>HashMap&lt;Long, Integer&gt;</code>, it does not allocate any
+ * object per entry: keys and values are stored in two parallel primitive
+ * arrays, and collisions are resolved by linear probing.
+ * 
+ * @author Matthieu Bovel (250300)
+ */
+final class OSMIdIndex {
+    private static final int   INITIAL_CAPACITY = 1 << 10;
+    private static final int   NO_VALUE         = -1;
+    
+    private long[]             keys;
+    private int[]              values;
+    private int                mask;
+    private int                size;
+    
+    /**
+     * Constructs a new empty <code>OSMIdIndex</code>.
+     */
+    public OSMIdIndex() {
+        this(INITIAL_CAPACITY);
+    }
+    
+    /**
+     * Constructs a new empty <code>OSMIdIndex</code> able to hold
+     * <code>expectedSize</code> entries without being resized.
+     * 
+     * @param expectedSize
+     *            the expected number of entries
+     */
+    public OSMIdIndex(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(expectedSize, 1) * 2 - 1) * 2);
+    }
+    
+    /**
+     * Associates the given index to the given id, replacing the previous
+     * index if there was one.
+     * 
+     * @param id
+     *            the id
+     * @param index
+     *            the index to associate with the id, must be non-negative
+     */
+    public void put(long id, int index) {
+        if (2 * (size + 1) > keys.length) {
+            resize();
+        }
+        
+        int slot = slotOf(id);
+        
+        if (values[slot] == NO_VALUE) {
+            keys[slot] = id;
+            ++size;
+        }
+        
+        values[slot] = index;
+    }
+    
+    /**
+     * Returns the index associated to the given id, or <code>-1</code> if
+     * there is none.
+     * 
+     * @param id
+     *            the id to look for
+     * @return the index associated to <code>id</code>, or <code>-1</code>
+     */
+    public int get(long id) {
+        return values[slotOf(id)];
+    }
+    
+    /**
+     * Returns the number of ids in this index.
+     * 
+     * @return the number of ids in this index
+     */
+    public int size() {
+        return size;
+    }
+    
+    // Returns the slot holding id, or the empty slot where it should be put.
+    private int slotOf(long id) {
+        int slot = hash(id) & mask;
+        
+        while (values[slot] != NO_VALUE && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        
+        return slot;
+    }
+    
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        
+        allocate(keys.length * 2);
+        
+        for (int i = 0; i != oldKeys.length; ++i) {
+            if (oldValues[i] != NO_VALUE) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+    
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(values, NO_VALUE);
+    }
+    
+    // Open street map ids are mostly consecutive, so they are scrambled with a
+    // Fibonacci hash before being used as slots.
+    private static int hash(long id) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+}
@@ -7,6 +7,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+
 /**
  * Represents an open street map Map.
  * <p>
@@ -14,7 +17,7 @@ import java.util.Map;
  * {@link OSMRelation}).
  * 
  * @author Matteo Besançon (245826)
- *
+ * 
  */
 public final class OSMMap {
     private final List<OSMWay>      ways;
@@ -58,12 +61,60 @@ public final class OSMMap {
      * 
      * @author Matthieu Bovel (250300)
      * @author Matteo Besançon (245826)
-     *
+     * 
      */
     public static class Builder {
-        private final Map<Long, OSMNode>     nodes     = new HashMap<Long, OSMNode>();
-        private final Map<Long, OSMWay>      ways      = new HashMap<Long, OSMWay>();
-        private final Map<Long, OSMRelation> relations = new HashMap<Long, OSMRelation>();
+        private static final Attributes      NO_ATTRIBUTES   = new Attributes.Builder()
+                                                                 .build();
+        
+        // Positions of all nodes are stored in the node store. Only nodes that
+        // have attributes or that have been requested are also kept as
+        // objects, indexed by id in nodeObjectIndex.
+        private final OSMNodeStore           nodes;
+        private final boolean                keepNodes;
+        private final OSMIdIndex             nodeObjectIndex = new OSMIdIndex();
+        private final List<OSMNode>          nodeObjects     = new ArrayList<OSMNode>();
+        private final Map<Long, OSMWay>      ways            = new HashMap<Long, OSMWay>();
+        private final Map<Long, OSMRelation> relations       = new HashMap<Long, OSMRelation>();
+        
+        /**
+         * Constructs a new <code>OSMMap.Builder</code> that keeps the
+         * positions of nodes in primitive arrays on the heap.
+         */
+        public Builder() {
+            this(new OSMNodeArrayStore());
+        }
+        
+        /**
+         * Constructs a new <code>OSMMap.Builder</code> that keeps the
+         * positions of nodes in the given {@link OSMNodeStore}.
+         * 
+         * @param nodes
+         *            the {@link OSMNodeStore} to use, it is not closed by the
+         *            builder
+         */
+        public Builder(OSMNodeStore nodes) {
+            this(nodes, true);
+        }
+        
+        /**
+         * Constructs a new <code>OSMMap.Builder</code> that keeps the
+         * positions of nodes in the given {@link OSMNodeStore}, and that only
+         * keeps the nodes without attributes returned by {@link #nodeForId}
+         * if <code>keepNodes</code> is <code>true</code>.
+         * 
+         * @param nodes
+         *            the {@link OSMNodeStore} to use, it is not closed by the
+         *            builder
+         * @param keepNodes
+         *            whether the nodes returned by {@link #nodeForId} are
+         *            kept, so that the ways sharing a node share the same
+         *            object (which is useless if ways are not kept either)
+         */
+        Builder(OSMNodeStore nodes, boolean keepNodes) {
+            this.nodes = nodes;
+            this.keepNodes = keepNodes;
+        }
         
         /**
          * Adds a new node to the future <code>OSMMap</code>.
@@ -72,12 +123,49 @@ public final class OSMMap {
          *            a node to add to the future <code>OSMMap</code>
          */
         public void addNode(OSMNode node) {
-            nodes.put(node.id(), node);
+            addNode(
+                node.id(),
+                node.position().longitude(),
+                node.position().latitude());
+            
+            if (!node.attributes().isEmpty()
+                    || nodeObjectIndex.get(node.id()) != -1) {
+                keepNode(node);
+            }
+        }
+        
+        /**
+         * Adds a new node without attributes to the future <code>OSMMap</code>
+         * , given its id and position. No {@link OSMNode} object is created
+         * until the node is requested with {@link #nodeForId}.
+         * 
+         * @param id
+         *            the node's identification
+         * @param longitude
+         *            the node's longitude, in radians
+         * @param latitude
+         *            the node's latitude, in radians
+         */
+        public void addNode(long id, double longitude, double latitude) {
+            nodes.add(id, longitude, latitude);
+            
+            if (nodeObjectIndex.get(id) != -1) {
+                keepNode(new OSMNode(
+                    id,
+                    new PointGeo(longitude, latitude),
+                    NO_ATTRIBUTES));
+            }
         }
         
         /**
          * Returns a node of the future <code>OSMMap</code> given its id or
          * <code>null</code> if no node corresponds to the given id.
+         * <p>
+         * Nodes without attributes are not stored as objects until they are
+         * requested for the first time: the same {@link OSMNode} is then
+         * returned for all the following calls, so that the ways sharing a
+         * node do not hold copies of it. A builder that does not keep nodes
+         * returns a new object at each call, so nodes must be compared by id.
          * 
          * @param id
          *            the wanted node's identifiction (<code>long</code>)
@@ -86,7 +174,39 @@ public final class OSMMap {
          *         <code>null</code> if any node corresponds to the given id
          */
         public OSMNode nodeForId(long id) {
-            return nodes.get(id);
+            int index = nodeObjectIndex.get(id);
+            
+            if (index != -1) {
+                return nodeObjects.get(index);
+            }
+            
+            PointGeo position = nodes.positionOf(id);
+            
+            if (position == null) {
+                return null;
+            }
+            
+            OSMNode node = new OSMNode(id, position, NO_ATTRIBUTES);
+            
+            if (keepNodes) {
+                keepNode(node);
+            }
+            
+            return node;
+        }
+        
+        // Replaces the node object kept for the id of the given node, if
+        // there is one.
+        private void keepNode(OSMNode node) {
+            int index = nodeObjectIndex.get(node.id());
+            
+            if (index == -1) {
+                nodeObjectIndex.put(node.id(), nodeObjects.size());
+                nodeObjects.add(node);
+            }
+            else {
+                nodeObjects.set(index, node);
+            }
         }
         
         /**
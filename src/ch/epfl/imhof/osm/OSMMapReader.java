@@ -3,19 +3,29 @@ package ch.epfl.imhof.osm;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-//import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
 import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
-import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
+import ch.epfl.imhof.Map;
 import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.dem.Earth;
 
 /**
  * The <code>OSMMapReader</code> class is used to create an {@link OSMMap} given
@@ -59,33 +69,876 @@ public final class OSMMapReader {
      */
     public static OSMMap readOSMFile(String fileName, boolean unGZip)
             throws IOException, SAXException {
+        return readOSMFile(fileName, unGZip, false);
+    }
+    
+    /**
+     * Reads an osm file and returns an {@link OSMMap}. Ungzip the file if the
+     * second argument is <code>true</code>, ahead of the parser if the third
+     * one is <code>true</code>.
+     * <p>
+     * A gzipped file is decompressed ahead on other threads, with a
+     * {@link ParallelGZIPInputStream}, which is only faster when there are
+     * several processors. Otherwise, it is decompressed by the parsing thread,
+     * with a {@link GZIPInputStream}.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param decompressAhead
+     *            boolean that tells if a gzip compressed file is decompressed
+     *            ahead of the parser
+     * @return an {@link OSMMap} based on the osm file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process
+     * @throws SAXException
+     *             when something is wrong with the osm file, for example when
+     *             an attributes is missing
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip,
+            boolean decompressAhead) throws IOException, SAXException {
         OSMMap.Builder mapBuilder = new OSMMap.Builder();
+        
+        parse(
+            fileName,
+            unGZip,
+            decompressAhead,
+            new XMLHandler(mapBuilder, null));
+        
+        return mapBuilder.build();
+    }
+    
+    /**
+     * Reads an osm file and returns an {@link OSMMap}, keeping the positions
+     * of nodes in the given {@link OSMNodeStore} while reading. Ungzip the file
+     * if the second argument is <code>true</code>.
+     * <p>
+     * This is useful for very large files, whose nodes do not fit in memory:
+     * see {@link OSMNodeMappedStore}.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param nodeStore
+     *            the {@link OSMNodeStore} to use, it is not closed by this
+     *            method
+     * @return an {@link OSMMap} based on the osm file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process
+     * @throws SAXException
+     *             when something is wrong with the osm file, for example when
+     *             an attributes is missing
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip,
+            OSMNodeStore nodeStore) throws IOException, SAXException {
+        OSMMap.Builder mapBuilder = new OSMMap.Builder(nodeStore);
         readOSMFileToBuilder(fileName, unGZip, mapBuilder);
         return mapBuilder.build();
     }
     
+    /**
+     * Reads an osm file and returns an {@link OSMMap} whose entities only
+     * have the attributes whose key is in the given set. Ungzip the file if
+     * the second argument is <code>true</code>.
+     * <p>
+     * Other attributes are dropped as soon as they are parsed, and ways and
+     * relations that are left without attributes are dropped too, unless they
+     * are members of a relation. To know which ones they are, the file is read
+     * twice: the first pass only looks at relations. This greatly reduces the
+     * memory needed to read large files, when only a few keys are needed:
+     * {@link OSMToGeoTransformer#relevantKeys} gives the ones that are needed
+     * to transform the resulting <code>OSMMap</code>.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param keysToKeep
+     *            the keys of the attributes to keep
+     * @return an {@link OSMMap} based on the osm file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process
+     * @throws SAXException
+     *             when something is wrong with the osm file, for example when
+     *             an attributes is missing
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip,
+            Set<String> keysToKeep) throws IOException, SAXException {
+        RelationMembersHandler membersHandler = new RelationMembersHandler();
+        parse(fileName, unGZip, membersHandler);
+        
+        OSMMap.Builder mapBuilder = new FilteringBuilder(
+            new OSMNodeArrayStore(),
+            membersHandler.memberWays(),
+            membersHandler.memberRelations());
+        
+        parse(fileName, unGZip, new XMLHandler(mapBuilder, keysToKeep));
+        
+        return mapBuilder.build();
+    }
+    
+    /**
+     * Reads an osm file and returns an {@link OSMMap} that only contains the
+     * ways and relations touching the given bounding box, enlarged by the
+     * given margin. Ungzip the file if the second argument is
+     * <code>true</code>.
+     * <p>
+     * A way touches the box if its envelope intersects it, and a relation
+     * touches the box if one of its members does. The members of these
+     * relations (possibly indirect) that do not touch the box are kept while
+     * reading, so that the relations can be built, but they are not part of
+     * the resulting <code>OSMMap</code>. Nothing else is kept: the file is
+     * read three times, the first pass only looks at relations, the second one
+     * only at the positions of nodes, to find which ways and relations touch
+     * the box, and the third one builds them.
+     * <p>
+     * This is meant to draw a small part of an osm file that is too large to
+     * be read whole. {@link ch.epfl.imhof.Main} does not use it, as it caches
+     * the whole file to draw any part of it later.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param bottomLeft
+     *            the bottom left corner of the bounding box
+     * @param topRight
+     *            the top right corner of the bounding box
+     * @param margin
+     *            the margin added around the bounding box, in meters
+     * @return an {@link OSMMap} with the ways and relations of the osm file
+     *         that touch the bounding box
+     * @throws IllegalArgumentException
+     *             if the corners are not the bottom left and top right ones,
+     *             or if the margin is negative
+     * @throws IOException
+     *             when something goes wrong in the reading process
+     * @throws SAXException
+     *             when something is wrong with the osm file, for example when
+     *             an attributes is missing
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip,
+            PointGeo bottomLeft, PointGeo topRight, double margin)
+            throws IOException, SAXException {
+        return readOSMFile(
+            fileName,
+            unGZip,
+            bottomLeft,
+            topRight,
+            margin,
+            new OSMNodeArrayStore());
+    }
+    
+    /**
+     * Reads an osm file and returns an {@link OSMMap} that only contains the
+     * ways and relations touching the given bounding box, as
+     * {@link #readOSMFile(String, boolean, PointGeo, PointGeo, double)} does,
+     * but keeping the positions of nodes in the given {@link OSMNodeStore}.
+     * <p>
+     * The positions of all the nodes of the file are needed to know which ways
+     * touch the box: with an {@link OSMNodeMappedStore}, they are not kept on
+     * the heap, whose use then only depends on the size of the box.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param bottomLeft
+     *            the bottom left corner of the bounding box
+     * @param topRight
+     *            the top right corner of the bounding box
+     * @param margin
+     *            the margin added around the bounding box, in meters
+     * @param nodeStore
+     *            the {@link OSMNodeStore} to use, it is not closed by this
+     *            method
+     * @return an {@link OSMMap} with the ways and relations of the osm file
+     *         that touch the bounding box
+     * @throws IllegalArgumentException
+     *             if the corners are not the bottom left and top right ones,
+     *             or if the margin is negative
+     * @throws IOException
+     *             when something goes wrong in the reading process
+     * @throws SAXException
+     *             when something is wrong with the osm file, for example when
+     *             an attributes is missing
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip,
+            PointGeo bottomLeft, PointGeo topRight, double margin,
+            OSMNodeStore nodeStore) throws IOException, SAXException {
+        BoundingBox box = new BoundingBox(bottomLeft, topRight, margin);
+        RelationMembersHandler membersHandler = new RelationMembersHandler();
+        parse(fileName, unGZip, membersHandler);
+        
+        // No attribute is needed to know which ways touch the box.
+        TouchingWaysBuilder touchingWaysBuilder = new TouchingWaysBuilder(
+            nodeStore,
+            box);
+        parse(
+            fileName,
+            unGZip,
+            new XMLHandler(touchingWaysBuilder, Collections.emptySet()));
+        
+        Set<Long> touchingWays = touchingWaysBuilder.touchingWays();
+        Set<Long> touchingRelations = membersHandler.touchingRelations(
+            touchingWays,
+            box,
+            nodeStore);
+        Set<Long> memberRelations = membersHandler
+            .indirectMembers(touchingRelations);
+        Set<Long> keptRelations = new HashSet<>(touchingRelations);
+        
+        keptRelations.addAll(memberRelations);
+        
+        Set<Long> memberWays = membersHandler.wayMembers(keptRelations);
+        
+        OSMMap.Builder mapBuilder = new BoundingBoxBuilder(
+            nodeStore,
+            box,
+            touchingWays,
+            touchingRelations,
+            memberWays,
+            memberRelations);
+        
+        parse(fileName, unGZip, new XMLHandler(mapBuilder, null));
+        
+        return mapBuilder.build();
+    }
+    
+    /**
+     * Reads an osm file and directly converts it to a {@link Map} using the
+     * given {@link OSMToGeoTransformer}, without ever building the whole
+     * {@link OSMMap}. Ungzip the file if the second argument is
+     * <code>true</code>.
+     * <p>
+     * Each way and each relation is handed to the transformer as soon as it
+     * has been parsed. Only nodes and the ways and relations that are members
+     * (possibly indirectly) of a multipolygon relation are kept in memory. To
+     * know which ones they are, the file is read twice: the first pass only
+     * looks at relations.
+     * <p>
+     * The resulting {@link Map} contains the same elements as the one returned
+     * by {@link OSMToGeoTransformer#transform} applied to the result of
+     * {@link #readOSMFile}, in the order they appear in the file. Attributes
+     * that are not used by the transformer (see
+     * {@link OSMToGeoTransformer#relevantKeys}) are dropped while parsing.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param transformer
+     *            the {@link OSMToGeoTransformer} used to convert ways and
+     *            relations
+     * @return the {@link Map} corresponding to the osm file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process
+     * @throws SAXException
+     *             when something is wrong with the osm file, for example when
+     *             an attributes is missing
+     */
+    public static Map readOSMFileToMap(String fileName, boolean unGZip,
+            OSMToGeoTransformer transformer) throws IOException, SAXException {
+        return readOSMFileToMap(fileName, unGZip, false, transformer);
+    }
+    
+    /**
+     * Reads an osm file and directly converts it to a {@link Map}, as
+     * {@link #readOSMFileToMap(String, boolean, OSMToGeoTransformer)} does,
+     * decompressing a gzipped file ahead of the parser if the third argument
+     * is <code>true</code>, as
+     * {@link #readOSMFile(String, boolean, boolean)} does.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param decompressAhead
+     *            boolean that tells if a gzip compressed file is decompressed
+     *            ahead of the parser
+     * @param transformer
+     *            the {@link OSMToGeoTransformer} used to convert ways and
+     *            relations
+     * @return the {@link Map} corresponding to the osm file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process
+     * @throws SAXException
+     *             when something is wrong with the osm file, for example when
+     *             an attributes is missing
+     */
+    public static Map readOSMFileToMap(String fileName, boolean unGZip,
+            boolean decompressAhead, OSMToGeoTransformer transformer)
+            throws IOException, SAXException {
+        return readOSMFileToMap(
+            fileName,
+            unGZip,
+            decompressAhead,
+            transformer,
+            new OSMNodeArrayStore());
+    }
+    
+    /**
+     * Reads an osm file and directly converts it to a {@link Map}, as
+     * {@link #readOSMFileToMap(String, boolean, OSMToGeoTransformer)} does,
+     * but keeping the positions of nodes in the given {@link OSMNodeStore}.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param transformer
+     *            the {@link OSMToGeoTransformer} used to convert ways and
+     *            relations
+     * @param nodeStore
+     *            the {@link OSMNodeStore} to use, it is not closed by this
+     *            method
+     * @return the {@link Map} corresponding to the osm file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process
+     * @throws SAXException
+     *             when something is wrong with the osm file, for example when
+     *             an attributes is missing
+     */
+    public static Map readOSMFileToMap(String fileName, boolean unGZip,
+            OSMToGeoTransformer transformer, OSMNodeStore nodeStore)
+            throws IOException, SAXException {
+        return readOSMFileToMap(
+            fileName,
+            unGZip,
+            false,
+            transformer,
+            nodeStore);
+    }
+    
+    private static Map readOSMFileToMap(String fileName, boolean unGZip,
+            boolean decompressAhead, OSMToGeoTransformer transformer,
+            OSMNodeStore nodeStore) throws IOException, SAXException {
+        RelationMembersHandler membersHandler = new RelationMembersHandler();
+        parse(fileName, unGZip, decompressAhead, membersHandler);
+        
+        Map.Builder mapBuilder = new Map.Builder();
+        
+        StreamingBuilder streamingBuilder = new StreamingBuilder(
+            nodeStore,
+            transformer,
+            mapBuilder,
+            membersHandler.retainedWays(),
+            membersHandler.retainedRelations());
+        
+        parse(
+            fileName,
+            unGZip,
+            decompressAhead,
+            new XMLHandler(streamingBuilder, transformer.relevantKeys()));
+        
+        return mapBuilder.build();
+    }
+    
     private static OSMMap.Builder readOSMFileToBuilder(String fileName,
             boolean unGZip, OSMMap.Builder mapBuilder) throws SAXException,
             IOException {
+        XMLHandler handler = new XMLHandler(mapBuilder, null);
+        
+        parse(fileName, unGZip, handler);
+        
+        return handler.mapBuilder();
+    }
+    
+    private static void parse(String fileName, boolean unGZip,
+            DefaultHandler handler) throws SAXException, IOException {
+        parse(fileName, unGZip, false, handler);
+    }
+    
+    private static void parse(String fileName, boolean unGZip,
+            boolean decompressAhead, DefaultHandler handler)
+            throws SAXException, IOException {
+        InputStream input = open(fileName, unGZip, decompressAhead);
+        
+        try {
+            parse(input, handler);
+        }
+        finally {
+            input.close();
+        }
+    }
+    
+    // Package visibility so that OSMMapUpdater parses files the same way.
+    static void parse(InputStream input, DefaultHandler handler)
+            throws SAXException, IOException {
+        try {
+            SAXParserFactory.newInstance().newSAXParser().parse(input, handler);
+        }
+        catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+    }
+    
+    // Package visibility so that OSMXMLScanner opens files the same way.
+    static InputStream open(String fileName, boolean unGZip,
+            boolean decompressAhead) throws IOException {
         InputStream input = new FileInputStream(fileName);
-        XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-        XMLHandler handler = new XMLHandler(mapBuilder);
         
-        if (unGZip) {
-            input = new GZIPInputStream(input);
+        if (!unGZip) {
+            return input;
         }
         
-        xmlReader.setContentHandler(handler);
+        try {
+            return decompressAhead
+                    ? new ParallelGZIPInputStream(input)
+                    : new GZIPInputStream(input);
+        }
+        catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * An {@link OSMMap.Builder} that transforms ways and relations as soon as
+     * they are added, and only keeps the ones that will be needed later as
+     * members of a multipolygon relation.
+     */
+    static private final class StreamingBuilder extends OSMMap.Builder {
+        private final OSMToGeoTransformer transformer;
+        private final Map.Builder         mapBuilder;
+        private final Set<Long>           retainedWays;
+        private final Set<Long>           retainedRelations;
         
-        xmlReader.parse(new InputSource(input));
+        public StreamingBuilder(OSMNodeStore nodeStore,
+                OSMToGeoTransformer transformer, Map.Builder mapBuilder,
+                Set<Long> retainedWays, Set<Long> retainedRelations) {
+            // Most ways are dropped as soon as they are transformed, so their
+            // nodes are not kept either.
+            super(nodeStore, false);
+            this.transformer = transformer;
+            this.mapBuilder = mapBuilder;
+            this.retainedWays = retainedWays;
+            this.retainedRelations = retainedRelations;
+        }
         
-        input.close();
+        @Override
+        public void addWay(OSMWay way) {
+            transformer.transformWay(way, mapBuilder);
+            
+            if (retainedWays.contains(way.id())) {
+                super.addWay(way);
+            }
+        }
         
-        return handler.mapBuilder();
+        @Override
+        public void addRelation(OSMRelation relation) {
+            transformer.transformRel(relation, mapBuilder);
+            
+            if (retainedRelations.contains(relation.id())) {
+                super.addRelation(relation);
+            }
+        }
+    }
+    
+    // Package visibility so that OSMXMLScanner can use it too.
+    
+    /**
+     * An {@link OSMMap.Builder} that drops ways and relations without
+     * attributes, unless they are members of a relation.
+     */
+    static final class FilteringBuilder extends OSMMap.Builder {
+        private final Set<Long> memberWays;
+        private final Set<Long> memberRelations;
+        
+        public FilteringBuilder(OSMNodeStore nodeStore, Set<Long> memberWays,
+                Set<Long> memberRelations) {
+            super(nodeStore);
+            this.memberWays = memberWays;
+            this.memberRelations = memberRelations;
+        }
+        
+        @Override
+        public void addWay(OSMWay way) {
+            if (!way.attributes().isEmpty() || memberWays.contains(way.id())) {
+                super.addWay(way);
+            }
+        }
+        
+        @Override
+        public void addRelation(OSMRelation relation) {
+            if (!relation.attributes().isEmpty()
+                    || memberRelations.contains(relation.id())) {
+                super.addRelation(relation);
+            }
+        }
+    }
+    
+    /**
+     * An {@link OSMMap.Builder} that only keeps the positions of nodes, and
+     * the ids of the ways that touch a {@link BoundingBox}.
+     */
+    static private final class TouchingWaysBuilder extends OSMMap.Builder {
+        private final BoundingBox box;
+        private final Set<Long>   touchingWays = new HashSet<>();
+        
+        public TouchingWaysBuilder(OSMNodeStore nodeStore, BoundingBox box) {
+            super(nodeStore, false);
+            this.box = box;
+        }
+        
+        @Override
+        public void addWay(OSMWay way) {
+            if (box.touches(way)) {
+                touchingWays.add(way.id());
+            }
+        }
+        
+        @Override
+        public void addRelation(OSMRelation relation) {
+        }
+        
+        public Set<Long> touchingWays() {
+            return touchingWays;
+        }
+    }
+    
+    /**
+     * An {@link OSMMap.Builder} that only keeps the ways and relations that
+     * touch a {@link BoundingBox}, and their members. The members that do not
+     * touch the box are kept aside, so that relations can be built, but are
+     * not part of the built <code>OSMMap</code>. The positions of nodes must
+     * already be in the {@link OSMNodeStore}.
+     */
+    static private final class BoundingBoxBuilder extends OSMMap.Builder {
+        private final BoundingBox                box;
+        private final Set<Long>                  touchingWays;
+        private final Set<Long>                  touchingRelations;
+        private final Set<Long>                  memberWays;
+        private final Set<Long>                  memberRelations;
+        private final HashMap<Long, OSMWay>      hiddenWays      = new HashMap<>();
+        private final HashMap<Long, OSMRelation> hiddenRelations = new HashMap<>();
+        
+        public BoundingBoxBuilder(OSMNodeStore nodeStore, BoundingBox box,
+                Set<Long> touchingWays, Set<Long> touchingRelations,
+                Set<Long> memberWays, Set<Long> memberRelations) {
+            // Nodes are requested for the ways of the whole file, so keeping
+            // them would keep the nodes of the whole file.
+            super(nodeStore, false);
+            this.box = box;
+            this.touchingWays = touchingWays;
+            this.touchingRelations = touchingRelations;
+            this.memberWays = memberWays;
+            this.memberRelations = memberRelations;
+        }
+        
+        @Override
+        public void addNode(long id, double longitude, double latitude) {
+        }
+        
+        // Nodes with attributes are only kept in the box.
+        @Override
+        public void addNode(OSMNode node) {
+            if (box.contains(node.position())) {
+                super.addNode(node);
+            }
+        }
+        
+        @Override
+        public void addWay(OSMWay way) {
+            if (touchingWays.contains(way.id())) {
+                super.addWay(way);
+            }
+            else if (memberWays.contains(way.id())) {
+                hiddenWays.put(way.id(), way);
+            }
+        }
+        
+        @Override
+        public OSMWay wayForId(long id) {
+            OSMWay way = super.wayForId(id);
+            return way != null ? way : hiddenWays.get(id);
+        }
+        
+        @Override
+        public void addRelation(OSMRelation relation) {
+            if (touchingRelations.contains(relation.id())) {
+                super.addRelation(relation);
+            }
+            else if (memberRelations.contains(relation.id())) {
+                hiddenRelations.put(relation.id(), relation);
+            }
+        }
+        
+        @Override
+        public OSMRelation relationForId(long id) {
+            OSMRelation relation = super.relationForId(id);
+            return relation != null ? relation : hiddenRelations.get(id);
+        }
+    }
+    
+    /**
+     * A geographic bounding box, enlarged by a margin.
+     */
+    static private final class BoundingBox {
+        private final double minLon;
+        private final double minLat;
+        private final double maxLon;
+        private final double maxLat;
+        
+        public BoundingBox(PointGeo bottomLeft, PointGeo topRight,
+                double margin) {
+            if (bottomLeft.longitude() > topRight.longitude()
+                    || bottomLeft.latitude() > topRight.latitude()) {
+                throw new IllegalArgumentException(
+                    "corners must be the bottom left and top right ones");
+            }
+            
+            if (!(margin >= 0)) {
+                throw new IllegalArgumentException("margin cannot be negative");
+            }
+            
+            // The margin in longitude is computed at the latitude where
+            // meridians are the closest, so that it is at least the given one.
+            double latMargin = margin / Earth.RADIUS;
+            double maxAbsLat = Math.max(
+                Math.abs(bottomLeft.latitude()),
+                Math.abs(topRight.latitude()));
+            double lonMargin = latMargin
+                    / Math.max(Math.cos(maxAbsLat + latMargin), 1e-9);
+            
+            this.minLon = bottomLeft.longitude() - lonMargin;
+            this.minLat = bottomLeft.latitude() - latMargin;
+            this.maxLon = topRight.longitude() + lonMargin;
+            this.maxLat = topRight.latitude() + latMargin;
+        }
+        
+        public boolean contains(PointGeo point) {
+            return point.longitude() >= minLon && point.longitude() <= maxLon
+                    && point.latitude() >= minLat && point.latitude() <= maxLat;
+        }
+        
+        // Compares the envelope of the way to the box, so that ways crossing
+        // the box without any node in it touch it.
+        public boolean touches(OSMWay way) {
+            double wayMinLon = Double.POSITIVE_INFINITY;
+            double wayMinLat = Double.POSITIVE_INFINITY;
+            double wayMaxLon = Double.NEGATIVE_INFINITY;
+            double wayMaxLat = Double.NEGATIVE_INFINITY;
+            
+            for (OSMNode node : way.nodes()) {
+                PointGeo position = node.position();
+                
+                wayMinLon = Math.min(wayMinLon, position.longitude());
+                wayMinLat = Math.min(wayMinLat, position.latitude());
+                wayMaxLon = Math.max(wayMaxLon, position.longitude());
+                wayMaxLat = Math.max(wayMaxLat, position.latitude());
+            }
+            
+            return wayMinLon <= maxLon && wayMaxLon >= minLon
+                    && wayMinLat <= maxLat && wayMaxLat >= minLat;
+        }
+    }
+    
+    /**
+     * A light handler that only looks at relations, in order to find which
+     * ways and relations are members of a relation, and which ones are
+     * (possibly indirectly) members of a multipolygon relation.
+     */
+    static private final class RelationMembersHandler extends DefaultHandler {
+        private final HashMap<Long, List<Long>> nodeMembers     = new HashMap<>();
+        private final HashMap<Long, List<Long>> wayMembers      = new HashMap<>();
+        private final HashMap<Long, List<Long>> relationMembers = new HashMap<>();
+        private final List<Long>                multipolygons   = new ArrayList<>();
+        private long                            currentId;
+        private List<Long>                      currentNodes;
+        private List<Long>                      currentWays;
+        private List<Long>                      currentRelations;
+        
+        @Override
+        public void startElement(String uri, String lName, String qName,
+                Attributes atts) {
+            switch (qName) {
+                case REL_EL:
+                    currentId = Long.parseLong(atts.getValue(ID_ATTR));
+                    currentNodes = new ArrayList<>();
+                    currentWays = new ArrayList<>();
+                    currentRelations = new ArrayList<>();
+                    break;
+                case REL_MEMBER_EL:
+                    long ref = Long.parseLong(atts.getValue(REF_ATTR));
+                    
+                    switch (atts.getValue(TYPE_ATTR)) {
+                        case NODE_EL:
+                            currentNodes.add(ref);
+                            break;
+                        case WAY_EL:
+                            currentWays.add(ref);
+                            break;
+                        case REL_EL:
+                            currentRelations.add(ref);
+                            break;
+                    }
+                    break;
+                case TAG_EL:
+                    if (currentWays != null
+                            && TYPE_ATTR.equals(atts.getValue(KEY_ATTR))
+                            && "multipolygon".equals(atts.getValue(VALUE_ATTR))) {
+                        multipolygons.add(currentId);
+                    }
+                    break;
+            }
+        }
+        
+        @Override
+        public void endElement(String uri, String lName, String qName) {
+            if (qName.equals(REL_EL)) {
+                if (!currentNodes.isEmpty()) {
+                    nodeMembers.put(currentId, currentNodes);
+                }
+                
+                wayMembers.put(currentId, currentWays);
+                relationMembers.put(currentId, currentRelations);
+                currentNodes = null;
+                currentWays = null;
+                currentRelations = null;
+            }
+        }
+        
+        /**
+         * Returns the ids of the ways that are members of a relation.
+         */
+        public Set<Long> memberWays() {
+            return wayMembers(wayMembers.keySet());
+        }
+        
+        /**
+         * Returns the ids of the relations that are members of a relation.
+         */
+        public Set<Long> memberRelations() {
+            Set<Long> members = new HashSet<>();
+            relationMembers.values().forEach(members::addAll);
+            return members;
+        }
+        
+        /**
+         * Returns the ids of the relations that are members, directly or not,
+         * of a multipolygon relation.
+         */
+        public Set<Long> retainedRelations() {
+            return indirectMembers(multipolygons);
+        }
+        
+        /**
+         * Returns the ids of the ways that are members, directly or not, of a
+         * multipolygon relation.
+         */
+        public Set<Long> retainedWays() {
+            Set<Long> relations = retainedRelations();
+            
+            relations.addAll(multipolygons);
+            
+            return wayMembers(relations);
+        }
+        
+        /**
+         * Returns the ids of the relations that are members, directly or not,
+         * of the given relations.
+         */
+        public Set<Long> indirectMembers(Collection<Long> relations) {
+            Set<Long> members = new HashSet<>();
+            Deque<Long> toDo = new ArrayDeque<>(relations);
+            
+            while (!toDo.isEmpty()) {
+                for (Long member : relationMembers.getOrDefault(
+                    toDo.pop(),
+                    Collections.emptyList())) {
+                    if (members.add(member)) {
+                        toDo.push(member);
+                    }
+                }
+            }
+            
+            return members;
+        }
+        
+        /**
+         * Returns the ids of the ways that are members of the given relations.
+         */
+        public Set<Long> wayMembers(Collection<Long> relations) {
+            Set<Long> members = new HashSet<>();
+            
+            for (Long relation : relations) {
+                members.addAll(wayMembers.getOrDefault(
+                    relation,
+                    Collections.emptyList()));
+            }
+            
+            return members;
+        }
+        
+        /**
+         * Returns the ids of the relations that touch the given box: those
+         * that have, directly or not, a member node in the box or one of the
+         * given ways as member.
+         */
+        public Set<Long> touchingRelations(Set<Long> touchingWays,
+                BoundingBox box, OSMNodeStore nodeStore) {
+            HashMap<Long, List<Long>> parents = new HashMap<>();
+            Deque<Long> toDo = new ArrayDeque<>();
+            
+            for (Long relation : relationMembers.keySet()) {
+                for (Long member : relationMembers.get(relation)) {
+                    parents
+                        .computeIfAbsent(member, m -> new ArrayList<>())
+                        .add(relation);
+                }
+                
+                if (touches(relation, touchingWays, box, nodeStore)) {
+                    toDo.push(relation);
+                }
+            }
+            
+            Set<Long> touching = new HashSet<>(toDo);
+            
+            while (!toDo.isEmpty()) {
+                for (Long parent : parents.getOrDefault(
+                    toDo.pop(),
+                    Collections.emptyList())) {
+                    if (touching.add(parent)) {
+                        toDo.push(parent);
+                    }
+                }
+            }
+            
+            return touching;
+        }
+        
+        private boolean touches(Long relation, Set<Long> touchingWays,
+                BoundingBox box, OSMNodeStore nodeStore) {
+            for (Long way : wayMembers.get(relation)) {
+                if (touchingWays.contains(way)) {
+                    return true;
+                }
+            }
+            
+            for (Long node : nodeMembers.getOrDefault(
+                relation,
+                Collections.emptyList())) {
+                PointGeo position = nodeStore.positionOf(node);
+                
+                if (position != null && box.contains(position)) {
+                    return true;
+                }
+            }
+            
+            return false;
+        }
     }
     
     static private class XMLHandler extends DefaultHandler {
         private final OSMMap.Builder mapBuilder;
+        // null if all attributes are kept
+        private final Set<String>    keysToKeep;
+        private long                 nodeId;
+        private double               nodeLon;
+        private double               nodeLat;
         private OSMNode.Builder      nodeBuilder;
         private OSMRelation.Builder  relBuilder;
         private OSMWay.Builder       wayBuilder;
@@ -94,8 +947,9 @@ public final class OSMMapReader {
         private String               currentEl;
         private State                state = State.IN_ROOT;
         
-        public XMLHandler(OSMMap.Builder mapBuilder) {
+        public XMLHandler(OSMMap.Builder mapBuilder, Set<String> keysToKeep) {
             this.mapBuilder = mapBuilder;
+            this.keysToKeep = keysToKeep;
         }
         
         protected OSMMap.Builder mapBuilder() {
@@ -117,7 +971,7 @@ public final class OSMMapReader {
                 case IN_ROOT:
                     switch (currentEl) {
                         case NODE_EL:
-                            nodeBuilder = parseNodeEl();
+                            parseNodeEl();
                             state = State.IN_NODE;
                             break;
                         case WAY_EL:
@@ -134,6 +988,19 @@ public final class OSMMapReader {
                     switch (currentEl) {
                         case TAG_EL:
                             OSMAttr attr = parseTagEl();
+                            
+                            if (attr == null) {
+                                break;
+                            }
+                            
+                            // The builder is only created for nodes that have
+                            // attributes, see OSMMap.Builder#addNode.
+                            if (nodeBuilder == null) {
+                                nodeBuilder = new OSMNode.Builder(
+                                    nodeId,
+                                    new PointGeo(nodeLon, nodeLat));
+                            }
+                            
                             nodeBuilder.setAttribute(attr.key(), attr.value());
                             break;
                     }
@@ -151,7 +1018,12 @@ public final class OSMMapReader {
                             break;
                         case TAG_EL:
                             OSMAttr attr = parseTagEl();
-                            wayBuilder.setAttribute(attr.key(), attr.value());
+                            
+                            if (attr != null) {
+                                wayBuilder.setAttribute(
+                                    attr.key(),
+                                    attr.value());
+                            }
                             break;
                     }
                     break;
@@ -168,7 +1040,12 @@ public final class OSMMapReader {
                             break;
                         case TAG_EL:
                             OSMAttr attr = parseTagEl();
-                            relBuilder.setAttribute(attr.key(), attr.value());
+                            
+                            if (attr != null) {
+                                relBuilder.setAttribute(
+                                    attr.key(),
+                                    attr.value());
+                            }
                             break;
                     }
                     break;
@@ -185,7 +1062,10 @@ public final class OSMMapReader {
                     break;
                 case IN_NODE:
                     if (currentEl.equals(NODE_EL)) {
-                        if (!nodeBuilder.isIncomplete()) {
+                        if (nodeBuilder == null) {
+                            mapBuilder.addNode(nodeId, nodeLon, nodeLat);
+                        }
+                        else if (!nodeBuilder.isIncomplete()) {
                             mapBuilder.addNode(nodeBuilder.build());
                         }
                         
@@ -213,13 +1093,12 @@ public final class OSMMapReader {
             }
         }
         
-        private OSMNode.Builder parseNodeEl() throws NumberFormatException,
+        private void parseNodeEl() throws NumberFormatException,
                 OSMMissingAttributeException {
-            double lon = Math.toRadians(parseDoubleAttr(LON_ATTR));
-            double lat = Math.toRadians(parseDoubleAttr(LAT_ATTR));
-            PointGeo position = new PointGeo(lon, lat);
-            
-            return new OSMNode.Builder(parseLongAttr(ID_ATTR), position);
+            nodeLon = Math.toRadians(parseDoubleAttr(LON_ATTR));
+            nodeLat = Math.toRadians(parseDoubleAttr(LAT_ATTR));
+            nodeId = parseLongAttr(ID_ATTR);
+            nodeBuilder = null;
         }
         
         private OSMRelation.Builder parseRelationEl()
@@ -266,10 +1145,16 @@ public final class OSMMapReader {
             return new OSMRelation.Member(type, role, ref);
         }
         
+        // Returns null if the attribute is not to be kept.
         private OSMAttr parseTagEl() throws OSMMissingAttributeException {
-            return new OSMAttr(
-                parseStringAttr(KEY_ATTR),
-                parseStringAttr(VALUE_ATTR));
+            String key = parseStringAttr(KEY_ATTR);
+            String value = parseStringAttr(VALUE_ATTR);
+            
+            if (keysToKeep != null && !keysToKeep.contains(key)) {
+                return null;
+            }
+            
+            return new OSMAttr(key, value);
         }
         
         private String parseStringAttr(String name)
@@ -324,7 +1209,7 @@ public final class OSMMapReader {
      * osm file.
      * 
      * @author Matthieu Bovel (250300)
-     *
+     * 
      */
     public static class OSMMissingAttributeException extends SAXParseException {
         // What is a serialVersionUID and why should I use it?
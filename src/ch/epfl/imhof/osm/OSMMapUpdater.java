@@ -0,0 +1,1064 @@
+package ch.epfl.imhof.osm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.MapCache;
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.osm.OSMRelation.Member;
+
+/**
+ * Keeps a {@link Map} up to date with osmChange files (<code>.osc</code>), as
+ * published by OpenStreetMap every minute, hour or day, without reading and
+ * transforming the whole osm file again.
+ * <p>
+ * An <code>OSMMapUpdater</code> reads an osm file and keeps the positions of
+ * all its nodes, its ways and relations, and the part of the {@link Map} that
+ * each way and relation was transformed to. When a change file is applied,
+ * only the ways and relations that are created, modified or deleted, or whose
+ * nodes or members are, are transformed again. Applying a change therefore
+ * costs time proportional to the size of the change, not of the map. The
+ * {@link Map} itself is then put together again from the kept parts (see
+ * {@link #map}), which costs time proportional to the size of the map, but
+ * much less than transforming it again.
+ * <p>
+ * As with {@link OSMMapReader}, ways and relations that have a missing node
+ * or member are ignored, but only until the missing node or member is
+ * created by a later change.
+ * <p>
+ * Everything is kept in memory (except the positions of nodes, if they are
+ * kept in an {@link OSMNodeMappedStore}). To update a map in another run of
+ * the program, the state of an updater can be saved with {@link #save}, and
+ * loaded back with {@link #OSMMapUpdater(File, OSMToGeoTransformer)} without
+ * reading and transforming the osm file again.
+ * 
+ * @see <a href="http://wiki.openstreetmap.org/wiki/OsmChange">OsmChange,
+ *      OpenStreetMap wiki</a>
+ * @author Matthieu Bovel (250300)
+ */
+public final class OSMMapUpdater {
+    private static final long                   MAGIC               = 0x494D484F46555044L; // "IMHOFUPD"
+    private static final int                    VERSION             = 1;
+    private static final Attributes             NO_ATTRIBUTES       = new Attributes.Builder()
+                                                                        .build();
+    
+    private final OSMToGeoTransformer           transformer;
+    // The node store cannot forget a node, so deleted ones are remembered
+    // until they are created again.
+    private final OSMNodeStore                  nodes;
+    private final Set<Long>                     deletedNodes        = new HashSet<>();
+    private final HashMap<Long, OSMWay>         ways                = new HashMap<>();
+    private final HashMap<Long, OSMRelation>    relations           = new HashMap<>();
+    // Ways and relations that have a missing node or member, waiting for it
+    // to be created.
+    private final HashMap<Long, WayChange>      incompleteWays      = new HashMap<>();
+    private final HashMap<Long, RelationChange> incompleteRelations = new HashMap<>();
+    // Reverse references, to find what must be transformed again. They also
+    // include the references of incomplete ways and relations.
+    private final HashMap<Long, List<Long>>     waysOfNode          = new HashMap<>();
+    private final HashMap<Long, List<Long>>     relationsOfNode     = new HashMap<>();
+    private final HashMap<Long, List<Long>>     relationsOfWay      = new HashMap<>();
+    private final HashMap<Long, List<Long>>     relationsOfRelation = new HashMap<>();
+    // What each way and relation was transformed to, in the order of the map.
+    // Ways and relations that were transformed to nothing are not kept.
+    private final LinkedHashMap<Long, Map>      wayParts            = new LinkedHashMap<>();
+    private final LinkedHashMap<Long, Map>      relationParts       = new LinkedHashMap<>();
+    private Map                                 map;
+    
+    /**
+     * Constructs a new <code>OSMMapUpdater</code> for the given osm file,
+     * transformed with the given {@link OSMToGeoTransformer}. Ungzip the file
+     * if the second argument is <code>true</code>.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param transformer
+     *            the {@link OSMToGeoTransformer} used to transform the ways
+     *            and relations of the map
+     * @throws IOException
+     *             when something goes wrong in the reading process
+     * @throws SAXException
+     *             when something is wrong with the osm file, for example when
+     *             an attributes is missing
+     */
+    public OSMMapUpdater(String fileName, boolean unGZip,
+            OSMToGeoTransformer transformer) throws IOException, SAXException {
+        this(fileName, unGZip, transformer, new OSMNodeArrayStore());
+    }
+    
+    /**
+     * Constructs a new <code>OSMMapUpdater</code> for the given osm file, as
+     * {@link #OSMMapUpdater(String, boolean, OSMToGeoTransformer)} does, but
+     * keeping the positions of nodes in the given {@link OSMNodeStore}.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param transformer
+     *            the {@link OSMToGeoTransformer} used to transform the ways
+     *            and relations of the map
+     * @param nodeStore
+     *            the {@link OSMNodeStore} to use, it must be empty, and it is
+     *            not closed by the updater
+     * @throws IOException
+     *             when something goes wrong in the reading process
+     * @throws SAXException
+     *             when something is wrong with the osm file, for example when
+     *             an attributes is missing
+     */
+    public OSMMapUpdater(String fileName, boolean unGZip,
+            OSMToGeoTransformer transformer, OSMNodeStore nodeStore)
+            throws IOException, SAXException {
+        OSMMap osmMap = OSMMapReader.readOSMFile(fileName, unGZip, nodeStore);
+        
+        this.transformer = transformer;
+        this.nodes = nodeStore;
+        
+        for (OSMWay way : osmMap.ways()) {
+            addWay(way);
+        }
+        
+        for (OSMRelation relation : osmMap.relations()) {
+            addRelation(relation);
+        }
+    }
+    
+    /**
+     * Constructs a new <code>OSMMapUpdater</code> from the state saved by
+     * {@link #save} in the given file, without reading the osm file again.
+     * <p>
+     * The saved map is not transformed again, so the given
+     * {@link OSMToGeoTransformer} must transform ways and relations the same
+     * way as the one of the saved updater did.
+     * 
+     * @param file
+     *            the file in which the state was saved
+     * @param transformer
+     *            the {@link OSMToGeoTransformer} used to transform the ways
+     *            and relations of the following changes
+     * @throws IOException
+     *             if the file or the map cache saved with it cannot be read,
+     *             or are not valid
+     */
+    public OSMMapUpdater(File file, OSMToGeoTransformer transformer)
+            throws IOException {
+        this(file, transformer, new OSMNodeArrayStore());
+    }
+    
+    /**
+     * Constructs a new <code>OSMMapUpdater</code> from the state saved in the
+     * given file, as {@link #OSMMapUpdater(File, OSMToGeoTransformer)} does,
+     * but keeping the positions of nodes in the given {@link OSMNodeStore}.
+     * 
+     * @param file
+     *            the file in which the state was saved
+     * @param transformer
+     *            the {@link OSMToGeoTransformer} used to transform the ways
+     *            and relations of the following changes
+     * @param nodeStore
+     *            the {@link OSMNodeStore} to use, it must be empty, and it is
+     *            not closed by the updater
+     * @throws IOException
+     *             if the file or the map cache saved with it cannot be read,
+     *             or are not valid
+     */
+    public OSMMapUpdater(File file, OSMToGeoTransformer transformer,
+            OSMNodeStore nodeStore) throws IOException {
+        File cache = cacheOf(file);
+        
+        // The map cache is written after the state, from which it is made.
+        if (!MapCache.isUpToDate(cache, file)) {
+            throw new IOException(cache + " is missing or out of date");
+        }
+        
+        this.transformer = transformer;
+        this.nodes = nodeStore;
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(file)))) {
+            if (in.readLong() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a saved map updater");
+            }
+            
+            while (in.readBoolean()) {
+                nodeStore.add(in.readLong(), in.readDouble(), in.readDouble());
+            }
+            
+            for (int i = count(in); i > 0; --i) {
+                OSMWay way = readWay(in).build(this::node);
+                
+                if (way == null) {
+                    throw new IOException(file + " has a way with no nodes");
+                }
+                
+                putWay(way);
+            }
+            
+            for (int i = count(in); i > 0; --i) {
+                WayChange definition = readWay(in);
+                
+                incompleteWays.put(definition.id, definition);
+                
+                for (Long nodeId : definition.nodeIds) {
+                    reference(waysOfNode, nodeId, definition.id);
+                }
+            }
+            
+            HashMap<Long, RelationChange> definitions = new HashMap<>();
+            
+            for (int i = count(in); i > 0; --i) {
+                definitions.put(in.readLong(), readRelation(in));
+            }
+            
+            Set<Long> visiting = new HashSet<>();
+            
+            for (Long id : new ArrayList<>(definitions.keySet())) {
+                buildRelation(id, definitions, visiting, false);
+            }
+            
+            for (int i = count(in); i > 0; --i) {
+                long id = in.readLong();
+                RelationChange definition = readRelation(in);
+                
+                incompleteRelations.put(id, definition);
+                referenceMembers(definition, id, true);
+            }
+            
+            // The parts are consecutive in the saved map, in order.
+            map = MapCache.read(cache);
+            
+            int[] offsets = new int[2];
+            
+            readParts(in, wayParts, offsets);
+            readParts(in, relationParts, offsets);
+            
+            if (offsets[0] != map.polyLines().size()
+                    || offsets[1] != map.polygons().size()) {
+                throw new IOException(cache + " does not match " + file);
+            }
+        }
+        catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException(file + " is not a valid saved map updater",
+                e);
+        }
+    }
+    
+    /**
+     * Returns the up to date {@link Map}. It contains the same elements as the
+     * one returned by {@link OSMToGeoTransformer#transform} applied to the
+     * current {@link OSMMap}, but not necessarily in the same order.
+     * <p>
+     * The first call after a change puts the map together from the parts
+     * that each way and relation was transformed to, which takes time
+     * proportional to the size of the map, and the spatial index of the new
+     * map is built the first time it is queried (see {@link Map#query}). The
+     * following calls return the same map.
+     * 
+     * @return the up to date {@link Map}
+     */
+    public Map map() {
+        if (map == null) {
+            Map.Builder mapBuilder = new Map.Builder();
+            
+            wayParts.values().forEach(mapBuilder::addAll);
+            relationParts.values().forEach(mapBuilder::addAll);
+            
+            map = mapBuilder.build();
+        }
+        
+        return map;
+    }
+    
+    /**
+     * Reads an osmChange file and applies it. Ungzip the file if the second
+     * argument is <code>true</code>.
+     * <p>
+     * The file is completely read before anything is transformed again, so
+     * the order of the changes in the file does not matter, except that the
+     * last change to an element wins.
+     * 
+     * @param fileName
+     *            the name of the osmChange file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @throws IOException
+     *             when something goes wrong in the reading process
+     * @throws SAXException
+     *             when something is wrong with the osmChange file, for example
+     *             when an attributes is missing
+     */
+    public void applyChangeFile(String fileName, boolean unGZip)
+            throws IOException, SAXException {
+        ChangeHandler handler = new ChangeHandler(transformer.relevantKeys());
+        InputStream input = OSMMapReader.open(fileName, unGZip, false);
+        
+        try {
+            OSMMapReader.parse(input, handler);
+        }
+        finally {
+            input.close();
+        }
+        
+        apply(handler);
+    }
+    
+    /**
+     * Saves the state of this updater to the given file, so that it can be
+     * loaded back by {@link #OSMMapUpdater(File, OSMToGeoTransformer)}. The
+     * current {@link Map} is saved next to it, in a {@link MapCache} file
+     * whose name is the one of the given file followed by <code>.map</code>.
+     * <p>
+     * Both files are replaced only once they have been completely written.
+     * 
+     * @param file
+     *            the file in which to save the state
+     * @throws IOException
+     *             if the file or the map cache cannot be written
+     */
+    public void save(File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                
+                writeNodes(out);
+                
+                out.writeInt(ways.size());
+                
+                for (OSMWay way : ways.values()) {
+                    writeWay(out, new WayChange(way));
+                }
+                
+                out.writeInt(incompleteWays.size());
+                
+                for (WayChange definition : incompleteWays.values()) {
+                    writeWay(out, definition);
+                }
+                
+                out.writeInt(relations.size());
+                
+                for (OSMRelation relation : relations.values()) {
+                    out.writeLong(relation.id());
+                    writeRelation(out, new RelationChange(relation));
+                }
+                
+                out.writeInt(incompleteRelations.size());
+                
+                for (Long id : incompleteRelations.keySet()) {
+                    out.writeLong(id);
+                    writeRelation(out, incompleteRelations.get(id));
+                }
+                
+                writeParts(out, wayParts);
+                writeParts(out, relationParts);
+            }
+            
+            Files.move(
+                temporary.toPath(),
+                file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+        
+        MapCache.write(map(), cacheOf(file), file);
+    }
+    
+    private void apply(ChangeHandler change) {
+        Set<Long> dirtyWays = new HashSet<>(change.ways.keySet());
+        Set<Long> dirtyRelations = new HashSet<>(change.relations.keySet());
+        
+        for (java.util.Map.Entry<Long, OSMNode> e : change.nodes.entrySet()) {
+            if (e.getValue() == null) {
+                deletedNodes.add(e.getKey());
+            }
+            else {
+                PointGeo position = e.getValue().position();
+                
+                nodes.add(
+                    e.getKey(),
+                    position.longitude(),
+                    position.latitude());
+                deletedNodes.remove(e.getKey());
+            }
+            
+            dirtyWays.addAll(referencing(waysOfNode, e.getKey()));
+            dirtyRelations.addAll(referencing(relationsOfNode, e.getKey()));
+        }
+        
+        for (Long id : dirtyWays) {
+            OSMWay oldWay = ways.get(id);
+            WayChange oldDefinition = oldWay != null
+                    ? new WayChange(oldWay)
+                    : incompleteWays.remove(id);
+            // Ways that are not in the change file have nodes that changed.
+            WayChange definition = change.ways.containsKey(id)
+                    ? change.ways.get(id)
+                    : oldDefinition;
+            
+            if (oldWay != null) {
+                ways.remove(id);
+            }
+            
+            if (oldDefinition != null) {
+                for (Long nodeId : oldDefinition.nodeIds) {
+                    unreference(waysOfNode, nodeId, id);
+                }
+            }
+            
+            dirtyRelations.addAll(referencing(relationsOfWay, id));
+            
+            OSMWay way = definition == null
+                    ? null
+                    : definition.build(this::node);
+            
+            if (way != null) {
+                addWay(way);
+            }
+            else {
+                wayParts.remove(id);
+                
+                if (definition != null) {
+                    incompleteWays.put(id, definition);
+                    
+                    for (Long nodeId : definition.nodeIds) {
+                        reference(waysOfNode, nodeId, id);
+                    }
+                }
+            }
+        }
+        
+        // Relations whose member relations change must be built again too.
+        List<Long> toDo = new ArrayList<>(dirtyRelations);
+        
+        while (!toDo.isEmpty()) {
+            Long id = toDo.remove(toDo.size() - 1);
+            
+            for (Long parent : referencing(relationsOfRelation, id)) {
+                if (dirtyRelations.add(parent)) {
+                    toDo.add(parent);
+                }
+            }
+        }
+        
+        HashMap<Long, RelationChange> definitions = new HashMap<>();
+        
+        for (Long id : dirtyRelations) {
+            OSMRelation oldRelation = relations.remove(id);
+            RelationChange oldDefinition = oldRelation != null
+                    ? new RelationChange(oldRelation)
+                    : incompleteRelations.remove(id);
+            // Relations that are not in the change file have members that
+            // changed.
+            RelationChange definition = change.relations.containsKey(id)
+                    ? change.relations.get(id)
+                    : oldDefinition;
+            
+            if (oldDefinition != null) {
+                referenceMembers(oldDefinition, id, false);
+            }
+            
+            if (definition != null) {
+                definitions.put(id, definition);
+            }
+            else {
+                relationParts.remove(id);
+            }
+        }
+        
+        // Member relations are built before the relations they belong to.
+        Set<Long> visiting = new HashSet<>();
+        
+        for (Long id : new ArrayList<>(definitions.keySet())) {
+            buildRelation(id, definitions, visiting, true);
+        }
+        
+        map = null;
+    }
+    
+    // Relations are transformed only if the last argument is true, otherwise
+    // their parts must be known already.
+    private OSMRelation buildRelation(long id,
+            HashMap<Long, RelationChange> definitions, Set<Long> visiting,
+            boolean transform) {
+        RelationChange definition = definitions.remove(id);
+        
+        if (definition == null) {
+            return relations.get(id);
+        }
+        
+        visiting.add(id);
+        
+        List<Member> members = new ArrayList<>();
+        OSMRelation relation = null;
+        
+        for (MemberChange m : definition.members) {
+            OSMEntity member = null;
+            
+            switch (m.type) {
+                case NODE:
+                    member = node(m.ref);
+                    break;
+                case WAY:
+                    member = ways.get(m.ref);
+                    break;
+                case RELATION:
+                    // A relation that contains itself, even indirectly, is
+                    // incomplete.
+                    if (!visiting.contains(m.ref)) {
+                        member = buildRelation(
+                            m.ref,
+                            definitions,
+                            visiting,
+                            transform);
+                    }
+                    break;
+            }
+            
+            if (member == null) {
+                members = null;
+                break;
+            }
+            
+            members.add(new Member(m.type, m.role, member));
+        }
+        
+        if (members != null) {
+            relation = new OSMRelation(id, members, definition.attributes);
+            
+            if (transform) {
+                addRelation(relation);
+            }
+            else {
+                putRelation(relation);
+            }
+        }
+        else {
+            relationParts.remove(id);
+            incompleteRelations.put(id, definition);
+            referenceMembers(definition, id, true);
+        }
+        
+        visiting.remove(id);
+        return relation;
+    }
+    
+    private void addWay(OSMWay way) {
+        putWay(way);
+        
+        Map.Builder part = new Map.Builder();
+        transformer.transformWay(way, part);
+        putPart(wayParts, way.id(), part.build());
+    }
+    
+    private void addRelation(OSMRelation relation) {
+        putRelation(relation);
+        
+        Map.Builder part = new Map.Builder();
+        transformer.transformRel(relation, part);
+        putPart(relationParts, relation.id(), part.build());
+    }
+    
+    // Adds the given way and its references, without transforming it.
+    private void putWay(OSMWay way) {
+        ways.put(way.id(), way);
+        
+        for (OSMNode node : way.nodes()) {
+            reference(waysOfNode, node.id(), way.id());
+        }
+    }
+    
+    // Adds the given relation and its references, without transforming it.
+    private void putRelation(OSMRelation relation) {
+        relations.put(relation.id(), relation);
+        
+        for (Member member : relation.members()) {
+            reference(
+                referencesOf(member.type()),
+                member.member().id(),
+                relation.id());
+        }
+    }
+    
+    // Adds or removes the references of the members of the given relation.
+    private void referenceMembers(RelationChange definition, long id,
+            boolean add) {
+        for (MemberChange member : definition.members) {
+            if (add) {
+                reference(referencesOf(member.type), member.ref, id);
+            }
+            else {
+                unreference(referencesOf(member.type), member.ref, id);
+            }
+        }
+    }
+    
+    private HashMap<Long, List<Long>> referencesOf(Member.Type type) {
+        switch (type) {
+            case NODE:
+                return relationsOfNode;
+            case WAY:
+                return relationsOfWay;
+            default:
+                return relationsOfRelation;
+        }
+    }
+    
+    // Returns null if the node does not exist.
+    private OSMNode node(long id) {
+        if (deletedNodes.contains(id)) {
+            return null;
+        }
+        
+        PointGeo position = nodes.positionOf(id);
+        
+        return position == null
+                ? null
+                : new OSMNode(id, position, NO_ATTRIBUTES);
+    }
+    
+    // A modified way or relation keeps its place in the map, unless it was
+    // transformed to nothing before.
+    private static void putPart(LinkedHashMap<Long, Map> parts, long id,
+            Map part) {
+        if (part.polyLines().isEmpty() && part.polygons().isEmpty()) {
+            parts.remove(id);
+        }
+        else {
+            parts.put(id, part);
+        }
+    }
+    
+    private static void reference(HashMap<Long, List<Long>> references,
+            long id, long referencingId) {
+        references.computeIfAbsent(id, k -> new ArrayList<>(1)).add(
+            referencingId);
+    }
+    
+    private static void unreference(HashMap<Long, List<Long>> references,
+            long id, long referencingId) {
+        List<Long> referencing = references.get(id);
+        
+        if (referencing != null) {
+            referencing.remove(referencingId);
+            
+            if (referencing.isEmpty()) {
+                references.remove(id);
+            }
+        }
+    }
+    
+    // Returns a copy, as the references change while they are used.
+    private static List<Long> referencing(
+            HashMap<Long, List<Long>> references, long id) {
+        return new ArrayList<>(references.getOrDefault(
+            id,
+            new ArrayList<>()));
+    }
+    
+    // Deleted nodes are not saved, so that they are missing once loaded.
+    private void writeNodes(DataOutput out) throws IOException {
+        try {
+            nodes.forEach((id, longitude, latitude) -> {
+                if (deletedNodes.contains(id)) {
+                    return;
+                }
+                
+                try {
+                    out.writeBoolean(true);
+                    out.writeLong(id);
+                    out.writeDouble(longitude);
+                    out.writeDouble(latitude);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        
+        out.writeBoolean(false);
+    }
+    
+    private static void writeWay(DataOutput out, WayChange definition)
+            throws IOException {
+        out.writeLong(definition.id);
+        out.writeInt(definition.nodeIds.size());
+        
+        for (Long nodeId : definition.nodeIds) {
+            out.writeLong(nodeId);
+        }
+        
+        writeAttributes(out, definition.attributes);
+    }
+    
+    private static WayChange readWay(DataInput in) throws IOException {
+        long id = in.readLong();
+        List<Long> nodeIds = new ArrayList<>();
+        
+        for (int i = count(in); i > 0; --i) {
+            nodeIds.add(in.readLong());
+        }
+        
+        return new WayChange(id, nodeIds, readAttributes(in));
+    }
+    
+    private static void writeRelation(DataOutput out,
+            RelationChange definition) throws IOException {
+        out.writeInt(definition.members.size());
+        
+        for (MemberChange member : definition.members) {
+            out.writeByte(member.type.ordinal());
+            out.writeLong(member.ref);
+            out.writeUTF(member.role);
+        }
+        
+        writeAttributes(out, definition.attributes);
+    }
+    
+    private static RelationChange readRelation(DataInput in)
+            throws IOException {
+        List<MemberChange> members = new ArrayList<>();
+        
+        for (int i = count(in); i > 0; --i) {
+            members.add(new MemberChange(
+                Member.Type.values()[in.readByte()],
+                in.readLong(),
+                in.readUTF()));
+        }
+        
+        return new RelationChange(members, readAttributes(in));
+    }
+    
+    private static void writeAttributes(DataOutput out, Attributes attributes)
+            throws IOException {
+        out.writeInt(attributes.keys().size());
+        
+        for (String key : attributes.keys()) {
+            out.writeUTF(key);
+            out.writeUTF(attributes.get(key));
+        }
+    }
+    
+    private static Attributes readAttributes(DataInput in) throws IOException {
+        Attributes.Builder builder = new Attributes.Builder();
+        
+        for (int i = count(in); i > 0; --i) {
+            builder.put(in.readUTF(), in.readUTF());
+        }
+        
+        return builder.build();
+    }
+    
+    // Only the number of polylines and polygons of each part is saved, as
+    // they are saved in the map cache.
+    private static void writeParts(DataOutput out,
+            LinkedHashMap<Long, Map> parts) throws IOException {
+        out.writeInt(parts.size());
+        
+        for (java.util.Map.Entry<Long, Map> e : parts.entrySet()) {
+            out.writeLong(e.getKey());
+            out.writeInt(e.getValue().polyLines().size());
+            out.writeInt(e.getValue().polygons().size());
+        }
+    }
+    
+    // The offsets of the next part in the polylines and the polygons of the
+    // map are updated.
+    private void readParts(DataInput in, LinkedHashMap<Long, Map> parts,
+            int[] offsets) throws IOException {
+        for (int i = count(in); i > 0; --i) {
+            long id = in.readLong();
+            int polyLines = count(in);
+            int polygons = count(in);
+            
+            parts.put(id, new Map(
+                map.polyLines().subList(offsets[0], offsets[0] + polyLines),
+                map.polygons().subList(offsets[1], offsets[1] + polygons)));
+            
+            offsets[0] += polyLines;
+            offsets[1] += polygons;
+        }
+    }
+    
+    private static int count(DataInput in) throws IOException {
+        int count = in.readInt();
+        
+        if (count < 0) {
+            throw new IOException("negative count: " + count);
+        }
+        
+        return count;
+    }
+    
+    private static File cacheOf(File file) {
+        return new File(file.getPath() + ".map");
+    }
+    
+    /**
+     * A way as described in a change file, whose nodes are given by their
+     * ids.
+     */
+    static private final class WayChange {
+        private final long       id;
+        private final List<Long> nodeIds;
+        private final Attributes attributes;
+        
+        public WayChange(long id, List<Long> nodeIds, Attributes attributes) {
+            this.id = id;
+            this.nodeIds = nodeIds;
+            this.attributes = attributes;
+        }
+        
+        public WayChange(OSMWay way) {
+            this(way.id(), new ArrayList<>(), way.attributes());
+            
+            for (OSMNode node : way.nodes()) {
+                nodeIds.add(node.id());
+            }
+        }
+        
+        // Returns null if a node is missing.
+        public OSMWay build(LongFunction<OSMNode> nodes) {
+            List<OSMNode> wayNodes = new ArrayList<>(nodeIds.size());
+            
+            for (Long nodeId : nodeIds) {
+                OSMNode node = nodes.apply(nodeId);
+                
+                if (node == null) {
+                    return null;
+                }
+                
+                wayNodes.add(node);
+            }
+            
+            if (wayNodes.size() < 2) {
+                return null;
+            }
+            
+            return new OSMWay(id, wayNodes, attributes);
+        }
+    }
+    
+    /**
+     * A relation as described in a change file, whose members are given by
+     * their ids.
+     */
+    static private final class RelationChange {
+        private final List<MemberChange> members;
+        private final Attributes         attributes;
+        
+        public RelationChange(List<MemberChange> members,
+                Attributes attributes) {
+            this.members = members;
+            this.attributes = attributes;
+        }
+        
+        public RelationChange(OSMRelation relation) {
+            this(new ArrayList<>(), relation.attributes());
+            
+            for (Member member : relation.members()) {
+                members.add(new MemberChange(
+                    member.type(),
+                    member.member().id(),
+                    member.role()));
+            }
+        }
+    }
+    
+    static private final class MemberChange {
+        private final Member.Type type;
+        private final long        ref;
+        private final String      role;
+        
+        public MemberChange(Member.Type type, long ref, String role) {
+            this.type = type;
+            this.ref = ref;
+            this.role = role;
+        }
+    }
+    
+    /**
+     * Reads the changes of an osmChange file. The last change to an element
+     * wins, and deleted elements are mapped to <code>null</code>.
+     */
+    static private final class ChangeHandler extends DefaultHandler {
+        private static final String                 DELETE_EL = "delete";
+        
+        private final Set<String>                   keysToKeep;
+        private final HashMap<Long, OSMNode>        nodes     = new HashMap<>();
+        private final HashMap<Long, WayChange>      ways      = new HashMap<>();
+        private final HashMap<Long, RelationChange> relations = new HashMap<>();
+        private Locator                             locator;
+        private org.xml.sax.Attributes              currentAtts;
+        private String                              currentEl;
+        private boolean                             inDelete  = false;
+        private long                                id;
+        private PointGeo                            position;
+        private Attributes.Builder                  attributes;
+        private List<Long>                          nodeIds;
+        private List<MemberChange>                  members;
+        
+        public ChangeHandler(Set<String> keysToKeep) {
+            this.keysToKeep = keysToKeep;
+        }
+        
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            this.locator = locator;
+        }
+        
+        @Override
+        public void startElement(String uri, String lName, String qName,
+                org.xml.sax.Attributes atts) throws SAXException {
+            currentAtts = atts;
+            currentEl = qName;
+            
+            switch (currentEl) {
+                case DELETE_EL:
+                    inDelete = true;
+                    break;
+                case "node":
+                    // Deleted nodes do not need a position.
+                    if (!inDelete) {
+                        position = new PointGeo(
+                            Math.toRadians(parseDoubleAttr("lon")),
+                            Math.toRadians(parseDoubleAttr("lat")));
+                    }
+                    
+                    startEntity();
+                    break;
+                case "way":
+                case "relation":
+                    startEntity();
+                    break;
+                case "nd":
+                    nodeIds.add(parseLongAttr("ref"));
+                    break;
+                case "member":
+                    members.add(new MemberChange(
+                        parseMemberType(),
+                        parseLongAttr("ref"),
+                        parseStringAttr("role")));
+                    break;
+                case "tag":
+                    String key = parseStringAttr("k");
+                    
+                    if (keysToKeep.contains(key)) {
+                        attributes.put(key, parseStringAttr("v"));
+                    }
+                    break;
+            }
+        }
+        
+        @Override
+        public void endElement(String uri, String lName, String qName) {
+            switch (qName) {
+                case DELETE_EL:
+                    inDelete = false;
+                    break;
+                case "node":
+                    nodes.put(id, inDelete ? null : new OSMNode(
+                        id,
+                        position,
+                        attributes.build()));
+                    break;
+                case "way":
+                    ways.put(id, inDelete ? null : new WayChange(
+                        id,
+                        nodeIds,
+                        attributes.build()));
+                    break;
+                case "relation":
+                    relations.put(id, inDelete ? null : new RelationChange(
+                        members,
+                        attributes.build()));
+                    break;
+            }
+        }
+        
+        private void startEntity()
+                throws OSMMapReader.OSMMissingAttributeException {
+            id = parseLongAttr("id");
+            attributes = new Attributes.Builder();
+            nodeIds = new ArrayList<>();
+            members = new ArrayList<>();
+        }
+        
+        private Member.Type parseMemberType() throws SAXException {
+            String type = parseStringAttr("type");
+            
+            switch (type) {
+                case "node":
+                    return Member.Type.NODE;
+                case "way":
+                    return Member.Type.WAY;
+                case "relation":
+                    return Member.Type.RELATION;
+                default:
+                    throw new SAXParseException(
+                        "unknown member type `" + type + "`",
+                        locator);
+            }
+        }
+        
+        private String parseStringAttr(String name)
+                throws OSMMapReader.OSMMissingAttributeException {
+            String str = currentAtts.getValue(name);
+            
+            if (str == null) {
+                throw new OSMMapReader.OSMMissingAttributeException(
+                    currentEl,
+                    name,
+                    locator);
+            }
+            
+            return str;
+        }
+        
+        private long parseLongAttr(String name)
+                throws OSMMapReader.OSMMissingAttributeException {
+            return Long.parseLong(parseStringAttr(name));
+        }
+        
+        private double parseDoubleAttr(String name)
+                throws OSMMapReader.OSMMissingAttributeException {
+            return Double.parseDouble(parseStringAttr(name));
+        }
+    }
+}
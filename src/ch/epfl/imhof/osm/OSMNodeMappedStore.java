@@ -0,0 +1,191 @@
+package ch.epfl.imhof.osm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+import ch.epfl.imhof.PointGeo;
+
+/**
+ * An {@link OSMNodeStore} that keeps node positions in a memory-mapped file
+ * instead of on the heap, for extracts with too many nodes to fit in memory.
+ * <p>
+ * The file is a dense array indexed by node id: the position of node
+ * <code>id</code> is stored at offset <code>8 * id</code>, as two
+ * <code>int</code>s in units of 10<sup>-7</sup> degrees (the precision of
+ * coordinates in osm files). Lookups are therefore O(1) and use a bounded
+ * amount of heap, the operating system's page cache doing the rest. Parts of
+ * the file that are never written are not allocated on file systems that
+ * support sparse files.
+ * <p>
+ * Positions read back can differ from the ones that were added by less than
+ * 10<sup>-7</sup> degrees (about 1 cm).
+ * 
+ * @see <a
+ *      href="http://osmcode.org/osmium-concepts/#indexes">Indexes,
+ *      Osmium concepts manual</a>
+ * @author Matthieu Bovel (250300)
+ */
+public final class OSMNodeMappedStore implements OSMNodeStore {
+    // Each segment maps 2^27 ids, that is 1 GiB of the file, as a single
+    // MappedByteBuffer cannot be larger than 2 GiB.
+    private static final int        SEGMENT_BITS = 27;
+    private static final int        SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+    private static final int        ENTRY_SIZE   = 8;
+    private static final double     UNITS        = 1e7;
+    // Added to latitudes so that a stored latitude is never 0, which marks a
+    // missing node.
+    private static final int        LAT_OFFSET   = 1_000_000_000;
+    
+    private final RandomAccessFile  file;
+    private final FileChannel       channel;
+    private MappedByteBuffer[]      segments     = new MappedByteBuffer[0];
+    
+    /**
+     * Constructs a new <code>OSMNodeMappedStore</code> backed by the given
+     * file. The file is created if it does not exist, and truncated
+     * otherwise.
+     * 
+     * @param file
+     *            the file in which to store node positions
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public OSMNodeMappedStore(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.channel = this.file.getChannel();
+    }
+    
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws IllegalArgumentException
+     *             if <code>id</code> is negative
+     * @throws UncheckedIOException
+     *             if the file cannot be extended
+     */
+    @Override
+    public void add(long id, double longitude, double latitude) {
+        MappedByteBuffer segment = segment(id, true);
+        int offset = offset(id);
+        
+        segment.putInt(offset, toUnits(longitude));
+        segment.putInt(offset + 4, toUnits(latitude) + LAT_OFFSET);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PointGeo positionOf(long id) {
+        if (id < 0) {
+            return null;
+        }
+        
+        MappedByteBuffer segment = segment(id, false);
+        
+        if (segment == null) {
+            return null;
+        }
+        
+        int offset = offset(id);
+        int lat = segment.getInt(offset + 4);
+        
+        if (lat == 0) {
+            return null;
+        }
+        
+        return new PointGeo(
+            fromUnits(segment.getInt(offset)),
+            fromUnits(lat - LAT_OFFSET));
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every entry of the parts of the file that were mapped is read, so this
+     * takes time proportional to the largest id, not to the number of nodes.
+     */
+    @Override
+    public void forEach(NodeAction action) {
+        for (int i = 0; i != segments.length; ++i) {
+            if (segments[i] == null) {
+                continue;
+            }
+            
+            for (int j = 0; j != 1 << SEGMENT_BITS; ++j) {
+                int offset = j * ENTRY_SIZE;
+                int lat = segments[i].getInt(offset + 4);
+                
+                if (lat != 0) {
+                    action.accept(
+                        ((long) i << SEGMENT_BITS) + j,
+                        fromUnits(segments[i].getInt(offset)),
+                        fromUnits(lat - LAT_OFFSET));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Closes the underlying file. Its content is left on disk.
+     * 
+     * @throws IOException
+     *             if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        segments = new MappedByteBuffer[0];
+        file.close();
+    }
+    
+    private MappedByteBuffer segment(long id, boolean create) {
+        if (id < 0) {
+            throw new IllegalArgumentException("node id cannot be negative");
+        }
+        
+        int i = (int) (id >>> SEGMENT_BITS);
+        
+        if (i >= segments.length) {
+            if (!create) {
+                return null;
+            }
+            
+            segments = Arrays.copyOf(segments, i + 1);
+        }
+        
+        if (segments[i] == null && create) {
+            try {
+                segments[i] = channel.map(
+                    MapMode.READ_WRITE,
+                    ((long) i << SEGMENT_BITS) * ENTRY_SIZE,
+                    (long) ENTRY_SIZE << SEGMENT_BITS);
+                segments[i].order(ByteOrder.nativeOrder());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        return segments[i];
+    }
+    
+    private static int offset(long id) {
+        return ((int) id & SEGMENT_MASK) * ENTRY_SIZE;
+    }
+    
+    private static int toUnits(double angle) {
+        return (int) Math.round(Math.toDegrees(angle) * UNITS);
+    }
+    
+    private static double fromUnits(int units) {
+        return Math.toRadians(units / UNITS);
+    }
+}
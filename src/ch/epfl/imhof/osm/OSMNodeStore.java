@@ -0,0 +1,66 @@
+package ch.epfl.imhof.osm;
+
+import java.io.Closeable;
+
+import ch.epfl.imhof.PointGeo;
+
+/**
+ * Stores the positions of open street map nodes, given their ids.
+ * <p>
+ * An {@link OSMMap.Builder} uses a <code>OSMNodeStore</code> to remember the
+ * position of every node it is given, as ways need them to be built.
+ * 
+ * @see OSMMapReader#readOSMFile(String, boolean, OSMNodeStore)
+ * @author Matthieu Bovel (250300)
+ */
+public interface OSMNodeStore extends Closeable {
+    /**
+     * Adds the position of a node, replacing the previous one if a node with
+     * the same id has already been added.
+     * 
+     * @param id
+     *            the node's id
+     * @param longitude
+     *            the node's longitude, in radians
+     * @param latitude
+     *            the node's latitude, in radians
+     */
+    void add(long id, double longitude, double latitude);
+    
+    /**
+     * Returns the position of the node with the given id, or
+     * <code>null</code> if there is no such node.
+     * 
+     * @param id
+     *            the node's id
+     * @return the position of the node, or <code>null</code>
+     */
+    PointGeo positionOf(long id);
+    
+    /**
+     * Performs the given action for each node of this store, in no particular
+     * order.
+     * 
+     * @param action
+     *            the action to perform for each node
+     */
+    void forEach(NodeAction action);
+    
+    /**
+     * An action performed for each node of an {@link OSMNodeStore}.
+     */
+    @FunctionalInterface
+    interface NodeAction {
+        /**
+         * Performs this action for the given node.
+         * 
+         * @param id
+         *            the node's id
+         * @param longitude
+         *            the node's longitude, in radians
+         * @param latitude
+         *            the node's latitude, in radians
+         */
+        void accept(long id, double longitude, double latitude);
+    }
+}
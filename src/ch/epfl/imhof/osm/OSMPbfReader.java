@@ -0,0 +1,725 @@
+package ch.epfl.imhof.osm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import ch.epfl.imhof.PointGeo;
+
+/**
+ * The <code>OSMPbfReader</code> class is used to create an {@link OSMMap}
+ * given an osm file in the protocol buffer binary format (<code>.osm.pbf</code>
+ * ). <code>OSMPbfReader</code> is not instanciable.
+ * <p>
+ * A pbf file is a sequence of independently compressed blobs. Blobs are
+ * inflated and decoded in parallel, by as many threads as there are
+ * processors, but they are added to the {@link OSMMap.Builder} in the order
+ * they appear in the file, so that the result is the same as with
+ * {@link OSMMapReader}: incomplete ways and relations are ignored.
+ * 
+ * @see <a href="http://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format,
+ *      OpenStreetMap Wiki</a>
+ * @author Matthieu Bovel (250300)
+ */
+public final class OSMPbfReader {
+    private static final String   HEADER_BLOB        = "OSMHeader";
+    private static final String   DATA_BLOB          = "OSMData";
+    private static final int      MAX_HEADER_SIZE    = 64 * 1024;
+    private static final int      MAX_BLOB_SIZE      = 32 * 1024 * 1024;
+    private static final double   NANO               = 1e-9;
+    private static final String[] SUPPORTED_FEATURES = { "OsmSchema-V0.6",
+            "DenseNodes"                            };
+    
+    private OSMPbfReader() {
+    }
+    
+    /**
+     * Reads an osm pbf file and returns an {@link OSMMap}.
+     * 
+     * @param fileName
+     *            the name of the osm pbf file to read
+     * @return an {@link OSMMap} based on the osm pbf file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process, or when
+     *             the file is malformed or uses an unsupported feature
+     */
+    public static OSMMap readOSMFile(String fileName) throws IOException {
+        OSMMap.Builder mapBuilder = new OSMMap.Builder();
+        readOSMFileToBuilder(fileName, mapBuilder);
+        return mapBuilder.build();
+    }
+    
+    /**
+     * Reads an osm pbf file and returns an {@link OSMMap}, keeping the
+     * positions of nodes in the given {@link OSMNodeStore} while reading.
+     * 
+     * @param fileName
+     *            the name of the osm pbf file to read
+     * @param nodeStore
+     *            the {@link OSMNodeStore} to use, it is not closed by this
+     *            method
+     * @return an {@link OSMMap} based on the osm pbf file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process, or when
+     *             the file is malformed or uses an unsupported feature
+     */
+    public static OSMMap readOSMFile(String fileName, OSMNodeStore nodeStore)
+            throws IOException {
+        OSMMap.Builder mapBuilder = new OSMMap.Builder(nodeStore);
+        readOSMFileToBuilder(fileName, mapBuilder);
+        return mapBuilder.build();
+    }
+    
+    private static void readOSMFileToBuilder(String fileName,
+            OSMMap.Builder mapBuilder) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // Blocks being decoded, in file order. Their number is bounded so that
+        // the whole file is never held in memory.
+        Deque<Future<Block>> pending = new ArrayDeque<>();
+        
+        try (DataInputStream input = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(fileName)))) {
+            RawBlob blob;
+            
+            while ((blob = readBlob(input)) != null) {
+                byte[] data = blob.data;
+                
+                switch (blob.type) {
+                    case HEADER_BLOB:
+                        checkHeader(inflate(data));
+                        break;
+                    case DATA_BLOB:
+                        if (pending.size() == 2 * threads) {
+                            waitFor(pending.remove()).addTo(mapBuilder);
+                        }
+                        
+                        pending.add(executor.submit(() -> new Block(
+                            inflate(data))));
+                        break;
+                    // Unknown blob types must be ignored.
+                }
+            }
+            
+            while (!pending.isEmpty()) {
+                waitFor(pending.remove()).addTo(mapBuilder);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    // Reads a BlobHeader and the Blob that follows it. Returns null at the
+    // end of the file.
+    private static RawBlob readBlob(DataInputStream input) throws IOException {
+        int first = input.read();
+        
+        if (first < 0) {
+            return null;
+        }
+        
+        int headerSize = first << 24 | input.readUnsignedByte() << 16
+                | input.readUnsignedShort();
+        
+        if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+            throw new IOException("invalid blob header size " + headerSize);
+        }
+        
+        byte[] header = new byte[headerSize];
+        input.readFully(header);
+        
+        ProtobufReader reader = new ProtobufReader(header);
+        String type = null;
+        long blobSize = -1;
+        
+        while (reader.next()) {
+            switch (reader.field()) {
+                case 1:
+                    type = reader.readString();
+                    break;
+                case 3:
+                    blobSize = reader.readVarint();
+                    break;
+                default:
+                    reader.skip();
+            }
+        }
+        
+        if (type == null || blobSize < 0 || blobSize > MAX_BLOB_SIZE) {
+            throw new IOException("invalid blob header");
+        }
+        
+        byte[] blob = new byte[(int) blobSize];
+        input.readFully(blob);
+        
+        return new RawBlob(type, blob);
+    }
+    
+    // Returns the uncompressed content of a Blob message.
+    private static byte[] inflate(byte[] blob) throws IOException {
+        ProtobufReader reader = new ProtobufReader(blob);
+        byte[] raw = null;
+        byte[] zlib = null;
+        int rawSize = -1;
+        
+        while (reader.next()) {
+            switch (reader.field()) {
+                case 1:
+                    raw = reader.readBytes();
+                    break;
+                case 2:
+                    rawSize = (int) reader.readVarint();
+                    break;
+                case 3:
+                    zlib = reader.readBytes();
+                    break;
+                case 4:
+                case 5:
+                case 6:
+                case 7:
+                    throw new IOException("unsupported blob compression");
+                default:
+                    reader.skip();
+            }
+        }
+        
+        if (raw != null) {
+            return raw;
+        }
+        
+        if (zlib == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+            throw new IOException("invalid blob");
+        }
+        
+        Inflater inflater = new Inflater();
+        
+        try {
+            byte[] data = new byte[rawSize];
+            int size = 0;
+            inflater.setInput(zlib);
+            
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(data, size, rawSize - size);
+                size += inflated;
+                
+                // Stops on truncated data, preset dictionaries or when there
+                // is more data than announced, instead of looping forever.
+                boolean stuck = inflater.needsInput()
+                        || inflater.needsDictionary() || size == rawSize;
+                
+                if (inflated == 0 && stuck) {
+                    break;
+                }
+            }
+            
+            if (size != rawSize || !inflater.finished()) {
+                throw new IOException("invalid blob size");
+            }
+            
+            return data;
+        }
+        catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+    
+    private static void checkHeader(byte[] header) throws IOException {
+        ProtobufReader reader = new ProtobufReader(header);
+        
+        while (reader.next()) {
+            if (reader.field() == 4) {
+                String feature = reader.readString();
+                
+                if (!Arrays.asList(SUPPORTED_FEATURES).contains(feature)) {
+                    throw new IOException("unsupported feature: " + feature);
+                }
+            }
+            else {
+                reader.skip();
+            }
+        }
+    }
+    
+    private static Block waitFor(Future<Block> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            
+            throw new IOException(e.getCause());
+        }
+    }
+    
+    /**
+     * The decoded content of a PrimitiveBlock message.
+     * <p>
+     * Everything that does not depend on other blocks is done while decoding,
+     * in a worker thread. Looking up the nodes of ways and the members of
+     * relations is left to {@link #addTo}, which is called on the reading
+     * thread, once the previous blocks have been added.
+     */
+    private static final class Block {
+        private String[]                        strings     = new String[0];
+        private long                            granularity = 100;
+        private long                            latOffset   = 0;
+        private long                            lonOffset   = 0;
+        
+        // Nodes are kept in parallel arrays, only tagged nodes are objects.
+        private long[]                          nodeIds     = new long[0];
+        private double[]                        longitudes  = new double[0];
+        private double[]                        latitudes   = new double[0];
+        private OSMNode[]                       taggedNodes = new OSMNode[0];
+        private int                             nodesCount  = 0;
+        
+        private final List<OSMWay.Builder>      ways        = new ArrayList<>();
+        private final List<long[]>              wayRefs     = new ArrayList<>();
+        private final List<OSMRelation.Builder> relations   = new ArrayList<>();
+        private final List<Members>             members     = new ArrayList<>();
+        
+        public Block(byte[] data) throws IOException {
+            ProtobufReader reader = new ProtobufReader(data);
+            List<ProtobufReader> groups = new ArrayList<>();
+            
+            // Groups are decoded at the end, as they need the string table and
+            // the coordinates parameters, which may come after them.
+            while (reader.next()) {
+                switch (reader.field()) {
+                    case 1:
+                        readStringTable(reader.message());
+                        break;
+                    case 2:
+                        groups.add(reader.message());
+                        break;
+                    case 17:
+                        granularity = reader.readVarint();
+                        break;
+                    case 19:
+                        latOffset = reader.readVarint();
+                        break;
+                    case 20:
+                        lonOffset = reader.readVarint();
+                        break;
+                    default:
+                        reader.skip();
+                }
+            }
+            
+            for (ProtobufReader group : groups) {
+                readGroup(group);
+            }
+        }
+        
+        public void addTo(OSMMap.Builder mapBuilder) {
+            for (int i = 0; i != nodesCount; ++i) {
+                if (taggedNodes[i] == null) {
+                    mapBuilder.addNode(nodeIds[i], longitudes[i], latitudes[i]);
+                }
+                else {
+                    mapBuilder.addNode(taggedNodes[i]);
+                }
+            }
+            
+            for (int i = 0; i != ways.size(); ++i) {
+                OSMWay.Builder wayBuilder = ways.get(i);
+                
+                for (long ref : wayRefs.get(i)) {
+                    OSMNode node = mapBuilder.nodeForId(ref);
+                    
+                    if (node == null) {
+                        wayBuilder.setIncomplete();
+                    }
+                    else {
+                        wayBuilder.addNode(node);
+                    }
+                }
+                
+                if (!wayBuilder.isIncomplete()) {
+                    mapBuilder.addWay(wayBuilder.build());
+                }
+            }
+            
+            for (int i = 0; i != relations.size(); ++i) {
+                OSMRelation.Builder relBuilder = relations.get(i);
+                Members relMembers = members.get(i);
+                
+                for (int j = 0; j != relMembers.ids.length; ++j) {
+                    OSMRelation.Member.Type type = relMembers.types[j];
+                    long id = relMembers.ids[j];
+                    OSMEntity member = null;
+                    
+                    switch (type) {
+                        case NODE:
+                            member = mapBuilder.nodeForId(id);
+                            break;
+                        case WAY:
+                            member = mapBuilder.wayForId(id);
+                            break;
+                        case RELATION:
+                            member = mapBuilder.relationForId(id);
+                            break;
+                    }
+                    
+                    if (member == null) {
+                        relBuilder.setIncomplete();
+                    }
+                    else {
+                        relBuilder.addMember(type, relMembers.roles[j], member);
+                    }
+                }
+                
+                if (!relBuilder.isIncomplete()) {
+                    mapBuilder.addRelation(relBuilder.build());
+                }
+            }
+        }
+        
+        private void readStringTable(ProtobufReader reader) throws IOException {
+            List<String> table = new ArrayList<>();
+            
+            while (reader.next()) {
+                if (reader.field() == 1) {
+                    table.add(reader.readString());
+                }
+                else {
+                    reader.skip();
+                }
+            }
+            
+            strings = table.toArray(new String[table.size()]);
+        }
+        
+        private void readGroup(ProtobufReader reader) throws IOException {
+            while (reader.next()) {
+                switch (reader.field()) {
+                    case 1:
+                        readNode(reader.message());
+                        break;
+                    case 2:
+                        readDenseNodes(reader.message());
+                        break;
+                    case 3:
+                        readWay(reader.message());
+                        break;
+                    case 4:
+                        readRelation(reader.message());
+                        break;
+                    default:
+                        reader.skip();
+                }
+            }
+        }
+        
+        private void readNode(ProtobufReader reader) throws IOException {
+            long id = 0;
+            long lat = 0;
+            long lon = 0;
+            long[] keys = new long[0];
+            long[] values = new long[0];
+            
+            while (reader.next()) {
+                switch (reader.field()) {
+                    case 1:
+                        id = reader.readSignedVarint();
+                        break;
+                    case 2:
+                        keys = readPacked(reader.message(), false, false);
+                        break;
+                    case 3:
+                        values = readPacked(reader.message(), false, false);
+                        break;
+                    case 8:
+                        lat = reader.readSignedVarint();
+                        break;
+                    case 9:
+                        lon = reader.readSignedVarint();
+                        break;
+                    default:
+                        reader.skip();
+                }
+            }
+            
+            int i = addNode(id, lon, lat);
+            
+            if (keys.length != 0) {
+                OSMNode.Builder nodeBuilder = nodeBuilder(i);
+                setAttributes(nodeBuilder, keys, values);
+                taggedNodes[i] = nodeBuilder.build();
+            }
+        }
+        
+        private void readDenseNodes(ProtobufReader reader) throws IOException {
+            long[] ids = new long[0];
+            long[] lats = new long[0];
+            long[] lons = new long[0];
+            long[] keysValues = new long[0];
+            
+            while (reader.next()) {
+                switch (reader.field()) {
+                    case 1:
+                        ids = readPacked(reader.message(), true, true);
+                        break;
+                    case 8:
+                        lats = readPacked(reader.message(), true, true);
+                        break;
+                    case 9:
+                        lons = readPacked(reader.message(), true, true);
+                        break;
+                    case 10:
+                        keysValues = readPacked(reader.message(), false, false);
+                        break;
+                    default:
+                        reader.skip();
+                }
+            }
+            
+            if (lats.length != ids.length || lons.length != ids.length) {
+                throw new IOException("invalid dense nodes");
+            }
+            
+            // Keys and values of all nodes are interleaved, the tags of each
+            // node being terminated by a 0.
+            int k = 0;
+            
+            for (int j = 0; j != ids.length; ++j) {
+                int i = addNode(ids[j], lons[j], lats[j]);
+                OSMNode.Builder nodeBuilder = null;
+                
+                while (k < keysValues.length && keysValues[k] != 0) {
+                    if (k + 1 == keysValues.length) {
+                        throw new IOException("invalid dense nodes tags");
+                    }
+                    
+                    if (nodeBuilder == null) {
+                        nodeBuilder = nodeBuilder(i);
+                    }
+                    
+                    nodeBuilder.setAttribute(
+                        string(keysValues[k]),
+                        string(keysValues[k + 1]));
+                    k += 2;
+                }
+                
+                if (nodeBuilder != null) {
+                    taggedNodes[i] = nodeBuilder.build();
+                }
+                
+                ++k;
+            }
+        }
+        
+        private void readWay(ProtobufReader reader) throws IOException {
+            long id = 0;
+            long[] keys = new long[0];
+            long[] values = new long[0];
+            long[] refs = new long[0];
+            
+            while (reader.next()) {
+                switch (reader.field()) {
+                    case 1:
+                        id = reader.readVarint();
+                        break;
+                    case 2:
+                        keys = readPacked(reader.message(), false, false);
+                        break;
+                    case 3:
+                        values = readPacked(reader.message(), false, false);
+                        break;
+                    case 8:
+                        refs = readPacked(reader.message(), true, true);
+                        break;
+                    default:
+                        reader.skip();
+                }
+            }
+            
+            OSMWay.Builder wayBuilder = new OSMWay.Builder(id);
+            setAttributes(wayBuilder, keys, values);
+            ways.add(wayBuilder);
+            wayRefs.add(refs);
+        }
+        
+        private void readRelation(ProtobufReader reader) throws IOException {
+            long id = 0;
+            long[] keys = new long[0];
+            long[] values = new long[0];
+            long[] roles = new long[0];
+            long[] ids = new long[0];
+            long[] types = new long[0];
+            
+            while (reader.next()) {
+                switch (reader.field()) {
+                    case 1:
+                        id = reader.readVarint();
+                        break;
+                    case 2:
+                        keys = readPacked(reader.message(), false, false);
+                        break;
+                    case 3:
+                        values = readPacked(reader.message(), false, false);
+                        break;
+                    case 8:
+                        roles = readPacked(reader.message(), false, false);
+                        break;
+                    case 9:
+                        ids = readPacked(reader.message(), true, true);
+                        break;
+                    case 10:
+                        types = readPacked(reader.message(), false, false);
+                        break;
+                    default:
+                        reader.skip();
+                }
+            }
+            
+            if (roles.length != ids.length || types.length != ids.length) {
+                throw new IOException("relation " + id
+                        + " has invalid members");
+            }
+            
+            OSMRelation.Builder relBuilder = new OSMRelation.Builder(id);
+            setAttributes(relBuilder, keys, values);
+            
+            Members relMembers = new Members(ids.length);
+            
+            for (int j = 0; j != ids.length; ++j) {
+                relMembers.ids[j] = ids[j];
+                relMembers.roles[j] = string(roles[j]);
+                relMembers.types[j] = memberType(types[j]);
+            }
+            
+            relations.add(relBuilder);
+            members.add(relMembers);
+        }
+        
+        private int addNode(long id, long lon, long lat) {
+            if (nodesCount == nodeIds.length) {
+                int capacity = Math.max(16, nodesCount * 2);
+                
+                nodeIds = Arrays.copyOf(nodeIds, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                taggedNodes = Arrays.copyOf(taggedNodes, capacity);
+            }
+            
+            nodeIds[nodesCount] = id;
+            longitudes[nodesCount] = Math.toRadians(NANO
+                    * (lonOffset + granularity * lon));
+            latitudes[nodesCount] = Math.toRadians(NANO
+                    * (latOffset + granularity * lat));
+            
+            return nodesCount++;
+        }
+        
+        private OSMNode.Builder nodeBuilder(int i) {
+            return new OSMNode.Builder(nodeIds[i], new PointGeo(
+                longitudes[i],
+                latitudes[i]));
+        }
+        
+        private void setAttributes(OSMEntity.Builder builder, long[] keys,
+                long[] values) throws IOException {
+            if (keys.length != values.length) {
+                throw new IOException("invalid tags");
+            }
+            
+            for (int j = 0; j != keys.length; ++j) {
+                builder.setAttribute(string(keys[j]), string(values[j]));
+            }
+        }
+        
+        private String string(long index) throws IOException {
+            if (index < 0 || index >= strings.length) {
+                throw new IOException("invalid string index " + index);
+            }
+            
+            return strings[(int) index];
+        }
+        
+        private static OSMRelation.Member.Type memberType(long type)
+                throws IOException {
+            switch ((int) type) {
+                case 0:
+                    return OSMRelation.Member.Type.NODE;
+                case 1:
+                    return OSMRelation.Member.Type.WAY;
+                case 2:
+                    return OSMRelation.Member.Type.RELATION;
+                default:
+                    throw new IOException("invalid member type " + type);
+            }
+        }
+        
+        // Reads a packed repeated field of integers, optionally zigzag and
+        // delta encoded.
+        private static long[] readPacked(ProtobufReader reader, boolean signed,
+                boolean delta) throws IOException {
+            long[] values = new long[16];
+            int size = 0;
+            long previous = 0;
+            
+            while (reader.hasRemaining()) {
+                long value = signed ? reader.readSignedVarint() : reader
+                    .readVarint();
+                
+                if (delta) {
+                    value += previous;
+                    previous = value;
+                }
+                
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                
+                values[size++] = value;
+            }
+            
+            return Arrays.copyOf(values, size);
+        }
+    }
+    
+    private static final class RawBlob {
+        private final String type;
+        private final byte[] data;
+        
+        public RawBlob(String type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+    
+    private static final class Members {
+        private final long[]                    ids;
+        private final String[]                  roles;
+        private final OSMRelation.Member.Type[] types;
+        
+        public Members(int count) {
+            ids = new long[count];
+            roles = new String[count];
+            types = new OSMRelation.Member.Type[count];
+        }
+    }
+}
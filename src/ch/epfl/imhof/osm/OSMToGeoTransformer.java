@@ -2,10 +2,14 @@ package ch.epfl.imhof.osm;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import ch.epfl.imhof.Attributed;
 import ch.epfl.imhof.Attributes;
@@ -13,7 +17,6 @@ import ch.epfl.imhof.Graph;
 import ch.epfl.imhof.Map;
 import ch.epfl.imhof.geometry.ClosedPolyLine;
 import ch.epfl.imhof.geometry.OpenPolyLine;
-import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
 import ch.epfl.imhof.projection.Projection;
@@ -44,6 +47,12 @@ public final class OSMToGeoTransformer {
             );
     // @formatter:on
     
+    private static final Set<String> relevantKeys = initRelevantKeys();
+    
+    // Relations take much longer to transform than ways.
+    private static final int         WAYS_PER_CHUNK      = 1024;
+    private static final int         RELATIONS_PER_CHUNK = 32;
+    
     private final Projection         projection;
     
     /**
@@ -58,6 +67,19 @@ public final class OSMToGeoTransformer {
         this.projection = projection;
     }
     
+    /**
+     * Returns the keys of the attributes this transformer looks at. Dropping
+     * the other attributes of an {@link OSMMap}'s ways and relations (for
+     * example while reading it, see
+     * {@link OSMMapReader#readOSMFile(String, boolean, Set)}) does not change
+     * the result of {@link #transform}.
+     * 
+     * @return an unmodifiable set of attribute keys
+     */
+    public Set<String> relevantKeys() {
+        return relevantKeys;
+    }
+    
     /**
      * Transforms a given {@link OSMMap} to a {@link Map}.
      * 
@@ -75,10 +97,55 @@ public final class OSMToGeoTransformer {
         return mapBuilder.build();
     }
     
-    private void transformWay(OSMWay way, Map.Builder mapBuilder) {
+    /**
+     * Transforms a given {@link OSMMap} to a {@link Map}, using all the
+     * processors.
+     * <p>
+     * Ways and relations are split in chunks that are transformed in parallel,
+     * each one to its own {@link Map.Builder}. The resulting maps are then
+     * concatenated in the order of the chunks, so that the result is the same
+     * as the one of {@link #transform}, in the same order.
+     * 
+     * @param osm
+     *            the <code>OSMMap</code> to be converted
+     * 
+     * @return the <code>Map</code> that results from the convertion
+     */
+    public Map transformInParallel(OSMMap osm) {
+        Map.Builder mapBuilder = new Map.Builder();
+        
+        transformChunks(osm.ways(), WAYS_PER_CHUNK, this::transformWay)
+            .forEach(mapBuilder::addAll);
+        transformChunks(
+            osm.relations(),
+            RELATIONS_PER_CHUNK,
+            this::transformRel).forEach(mapBuilder::addAll);
+        
+        return mapBuilder.build();
+    }
+    
+    // The parallel stream keeps the order of the chunks in the resulting list.
+    private static <T> List<Map> transformChunks(List<T> entities,
+            int chunkSize, BiConsumer<T, Map.Builder> transformation) {
+        int chunksCount = (entities.size() + chunkSize - 1) / chunkSize;
+        
+        return IntStream.range(0, chunksCount).parallel().mapToObj(i -> {
+            Map.Builder chunkBuilder = new Map.Builder();
+            int end = Math.min(entities.size(), (i + 1) * chunkSize);
+            
+            for (T entity : entities.subList(i * chunkSize, end)) {
+                transformation.accept(entity, chunkBuilder);
+            }
+            
+            return chunkBuilder.build();
+        }).collect(Collectors.toList());
+    }
+    
+    // Package visibility so that OSMMapReader can transform ways and relations
+    // as soon as they are parsed (see OSMMapReader#readOSMFileToMap).
+    void transformWay(OSMWay way, Map.Builder mapBuilder) {
         boolean isClosed = way.isClosed();
         Attributes atts;
-        List<Point> points;
         
         // If the way is closed and has needed attributes (checked by
         // #isSurface), then it is converted to a simple polygon without holes.
@@ -89,9 +156,8 @@ public final class OSMToGeoTransformer {
                 return;
             }
             
-            points = transformNodes(way.nonRepeatingNodes());
-            
-            ClosedPolyLine shell = new ClosedPolyLine(points);
+            ClosedPolyLine shell = new ClosedPolyLine(
+                transformNodes(way.nonRepeatingNodes()));
             Polygon polygon = new Polygon(shell);
             
             mapBuilder.addPolygon(new Attributed<Polygon>(polygon, atts));
@@ -104,8 +170,7 @@ public final class OSMToGeoTransformer {
                 return;
             }
             
-            points = transformNodes(way.nonRepeatingNodes());
-            
+            double[] points = transformNodes(way.nonRepeatingNodes());
             PolyLine polyline;
             
             if (isClosed) {
@@ -132,7 +197,7 @@ public final class OSMToGeoTransformer {
         return !way.attributes().keepOnlyKeys(surfaceAtts).isEmpty();
     }
     
-    private void transformRel(OSMRelation rel, Map.Builder mapBuilder) {
+    void transformRel(OSMRelation rel, Map.Builder mapBuilder) {
         Attributes atts = rel.attributes();
         
         if (!atts.contains("type")) {
@@ -213,13 +278,17 @@ public final class OSMToGeoTransformer {
         return list;
     }
     
+    // A node can be represented by several objects (see
+    // OSMMap.Builder#nodeForId), so the graph is made of node ids, and one of
+    // the objects of each node is kept in nodes to get its position.
     private List<ClosedPolyLine> makeRings(List<OSMWay> ways) {
-        Graph<OSMNode> graph = makeGraphFromWays(ways);
-        Set<OSMNode> toDo = new HashSet<OSMNode>(graph.nodes());
+        HashMap<Long, OSMNode> nodes = new HashMap<Long, OSMNode>();
+        Graph<Long> graph = makeGraphFromWays(ways, nodes);
+        Set<Long> toDo = new HashSet<Long>(graph.nodes());
         List<ClosedPolyLine> polyLines = new ArrayList<ClosedPolyLine>();
         
         while (!toDo.isEmpty()) {
-            ClosedPolyLine polyLine = makeRing(graph, toDo);
+            ClosedPolyLine polyLine = makeRing(graph, toDo, nodes);
             
             if (polyLine == null) {
                 return new ArrayList<ClosedPolyLine>();
@@ -231,38 +300,42 @@ public final class OSMToGeoTransformer {
         return polyLines;
     }
     
-    private Graph<OSMNode> makeGraphFromWays(List<OSMWay> ways) {
-        Graph.Builder<OSMNode> graphBuilder = new Graph.Builder<OSMNode>();
+    private Graph<Long> makeGraphFromWays(List<OSMWay> ways,
+            HashMap<Long, OSMNode> nodes) {
+        Graph.Builder<Long> graphBuilder = new Graph.Builder<Long>();
         
         for (OSMWay way : ways) {
-            OSMNode prevNode = null;
+            Long prevId = null;
             
             for (OSMNode node : way.nodes()) {
-                graphBuilder.addNode(node);
+                Long id = node.id();
                 
-                if (prevNode != null) {
-                    graphBuilder.addEdge(prevNode, node);
+                nodes.putIfAbsent(id, node);
+                graphBuilder.addNode(id);
+                
+                if (prevId != null) {
+                    graphBuilder.addEdge(prevId, id);
                 }
                 
-                prevNode = node;
+                prevId = id;
             }
         }
         
         return graphBuilder.build();
     }
     
-    private ClosedPolyLine makeRing(Graph<OSMNode> graph, Set<OSMNode> toDo) {
-        PolyLine.Builder polyLineBuilder = new PolyLine.Builder();
-        OSMNode current = getAny(toDo);
-        OSMNode first = current;
-        OSMNode prev = null;
+    private ClosedPolyLine makeRing(Graph<Long> graph, Set<Long> toDo,
+            HashMap<Long, OSMNode> nodes) {
+        List<OSMNode> ringNodes = new ArrayList<OSMNode>();
+        Long current = getAny(toDo);
+        Long first = current;
+        Long prev = null;
         
         do {
             toDo.remove(current);
-            polyLineBuilder.addPoint(transformNode(current));
+            ringNodes.add(nodes.get(current));
             
-            Set<OSMNode> neighbors = new HashSet<OSMNode>(
-                graph.neighborsOf(current));
+            Set<Long> neighbors = new HashSet<Long>(graph.neighborsOf(current));
             
             if (neighbors.size() != 2) {
                 return null;
@@ -274,26 +347,44 @@ public final class OSMToGeoTransformer {
             
             prev = current;
             current = getAny(neighbors);
-        } while (current != first);
+        } while (!current.equals(first));
         
-        return polyLineBuilder.buildClosed();
+        return new ClosedPolyLine(transformNodes(ringNodes));
     }
     
-    private static OSMNode getAny(Set<OSMNode> s) {
+    private static <T> T getAny(Set<T> s) {
         // return s.stream().findAny().get();
         // https://piazza.com/class/i39wbwd15v83mt?cid=117
         return s.iterator().next();
     }
     
-    private List<Point> transformNodes(List<OSMNode> nodes) {
-        return nodes
-            .stream()
-            .map(node -> transformNode(node))
-            .collect(Collectors.toList());
+    // Returns the projected coordinates of the given nodes. Their longitudes
+    // and latitudes are packed in an array and projected in place, so that
+    // no Point is created for each node.
+    private double[] transformNodes(List<OSMNode> nodes) {
+        double[] coordinates = new double[2 * nodes.size()];
+        int i = 0;
+        
+        for (OSMNode node : nodes) {
+            coordinates[i++] = node.position().longitude();
+            coordinates[i++] = node.position().latitude();
+        }
+        
+        projection.project(coordinates, 0, nodes.size());
+        
+        return coordinates;
     }
     
-    private Point transformNode(OSMNode node) {
-        return projection.project(node.position());
+    // Keys of the attributes kept on polygons and polylines, and of those
+    // tested by #isSurface and #transformRel.
+    private static Set<String> initRelevantKeys() {
+        Set<String> keys = initHashSet("type", "area");
+        
+        keys.addAll(surfaceAtts);
+        keys.addAll(polyLineAtts);
+        keys.addAll(polygonAtts);
+        
+        return Collections.unmodifiableSet(keys);
     }
     
     private static Set<String> initHashSet(String... strings) {
@@ -67,12 +67,13 @@ public final class OSMWay extends OSMEntity {
     
     /**
      * Returns <code>true</code> if this <code>OSMWay</code> is closed. More
-     * formally it tests if the first node is the same as the last one.
+     * formally it tests if the first node has the same id as the last one
+     * (they can be different objects, see {@link OSMMap.Builder#nodeForId}).
      * 
      * @return <code>true</code> if the <code>OSMWay</code> is closed
      */
     public boolean isClosed() {
-        return firstNode().equals(lastNode());
+        return firstNode().id() == lastNode().id();
     }
     
     /**
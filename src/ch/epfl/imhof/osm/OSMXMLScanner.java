@@ -0,0 +1,886 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import ch.epfl.imhof.PointGeo;
+
+/**
+ * The <code>OSMXMLScanner</code> class is used to create an {@link OSMMap}
+ * given an osm file, like {@link OSMMapReader}, but much faster.
+ * <code>OSMXMLScanner</code> is not instanciable.
+ * <p>
+ * Instead of a general purpose XML parser, it uses a scanner that only
+ * understands the subset of XML found in osm files (elements, attributes,
+ * comments, processing instructions and character references), and that works
+ * directly on the bytes of the file, which must be encoded in UTF-8. Ids and
+ * coordinates are parsed from the bytes into primitives, and no object is
+ * allocated for attributes that are not needed. Keys and values of tags are
+ * materialised as strings through a small cache, as most of them are
+ * repeated many times.
+ * <p>
+ * The resulting {@link OSMMap} is the same as the one returned by
+ * {@link OSMMapReader#readOSMFile}, but malformed files are reported with
+ * {@link IOException}s.
+ * 
+ * @author Matthieu Bovel (250300)
+ */
+public final class OSMXMLScanner {
+    private OSMXMLScanner() {
+    }
+    
+    /**
+     * Reads an osm file and returns an {@link OSMMap}. Ungzip the file if the
+     * second argument is <code>true</code>.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @return an {@link OSMMap} based on the osm file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process, or when
+     *             something is wrong with the osm file, for example when an
+     *             attribute is missing
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip)
+            throws IOException {
+        return readOSMFile(fileName, unGZip, false);
+    }
+    
+    /**
+     * Reads an osm file and returns an {@link OSMMap}. Ungzip the file if the
+     * second argument is <code>true</code>, ahead of the scanner if the third
+     * one is <code>true</code> (see
+     * {@link OSMMapReader#readOSMFile(String, boolean, boolean)}).
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param decompressAhead
+     *            boolean that tells if a gzip compressed file is decompressed
+     *            ahead of the scanner
+     * @return an {@link OSMMap} based on the osm file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process, or when
+     *             something is wrong with the osm file, for example when an
+     *             attribute is missing
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip,
+            boolean decompressAhead) throws IOException {
+        OSMMap.Builder mapBuilder = new OSMMap.Builder();
+        readOSMFileToBuilder(
+            fileName,
+            unGZip,
+            decompressAhead,
+            mapBuilder,
+            null);
+        return mapBuilder.build();
+    }
+    
+    /**
+     * Reads an osm file and returns an {@link OSMMap}, keeping the positions
+     * of nodes in the given {@link OSMNodeStore} while reading. Ungzip the file
+     * if the second argument is <code>true</code>.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param nodeStore
+     *            the {@link OSMNodeStore} to use, it is not closed by this
+     *            method
+     * @return an {@link OSMMap} based on the osm file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process, or when
+     *             something is wrong with the osm file, for example when an
+     *             attribute is missing
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip,
+            OSMNodeStore nodeStore) throws IOException {
+        OSMMap.Builder mapBuilder = new OSMMap.Builder(nodeStore);
+        readOSMFileToBuilder(fileName, unGZip, mapBuilder);
+        return mapBuilder.build();
+    }
+    
+    /**
+     * Reads an osm file and returns an {@link OSMMap} whose entities only
+     * have the attributes whose key is in the given set, like
+     * {@link OSMMapReader#readOSMFile(String, boolean, Set)} does. Ungzip the
+     * file if the second argument is <code>true</code>.
+     * <p>
+     * The values of the other attributes are not even decoded.
+     * 
+     * @param fileName
+     *            the name of the osm file to read
+     * @param unGZip
+     *            boolean that tells if the file is gzip compressed or not.
+     * @param keysToKeep
+     *            the keys of the attributes to keep
+     * @return an {@link OSMMap} based on the osm file in argument
+     * @throws IOException
+     *             when something goes wrong in the reading process, or when
+     *             something is wrong with the osm file, for example when an
+     *             attribute is missing
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip,
+            Set<String> keysToKeep) throws IOException {
+        MembersCollector members = new MembersCollector();
+        readOSMFileToBuilder(fileName, unGZip, members, Collections.emptySet());
+        
+        OSMMap.Builder mapBuilder = new OSMMapReader.FilteringBuilder(
+            new OSMNodeArrayStore(),
+            members.ways,
+            members.relations);
+        
+        readOSMFileToBuilder(fileName, unGZip, mapBuilder, keysToKeep);
+        return mapBuilder.build();
+    }
+    
+    private static void readOSMFileToBuilder(String fileName, boolean unGZip,
+            OSMMap.Builder mapBuilder) throws IOException {
+        readOSMFileToBuilder(fileName, unGZip, mapBuilder, null);
+    }
+    
+    private static void readOSMFileToBuilder(String fileName, boolean unGZip,
+            OSMMap.Builder mapBuilder, Set<String> keysToKeep)
+            throws IOException {
+        readOSMFileToBuilder(fileName, unGZip, false, mapBuilder, keysToKeep);
+    }
+    
+    private static void readOSMFileToBuilder(String fileName, boolean unGZip,
+            boolean decompressAhead, OSMMap.Builder mapBuilder,
+            Set<String> keysToKeep) throws IOException {
+        try (InputStream input = OSMMapReader.open(
+            fileName,
+            unGZip,
+            decompressAhead)) {
+            new Scanner(input, mapBuilder, keysToKeep).scan();
+        }
+    }
+    
+    /**
+     * An {@link OSMMap.Builder} that keeps nothing, but records the ids of
+     * the ways and relations that are members of a relation. As it never
+     * returns any node, ways and relations are all incomplete, and are not
+     * built.
+     */
+    static private final class MembersCollector extends OSMMap.Builder {
+        private final Set<Long> ways      = new HashSet<>();
+        private final Set<Long> relations = new HashSet<>();
+        
+        @Override
+        public void addNode(OSMNode node) {
+        }
+        
+        @Override
+        public void addNode(long id, double longitude, double latitude) {
+        }
+        
+        @Override
+        public OSMNode nodeForId(long id) {
+            return null;
+        }
+        
+        @Override
+        public OSMWay wayForId(long id) {
+            ways.add(id);
+            return null;
+        }
+        
+        @Override
+        public OSMRelation relationForId(long id) {
+            relations.add(id);
+            return null;
+        }
+    }
+    
+    /**
+     * The scanner itself, which adds elements to an {@link OSMMap.Builder} as
+     * they are read.
+     */
+    static private final class Scanner {
+        private static final int      BUFFER_SIZE = 1 << 16;
+        
+        // Elements
+        private static final int      OTHER       = 0;
+        private static final int      NODE        = 1;
+        private static final int      WAY         = 2;
+        private static final int      RELATION    = 3;
+        private static final int      ND          = 4;
+        private static final int      MEMBER      = 5;
+        private static final int      TAG         = 6;
+        private static final String[] ELEMENTS    = { null, "node", "way",
+                "relation", "nd", "member", "tag" };
+        
+        // Attributes, only those are kept.
+        private static final int      ID          = 0;
+        private static final int      LAT         = 1;
+        private static final int      LON         = 2;
+        private static final int      REF         = 3;
+        private static final int      TYPE        = 4;
+        private static final int      ROLE        = 5;
+        private static final int      KEY         = 6;
+        private static final int      VALUE       = 7;
+        private static final String[] ATTRIBUTES  = { "id", "lat", "lon",
+                "ref", "type", "role", "k", "v" };
+        
+        // Exact powers of ten, used to parse decimal numbers.
+        private static final double[] POWERS_OF_TEN;
+        
+        static {
+            POWERS_OF_TEN = new double[23];
+            POWERS_OF_TEN[0] = 1;
+            
+            for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            }
+        }
+        
+        private final InputStream     input;
+        private final OSMMap.Builder  mapBuilder;
+        private final byte[]          buffer      = new byte[BUFFER_SIZE];
+        private int                   position    = 0;
+        private int                   limit       = 0;
+        private long                  offset      = 0;
+        
+        // Values of the attributes of the current element, decoded. Present
+        // attributes are flagged in a bit set.
+        private final byte[][]        values      = new byte[ATTRIBUTES.length][64];
+        private final int[]           lengths     = new int[ATTRIBUTES.length];
+        private int                   present;
+        private final byte[]          name        = new byte[16];
+        private int                   nameLength;
+        private final StringCache     strings     = new StringCache();
+        // null if all attributes are kept
+        private final Set<String>     keysToKeep;
+        
+        private int                   element;
+        private long                  nodeId;
+        private double                nodeLon;
+        private double                nodeLat;
+        private OSMNode.Builder       nodeBuilder;
+        private OSMWay.Builder        wayBuilder;
+        private OSMRelation.Builder   relBuilder;
+        
+        public Scanner(InputStream input, OSMMap.Builder mapBuilder,
+                Set<String> keysToKeep) {
+            this.input = input;
+            this.mapBuilder = mapBuilder;
+            this.keysToKeep = keysToKeep;
+        }
+        
+        public void scan() throws IOException {
+            int c;
+            
+            while ((c = read()) >= 0) {
+                if (c != '<') {
+                    continue;
+                }
+                
+                c = read();
+                
+                if (c == '/') {
+                    endElement(readName(read()));
+                    skipPast('>');
+                }
+                else if (c == '!' || c == '?') {
+                    skipMarkup(c);
+                }
+                else {
+                    int el = readName(c);
+                    boolean empty = readAttributes(el);
+                    
+                    startElement(el);
+                    
+                    if (empty) {
+                        endElement(el);
+                    }
+                }
+            }
+        }
+        
+        private void startElement(int el) throws IOException {
+            switch (el) {
+                case NODE:
+                    nodeId = longAttribute(el, ID);
+                    nodeLon = Math.toRadians(doubleAttribute(el, LON));
+                    nodeLat = Math.toRadians(doubleAttribute(el, LAT));
+                    nodeBuilder = null;
+                    element = NODE;
+                    break;
+                case WAY:
+                    wayBuilder = new OSMWay.Builder(longAttribute(el, ID));
+                    element = WAY;
+                    break;
+                case RELATION:
+                    relBuilder = new OSMRelation.Builder(longAttribute(el, ID));
+                    element = RELATION;
+                    break;
+                case ND:
+                    if (element == WAY) {
+                        OSMNode node = mapBuilder.nodeForId(longAttribute(
+                            el,
+                            REF));
+                        
+                        if (node == null) {
+                            wayBuilder.setIncomplete();
+                        }
+                        else {
+                            wayBuilder.addNode(node);
+                        }
+                    }
+                    break;
+                case MEMBER:
+                    if (element == RELATION) {
+                        addMember();
+                    }
+                    break;
+                case TAG:
+                    addTag();
+                    break;
+            }
+        }
+        
+        private void endElement(int el) {
+            if (el != element) {
+                return;
+            }
+            
+            // Incomplete elements are silently ignored
+            switch (el) {
+                case NODE:
+                    if (nodeBuilder == null) {
+                        mapBuilder.addNode(nodeId, nodeLon, nodeLat);
+                    }
+                    else if (!nodeBuilder.isIncomplete()) {
+                        mapBuilder.addNode(nodeBuilder.build());
+                    }
+                    break;
+                case WAY:
+                    if (!wayBuilder.isIncomplete()) {
+                        mapBuilder.addWay(wayBuilder.build());
+                    }
+                    break;
+                case RELATION:
+                    if (!relBuilder.isIncomplete()) {
+                        mapBuilder.addRelation(relBuilder.build());
+                    }
+                    break;
+            }
+            
+            element = OTHER;
+        }
+        
+        private void addMember() throws IOException {
+            long ref = longAttribute(MEMBER, REF);
+            String role = stringAttribute(MEMBER, ROLE);
+            OSMRelation.Member.Type type;
+            OSMEntity member;
+            
+            switch (stringAttribute(MEMBER, TYPE)) {
+                case "node":
+                    type = OSMRelation.Member.Type.NODE;
+                    member = mapBuilder.nodeForId(ref);
+                    break;
+                case "way":
+                    type = OSMRelation.Member.Type.WAY;
+                    member = mapBuilder.wayForId(ref);
+                    break;
+                case "relation":
+                    type = OSMRelation.Member.Type.RELATION;
+                    member = mapBuilder.relationForId(ref);
+                    break;
+                default:
+                    relBuilder.setIncomplete();
+                    return;
+            }
+            
+            if (member == null) {
+                relBuilder.setIncomplete();
+            }
+            else {
+                relBuilder.addMember(type, role, member);
+            }
+        }
+        
+        private void addTag() throws IOException {
+            if (element != NODE && element != WAY && element != RELATION) {
+                return;
+            }
+            
+            String key = stringAttribute(TAG, KEY);
+            
+            // The value is checked to be present even if it is not kept, but
+            // it is not decoded.
+            if (keysToKeep != null && !keysToKeep.contains(key)) {
+                attribute(TAG, VALUE);
+                return;
+            }
+            
+            OSMEntity.Builder builder;
+            
+            switch (element) {
+                case NODE:
+                    // The builder is only created for nodes that have
+                    // attributes, see OSMMap.Builder#addNode.
+                    if (nodeBuilder == null) {
+                        nodeBuilder = new OSMNode.Builder(nodeId, new PointGeo(
+                            nodeLon,
+                            nodeLat));
+                    }
+                    
+                    builder = nodeBuilder;
+                    break;
+                case WAY:
+                    builder = wayBuilder;
+                    break;
+                default:
+                    builder = relBuilder;
+                    break;
+            }
+            
+            builder.setAttribute(key, stringAttribute(TAG, VALUE));
+        }
+        
+        // Reads an element name starting with the given byte, and returns the
+        // corresponding element constant.
+        private int readName(int c) throws IOException {
+            nameLength = 0;
+            
+            while (c >= 0 && !isNameEnd(c)) {
+                if (nameLength < name.length) {
+                    name[nameLength] = (byte) c;
+                }
+                
+                ++nameLength;
+                c = read();
+            }
+            
+            if (c >= 0) {
+                --position;
+            }
+            
+            return indexOfName(ELEMENTS, 1, OTHER);
+        }
+        
+        // Reads the attributes of an element, up to and including the closing
+        // '>'. Returns true if the element is empty (ends with "/>").
+        private boolean readAttributes(int el) throws IOException {
+            present = 0;
+            
+            while (true) {
+                int c = skipSpaces();
+                
+                switch (c) {
+                    case '>':
+                        return false;
+                    case '/':
+                        expect('>');
+                        return true;
+                    case -1:
+                        throw error("unexpected end of file");
+                }
+                
+                nameLength = 0;
+                
+                while (c != '=' && !isSpace(c)) {
+                    if (c < 0 || c == '>' || c == '/') {
+                        throw error("malformed attribute");
+                    }
+                    
+                    if (nameLength < name.length) {
+                        name[nameLength] = (byte) c;
+                    }
+                    
+                    ++nameLength;
+                    c = read();
+                }
+                
+                int attribute = el == OTHER ? -1 : indexOfName(
+                    ATTRIBUTES,
+                    0,
+                    -1);
+                
+                if (c != '=' && skipSpaces() != '=') {
+                    throw error("malformed attribute");
+                }
+                
+                int quote = skipSpaces();
+                
+                if (quote != '"' && quote != '\'') {
+                    throw error("malformed attribute");
+                }
+                
+                readValue(attribute, quote);
+            }
+        }
+        
+        // Reads an attribute value up to the closing quote, decoding
+        // character references. The value is discarded if attribute is -1.
+        // Runs of plain bytes are scanned and copied directly in the buffer,
+        // as this is where most of the time is spent.
+        private void readValue(int attribute, int quote) throws IOException {
+            int length = 0;
+            byte[] value = attribute < 0 ? null : values[attribute];
+            
+            while (true) {
+                if (position == limit && !fill()) {
+                    throw error("unexpected end of file");
+                }
+                
+                int start = position;
+                
+                while (position < limit && buffer[position] != quote
+                        && buffer[position] != '&') {
+                    ++position;
+                }
+                
+                if (value != null) {
+                    int count = position - start;
+                    
+                    if (length + count + 4 > value.length) {
+                        value = Arrays.copyOf(value, 2 * (length + count + 4));
+                        values[attribute] = value;
+                    }
+                    
+                    System.arraycopy(buffer, start, value, length, count);
+                    length += count;
+                }
+                
+                if (position == limit) {
+                    continue;
+                }
+                
+                if (buffer[position++] == quote) {
+                    break;
+                }
+                
+                if (value != null) {
+                    length = readReference(value, length);
+                }
+                else {
+                    skipPast(';');
+                }
+            }
+            
+            if (value != null) {
+                lengths[attribute] = length;
+                present |= 1 << attribute;
+            }
+        }
+        
+        // Reads a character reference (the '&' has already been read) and
+        // writes the character it stands for in UTF-8.
+        private int readReference(byte[] value, int length) throws IOException {
+            StringBuilder reference = new StringBuilder();
+            int c;
+            
+            while ((c = read()) != ';') {
+                if (c < 0 || reference.length() > 10) {
+                    throw error("malformed character reference");
+                }
+                
+                reference.append((char) c);
+            }
+            
+            int codePoint;
+            String ref = reference.toString();
+            
+            switch (ref) {
+                case "amp":
+                    codePoint = '&';
+                    break;
+                case "lt":
+                    codePoint = '<';
+                    break;
+                case "gt":
+                    codePoint = '>';
+                    break;
+                case "quot":
+                    codePoint = '"';
+                    break;
+                case "apos":
+                    codePoint = '\'';
+                    break;
+                default:
+                    try {
+                        codePoint = ref.startsWith("#x") ? Integer.parseInt(
+                            ref.substring(2),
+                            16) : Integer.parseInt(ref.substring(1));
+                    }
+                    catch (NumberFormatException
+                            | StringIndexOutOfBoundsException e) {
+                        throw error("unknown character reference &" + ref
+                                + ";");
+                    }
+                    
+                    if (!ref.startsWith("#") || codePoint < 0
+                            || !Character.isValidCodePoint(codePoint)) {
+                        throw error("unknown character reference &" + ref
+                                + ";");
+                    }
+            }
+            
+            byte[] encoded = new String(Character.toChars(codePoint))
+                .getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(encoded, 0, value, length, encoded.length);
+            return length + encoded.length;
+        }
+        
+        // Skips comments, processing instructions and declarations.
+        private void skipMarkup(int c) throws IOException {
+            if (c == '!' && read() == '-') {
+                // Comment: skips up to "-->".
+                int dashes = 0;
+                
+                while ((c = read()) >= 0) {
+                    if (c == '>' && dashes >= 2) {
+                        return;
+                    }
+                    
+                    dashes = c == '-' ? dashes + 1 : 0;
+                }
+            }
+            else {
+                skipPast('>');
+            }
+        }
+        
+        private long longAttribute(int el, int attribute) throws IOException {
+            byte[] value = attribute(el, attribute);
+            int length = lengths[attribute];
+            int i = 0;
+            boolean negative = length > 0 && value[0] == '-';
+            long result = 0;
+            
+            if (negative) {
+                ++i;
+            }
+            
+            if (i == length || length - i > 18) {
+                throw numberError(el, attribute);
+            }
+            
+            for (; i < length; ++i) {
+                int digit = value[i] - '0';
+                
+                if (digit < 0 || digit > 9) {
+                    throw numberError(el, attribute);
+                }
+                
+                result = result * 10 + digit;
+            }
+            
+            return negative ? -result : result;
+        }
+        
+        // Parses decimal numbers without exponent with a single rounding (the
+        // mantissa and the power of ten are both exact), which gives the same
+        // result as Double.parseDouble. Other numbers are delegated to it.
+        private double doubleAttribute(int el, int attribute)
+                throws IOException {
+            byte[] value = attribute(el, attribute);
+            int length = lengths[attribute];
+            int i = 0;
+            boolean negative = length > 0 && value[0] == '-';
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = -1;
+            boolean hasDigits = false;
+            
+            if (negative) {
+                ++i;
+            }
+            
+            for (; i < length; ++i) {
+                int c = value[i];
+                
+                if (c == '.' && decimals < 0) {
+                    decimals = 0;
+                }
+                else if (c >= '0' && c <= '9' && digits < 15
+                        && decimals < POWERS_OF_TEN.length - 1) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    hasDigits = true;
+                    
+                    if (mantissa != 0) {
+                        ++digits;
+                    }
+                    
+                    if (decimals >= 0) {
+                        ++decimals;
+                    }
+                }
+                else {
+                    return slowDoubleAttribute(el, attribute);
+                }
+            }
+            
+            if (!hasDigits) {
+                throw numberError(el, attribute);
+            }
+            
+            double result = mantissa / POWERS_OF_TEN[Math.max(decimals, 0)];
+            return negative ? -result : result;
+        }
+        
+        private double slowDoubleAttribute(int el, int attribute)
+                throws IOException {
+            try {
+                return Double.parseDouble(stringAttribute(el, attribute));
+            }
+            catch (NumberFormatException e) {
+                throw numberError(el, attribute);
+            }
+        }
+        
+        private String stringAttribute(int el, int attribute)
+                throws IOException {
+            return strings.get(attribute(el, attribute), lengths[attribute]);
+        }
+        
+        private byte[] attribute(int el, int attribute) throws IOException {
+            if ((present & 1 << attribute) == 0) {
+                throw error("missing attribute `" + ATTRIBUTES[attribute]
+                        + "` on element `" + ELEMENTS[el] + "`");
+            }
+            
+            return values[attribute];
+        }
+        
+        private int indexOfName(String[] names, int from, int notFound) {
+            outer: for (int i = from; i < names.length; ++i) {
+                String candidate = names[i];
+                
+                if (candidate.length() != nameLength) {
+                    continue;
+                }
+                
+                for (int j = 0; j < nameLength; ++j) {
+                    if (name[j] != candidate.charAt(j)) {
+                        continue outer;
+                    }
+                }
+                
+                return i;
+            }
+            
+            return notFound;
+        }
+        
+        private int read() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            
+            return buffer[position++] & 0xFF;
+        }
+        
+        private boolean fill() throws IOException {
+            offset += limit;
+            limit = Math.max(input.read(buffer, 0, BUFFER_SIZE), 0);
+            position = 0;
+            return limit > 0;
+        }
+        
+        private int skipSpaces() throws IOException {
+            int c;
+            
+            do {
+                c = read();
+            } while (isSpace(c));
+            
+            return c;
+        }
+        
+        private void skipPast(int expected) throws IOException {
+            int c;
+            
+            do {
+                c = read();
+            } while (c != expected && c >= 0);
+        }
+        
+        private void expect(int expected) throws IOException {
+            if (read() != expected) {
+                throw error("expected `" + (char) expected + "`");
+            }
+        }
+        
+        private IOException numberError(int el, int attribute) {
+            return error("malformed number in attribute `"
+                    + ATTRIBUTES[attribute] + "` on element `" + ELEMENTS[el]
+                    + "`");
+        }
+        
+        private IOException error(String message) {
+            return new IOException(message + " (at byte "
+                    + (offset + position) + ")");
+        }
+        
+        private static boolean isSpace(int c) {
+            return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+        }
+        
+        private static boolean isNameEnd(int c) {
+            return isSpace(c) || c == '>' || c == '/';
+        }
+    }
+    
+    /**
+     * A direct-mapped cache of the strings decoded from byte sequences, so
+     * that the frequent keys and values of tags are only decoded and
+     * allocated once. When two sequences map to the same slot, the newest one
+     * replaces the other, so the size of the cache is bounded.
+     */
+    static private final class StringCache {
+        private static final int SIZE     = 1 << 14;
+        private static final int MAX_SIZE = 64;
+        
+        private final byte[][]   bytes    = new byte[SIZE][];
+        private final String[]   strings  = new String[SIZE];
+        
+        public String get(byte[] value, int length) {
+            if (length > MAX_SIZE) {
+                return new String(value, 0, length, StandardCharsets.UTF_8);
+            }
+            
+            int hash = 0;
+            
+            for (int i = 0; i < length; ++i) {
+                hash = 31 * hash + value[i];
+            }
+            
+            int slot = (hash ^ hash >>> 16) & (SIZE - 1);
+            byte[] cached = bytes[slot];
+            
+            if (cached != null && cached.length == length
+                    && rangeEquals(cached, value, length)) {
+                return strings[slot];
+            }
+            
+            String string = new String(value, 0, length,
+                StandardCharsets.UTF_8);
+            bytes[slot] = Arrays.copyOf(value, length);
+            strings[slot] = string;
+            return string;
+        }
+        
+        private static boolean rangeEquals(byte[] a, byte[] b, int length) {
+            for (int i = 0; i < length; ++i) {
+                if (a[i] != b[i]) {
+                    return false;
+                }
+            }
+            
+            return true;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package ch.epfl.imhof.osm;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A replacement for {@link GZIPInputStream} that decompresses ahead of its
+ * reader, on another thread.
+ * <p>
+ * Decompressed data is handed to the reader through a bounded queue of
+ * chunks, so that decompression overlaps with parsing without the whole file
+ * being decompressed in memory. When the file is made of BGZF members (as
+ * produced by <code>bgzip</code>), whose compressed size is known from their
+ * header, the members are additionally inflated in parallel, by as many
+ * threads as there are processors. Other gzip files, including concatenations
+ * of ordinary members, are inflated sequentially by the read-ahead thread.
+ * 
+ * @see <a href="http://samtools.github.io/hts-specs/SAMv1.pdf">The BGZF
+ *      compression format, section 4.1 of the SAM specification</a>
+ * @author Matthieu Bovel (250300)
+ */
+final class ParallelGZIPInputStream extends InputStream {
+    private static final int                    CHUNK_SIZE         = 64 * 1024;
+    private static final int                    MIN_QUEUE_CAPACITY = 16;
+    private static final int                    BGZF_HEADER_SIZE   = 18;
+    private static final int                    BGZF_FOOTER_SIZE   = 8;
+    // Marks the end of the stream in the queue, compared by identity.
+    private static final byte[]                 END                = new byte[0];
+    
+    private final InputStream                   in;
+    private final BlockingQueue<Future<byte[]>> chunks;
+    private final Thread                        producer;
+    // Created by the producer when needed, unless the stream is closed.
+    private ExecutorService                     inflaters;
+    private volatile boolean                    closed             = false;
+    private byte[]                              chunk              = new byte[0];
+    private int                                 position           = 0;
+    // The exception thrown by the last read, thrown again by the next ones.
+    private IOException                         failure;
+    
+    /**
+     * Constructs a new <code>ParallelGZIPInputStream</code> reading the given
+     * compressed stream, and starts decompressing it.
+     * 
+     * @param in
+     *            the compressed stream, closed when this stream is closed
+     */
+    public ParallelGZIPInputStream(InputStream in) {
+        this.in = in;
+        this.chunks = new ArrayBlockingQueue<>(Math.max(
+            MIN_QUEUE_CAPACITY,
+            2 * Runtime.getRuntime().availableProcessors()));
+        this.producer = new Thread(this::produce, "gzip-read-ahead");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+    
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws IOException
+     *             if the stream is closed, or if the compressed stream cannot
+     *             be read or decompressed (in which case all the following
+     *             reads throw the same exception)
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        
+        if (failure != null) {
+            throw failure;
+        }
+        
+        if (len == 0) {
+            return 0;
+        }
+        
+        while (position == chunk.length) {
+            if (chunk == END) {
+                return -1;
+            }
+            
+            chunk = nextChunk();
+            position = 0;
+        }
+        
+        int n = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, n);
+        position += n;
+        return n;
+    }
+    
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+    
+    /**
+     * Stops decompressing and closes the underlying stream.
+     * 
+     * @throws IOException
+     *             if the underlying stream cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        producer.interrupt();
+        shutdownInflaters();
+        in.close();
+    }
+    
+    private byte[] nextChunk() throws IOException {
+        try {
+            return chunks.take().get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException e) {
+            failure = e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+            throw failure;
+        }
+    }
+    
+    // Body of the read-ahead thread.
+    private void produce() {
+        try {
+            byte[] header = new byte[BGZF_HEADER_SIZE];
+            int n = readFully(in, header, 0, header.length);
+            
+            while (n == header.length && isBGZFHeader(header)) {
+                int blockSize = littleEndianShort(header, 16) + 1;
+                
+                if (blockSize < BGZF_HEADER_SIZE + BGZF_FOOTER_SIZE) {
+                    throw new ZipException("invalid BGZF block size");
+                }
+                
+                byte[] block = Arrays.copyOf(header, blockSize);
+                
+                if (readFully(in, block, n, blockSize - n) != blockSize - n) {
+                    throw new EOFException("truncated BGZF block");
+                }
+                
+                chunks.put(inflaters().submit(() -> inflateBGZF(block)));
+                n = readFully(in, header, 0, header.length);
+            }
+            
+            // What remains is not BGZF, the bytes already read are put back
+            // in front of it.
+            if (n > 0) {
+                InputStream rest = new GZIPInputStream(new SequenceInputStream(
+                    new ByteArrayInputStream(header, 0, n),
+                    in), CHUNK_SIZE);
+                byte[] buffer = new byte[CHUNK_SIZE];
+                int size;
+                
+                // Each chunk gets a new buffer, as the previous one may not
+                // have been read yet.
+                while ((size = readFully(rest, buffer, 0, CHUNK_SIZE)) > 0) {
+                    byte[] data = size == CHUNK_SIZE ? buffer : Arrays.copyOf(
+                        buffer,
+                        size);
+                    chunks.put(CompletableFuture.completedFuture(data));
+                    buffer = new byte[CHUNK_SIZE];
+                }
+            }
+            
+            chunks.put(CompletableFuture.completedFuture(END));
+        }
+        catch (InterruptedException e) {
+            // The stream has been closed.
+        }
+        catch (IOException | RuntimeException e) {
+            if (!closed) {
+                CompletableFuture<byte[]> failure = new CompletableFuture<>();
+                failure.completeExceptionally(e);
+                
+                try {
+                    chunks.put(failure);
+                }
+                catch (InterruptedException e1) {
+                    // The stream has been closed.
+                }
+            }
+        }
+    }
+    
+    // Synchronized with #shutdownInflaters, so that no pool is created after
+    // the stream is closed.
+    private synchronized ExecutorService inflaters() {
+        if (closed) {
+            throw new RejectedExecutionException("stream closed");
+        }
+        
+        if (inflaters == null) {
+            inflaters = Executors.newFixedThreadPool(Runtime
+                .getRuntime()
+                .availableProcessors(), r -> {
+                Thread thread = new Thread(r, "gzip-inflater");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        
+        return inflaters;
+    }
+    
+    private synchronized void shutdownInflaters() {
+        if (inflaters != null) {
+            inflaters.shutdownNow();
+        }
+    }
+    
+    // A BGZF member is a gzip member with a single extra subfield, "BC",
+    // holding the total size of the member minus one.
+    private static boolean isBGZFHeader(byte[] header) {
+        return header[0] == 31 && header[1] == (byte) 139 && header[2] == 8
+                && (header[3] & 4) != 0 && header[10] == 6 && header[11] == 0
+                && header[12] == 'B' && header[13] == 'C' && header[14] == 2
+                && header[15] == 0;
+    }
+    
+    private static byte[] inflateBGZF(byte[] block) throws IOException {
+        int footer = block.length - BGZF_FOOTER_SIZE;
+        long crc = littleEndianInt(block, footer) & 0xFFFFFFFFL;
+        int size = littleEndianInt(block, footer + 4);
+        
+        if (size < 0 || size > CHUNK_SIZE) {
+            throw new ZipException("invalid BGZF block size");
+        }
+        
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater(true);
+        
+        try {
+            inflater.setInput(
+                block,
+                BGZF_HEADER_SIZE,
+                footer - BGZF_HEADER_SIZE);
+            
+            int n = 0;
+            
+            while (n < size && !inflater.finished()) {
+                int inflated = inflater.inflate(data, n, size - n);
+                
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                
+                n += inflated;
+            }
+            
+            if (n != size) {
+                throw new ZipException("truncated BGZF block");
+            }
+        }
+        catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        finally {
+            inflater.end();
+        }
+        
+        CRC32 actualCrc = new CRC32();
+        actualCrc.update(data);
+        
+        if (actualCrc.getValue() != crc) {
+            throw new ZipException("corrupt BGZF block (bad CRC)");
+        }
+        
+        return data;
+    }
+    
+    private static int littleEndianShort(byte[] b, int i) {
+        return b[i] & 0xFF | (b[i + 1] & 0xFF) << 8;
+    }
+    
+    private static int littleEndianInt(byte[] b, int i) {
+        return b[i] & 0xFF | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16
+                | (b[i + 3] & 0xFF) << 24;
+    }
+    
+    // Reads until len bytes are read or the end of the stream is reached.
+    // Returns the number of bytes read.
+    private static int readFully(InputStream in, byte[] b, int off, int len)
+            throws IOException {
+        int n = 0;
+        
+        while (n < len) {
+            int count = in.read(b, off + n, len - n);
+            
+            if (count < 0) {
+                break;
+            }
+            
+            n += count;
+        }
+        
+        return n;
+    }
+}
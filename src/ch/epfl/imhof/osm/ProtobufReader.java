@@ -0,0 +1,228 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A minimal reader for protocol buffer messages, sufficient to decode the
+ * messages of osm pbf files without depending on generated code.
+ * <p>
+ * The reader is a cursor over a range of a byte array. Fields are read one
+ * after the other with {@link #next}, and the value of the current field is
+ * then read with the method corresponding to its type, or skipped with
+ * {@link #skip}. Embedded messages and packed repeated fields are read with
+ * {@link #message}, which returns a new reader over the field's bytes.
+ * 
+ * @see <a
+ *      href="https://developers.google.com/protocol-buffers/docs/encoding">
+ *      Protocol Buffers Encoding</a>
+ * @author Matthieu Bovel (250300)
+ */
+final class ProtobufReader {
+    private static final int VARINT           = 0;
+    private static final int FIXED64          = 1;
+    private static final int LENGTH_DELIMITED = 2;
+    private static final int FIXED32          = 5;
+    
+    private final byte[]     bytes;
+    private final int        end;
+    private int              position;
+    private int              field;
+    private int              wireType;
+    
+    /**
+     * Constructs a new <code>ProtobufReader</code> over the whole given array.
+     * 
+     * @param bytes
+     *            the encoded message
+     */
+    public ProtobufReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+    
+    /**
+     * Constructs a new <code>ProtobufReader</code> over the given range of an
+     * array.
+     * 
+     * @param bytes
+     *            the array containing the encoded message
+     * @param offset
+     *            the index of the first byte of the message
+     * @param length
+     *            the length of the message
+     */
+    public ProtobufReader(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.position = offset;
+        this.end = offset + length;
+    }
+    
+    /**
+     * Moves to the next field of the message.
+     * 
+     * @return <code>true</code> if there is a next field, <code>false</code>
+     *         if the end of the message has been reached
+     * @throws IOException
+     *             if the message is malformed
+     */
+    public boolean next() throws IOException {
+        if (position >= end) {
+            return false;
+        }
+        
+        long key = readVarint();
+        field = (int) (key >>> 3);
+        wireType = (int) (key & 7);
+        return true;
+    }
+    
+    /**
+     * Returns <code>true</code> if there are unread bytes left. Used to read
+     * packed repeated fields.
+     * 
+     * @return <code>true</code> if the end of the message has not been reached
+     */
+    public boolean hasRemaining() {
+        return position < end;
+    }
+    
+    /**
+     * Returns the number of the current field.
+     * 
+     * @return the number of the current field
+     */
+    public int field() {
+        return field;
+    }
+    
+    /**
+     * Reads a variable-length integer (the encoding of <code>int32</code>,
+     * <code>int64</code>, <code>uint32</code>, <code>uint64</code>,
+     * <code>bool</code> and <code>enum</code> fields).
+     * 
+     * @return the integer read
+     * @throws IOException
+     *             if the message is malformed
+     */
+    public long readVarint() throws IOException {
+        long value = 0;
+        
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= end) {
+                throw new IOException("truncated protobuf message");
+            }
+            
+            byte b = bytes[position++];
+            value |= (long) (b & 0x7F) << shift;
+            
+            if (b >= 0) {
+                return value;
+            }
+        }
+        
+        throw new IOException("malformed protobuf varint");
+    }
+    
+    /**
+     * Reads a zigzag-encoded variable-length integer (the encoding of
+     * <code>sint32</code> and <code>sint64</code> fields).
+     * 
+     * @return the integer read
+     * @throws IOException
+     *             if the message is malformed
+     */
+    public long readSignedVarint() throws IOException {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    /**
+     * Reads a string field, encoded in UTF-8.
+     * 
+     * @return the string read
+     * @throws IOException
+     *             if the message is malformed
+     */
+    public String readString() throws IOException {
+        int length = readLength();
+        String string = new String(bytes, position, length,
+            StandardCharsets.UTF_8);
+        position += length;
+        return string;
+    }
+    
+    /**
+     * Reads a <code>bytes</code> field into a new array.
+     * 
+     * @return the bytes read
+     * @throws IOException
+     *             if the message is malformed
+     */
+    public byte[] readBytes() throws IOException {
+        int length = readLength();
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, position, copy, 0, length);
+        position += length;
+        return copy;
+    }
+    
+    /**
+     * Returns a reader over an embedded message or a packed repeated field,
+     * and moves to the end of it.
+     * 
+     * @return a reader over the bytes of the current field
+     * @throws IOException
+     *             if the message is malformed
+     */
+    public ProtobufReader message() throws IOException {
+        int length = readLength();
+        ProtobufReader reader = new ProtobufReader(bytes, position, length);
+        position += length;
+        return reader;
+    }
+    
+    /**
+     * Skips the value of the current field.
+     * 
+     * @throws IOException
+     *             if the message is malformed or if the field uses an
+     *             unsupported wire type (groups)
+     */
+    public void skip() throws IOException {
+        switch (wireType) {
+            case VARINT:
+                readVarint();
+                break;
+            case FIXED64:
+                advance(8);
+                break;
+            case LENGTH_DELIMITED:
+                advance(readLength());
+                break;
+            case FIXED32:
+                advance(4);
+                break;
+            default:
+                throw new IOException("unsupported protobuf wire type "
+                        + wireType);
+        }
+    }
+    
+    private int readLength() throws IOException {
+        long length = readVarint();
+        
+        if (length < 0 || length > end - position) {
+            throw new IOException("truncated protobuf message");
+        }
+        
+        return (int) length;
+    }
+    
+    private void advance(int length) throws IOException {
+        if (length > end - position) {
+            throw new IOException("truncated protobuf message");
+        }
+        
+        position += length;
+    }
+}
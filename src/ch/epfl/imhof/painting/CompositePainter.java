@@ -0,0 +1,385 @@
+package ch.epfl.imhof.painting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.Envelope;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * A {@link Painter} made of other painters by {@link Painter#when},
+ * {@link Painter#above}, {@link Painter#layered} or {@link Painter#within}.
+ * <p>
+ * Instead of filtering the whole {@link Map} again for each combinator, a
+ * composite painter is compiled, the first time it draws, into a flat list of
+ * steps: the painters it is made of that are not composite themselves, in
+ * the order they draw. To draw a map, each of its elements is then sent once
+ * through the combinators, which gives the steps it is drawn by, and each
+ * step draws the elements it received, in the order of the map. This draws
+ * exactly what the combinators would draw one after the other.
+ * 
+ * @author Matthieu Bovel (250300)
+ */
+abstract class CompositePainter implements Painter {
+    /**
+     * The kind of the {@link PolyLine PolyLines} of a {@link Map}.
+     */
+    static final int         POLYLINES = 1;
+    /**
+     * The kind of the {@link Polygon Polygons} of a {@link Map}.
+     */
+    static final int         POLYGONS  = 2;
+    
+    private static final int MIN_LAYER = -5;
+    private static final int MAX_LAYER = 5;
+    
+    private final int          stepCount;
+    private final int          kinds;
+    private volatile Painter[] steps;
+    
+    /**
+     * Constructs a new composite painter with the given number of steps.
+     * 
+     * @param stepCount
+     *            the number of steps of the painter
+     * @param kinds
+     *            the kinds of elements drawn by the steps of the painter
+     *            (<code>POLYLINES</code>, <code>POLYGONS</code> or both)
+     */
+    CompositePainter(int stepCount, int kinds) {
+        this.stepCount = stepCount;
+        this.kinds = kinds;
+    }
+    
+    @Override
+    public void drawMap(Map map, Canvas canvas) {
+        Painter[] steps = steps();
+        List<List<Attributed<PolyLine>>> polyLines = buckets(
+            map.polyLines(),
+            POLYLINES);
+        List<List<Attributed<Polygon>>> polygons = buckets(
+            map.polygons(),
+            POLYGONS);
+        
+        for (int i = 0; i != steps.length; ++i) {
+            steps[i].drawMap(
+                new Map(polyLines.get(i), polygons.get(i)),
+                canvas);
+        }
+    }
+    
+    /**
+     * Adds the steps of this painter, in the order they draw, to the given
+     * list.
+     * 
+     * @param steps
+     *            the list to add the steps to
+     */
+    abstract void addSteps(List<Painter> steps);
+    
+    /**
+     * Gives to <code>consumer</code> the index of each step that draws the
+     * given element, in increasing order.
+     * 
+     * @param element
+     *            the element to classify
+     * @param kind
+     *            the kind of the element
+     * @param firstStep
+     *            the index of the first step of this painter
+     * @param consumer
+     *            the consumer of the indices of the steps
+     */
+    abstract void classify(Attributed<?> element, int kind, int firstStep,
+            IntConsumer consumer);
+    
+    // The steps are computed once, as painters are immutable (computing them
+    // twice at the same time is harmless).
+    private Painter[] steps() {
+        if (steps == null) {
+            List<Painter> stepsList = new ArrayList<>(stepCount);
+            
+            addSteps(stepsList);
+            steps = stepsList.toArray(new Painter[stepCount]);
+        }
+        
+        return steps;
+    }
+    
+    private <T> List<List<Attributed<T>>> buckets(
+            List<Attributed<T>> elements, int kind) {
+        List<List<Attributed<T>>> buckets = new ArrayList<>(stepCount);
+        
+        for (int i = 0; i != stepCount; ++i) {
+            buckets.add(new ArrayList<>());
+        }
+        
+        if ((kinds & kind) != 0) {
+            for (Attributed<T> element : elements) {
+                classify(element, kind, 0, i -> buckets.get(i).add(element));
+            }
+        }
+        
+        return buckets;
+    }
+    
+    private static int kinds(Painter painter) {
+        if (painter instanceof CompositePainter) {
+            return ((CompositePainter) painter).kinds;
+        }
+        else if (painter instanceof Restricted) {
+            return ((Restricted) painter).kinds;
+        }
+        else {
+            return POLYLINES | POLYGONS;
+        }
+    }
+    
+    private static int stepCount(Painter painter) {
+        if (painter instanceof CompositePainter) {
+            return ((CompositePainter) painter).stepCount;
+        }
+        else {
+            return 1;
+        }
+    }
+    
+    private static void addStepsOf(Painter painter, List<Painter> steps) {
+        if (painter instanceof CompositePainter) {
+            ((CompositePainter) painter).addSteps(steps);
+        }
+        else {
+            steps.add(painter);
+        }
+    }
+    
+    // The elements of a kind the painter does not draw are not classified
+    // further.
+    private static void classifyWith(Painter painter, Attributed<?> element,
+            int kind, int firstStep, IntConsumer consumer) {
+        if ((kinds(painter) & kind) == 0) {
+            return;
+        }
+        
+        if (painter instanceof CompositePainter) {
+            ((CompositePainter) painter).classify(
+                element,
+                kind,
+                firstStep,
+                consumer);
+        }
+        else {
+            consumer.accept(firstStep);
+        }
+    }
+    
+    /**
+     * The painter returned by {@link Painter#when}.
+     */
+    static final class When extends CompositePainter {
+        private final Painter                  painter;
+        private final Predicate<Attributed<?>> filter;
+        
+        /**
+         * Constructs a new painter drawing the elements that pass the given
+         * filter with the given painter.
+         * 
+         * @param painter
+         *            the painter to use
+         * @param filter
+         *            the filter the elements must pass
+         */
+        public When(Painter painter, Predicate<Attributed<?>> filter) {
+            super(stepCount(painter), kinds(painter));
+            this.painter = painter;
+            this.filter = filter;
+        }
+        
+        @Override
+        void addSteps(List<Painter> steps) {
+            addStepsOf(painter, steps);
+        }
+        
+        @Override
+        void classify(Attributed<?> element, int kind, int firstStep,
+                IntConsumer consumer) {
+            if (filter.test(element)) {
+                classifyWith(painter, element, kind, firstStep, consumer);
+            }
+        }
+    }
+    
+    /**
+     * The painter returned by {@link Painter#above}.
+     */
+    static final class Above extends CompositePainter {
+        private final Painter top;
+        private final Painter bottom;
+        private final int     bottomStepCount;
+        
+        /**
+         * Constructs a new painter drawing with the <code>top</code> painter
+         * after the <code>bottom</code> one.
+         * 
+         * @param top
+         *            the painter drawing last
+         * @param bottom
+         *            the painter drawing first
+         */
+        public Above(Painter top, Painter bottom) {
+            super(
+                stepCount(bottom) + stepCount(top),
+                kinds(bottom) | kinds(top));
+            this.top = top;
+            this.bottom = bottom;
+            this.bottomStepCount = stepCount(bottom);
+        }
+        
+        @Override
+        void addSteps(List<Painter> steps) {
+            addStepsOf(bottom, steps);
+            addStepsOf(top, steps);
+        }
+        
+        @Override
+        void classify(Attributed<?> element, int kind, int firstStep,
+                IntConsumer consumer) {
+            classifyWith(bottom, element, kind, firstStep, consumer);
+            classifyWith(
+                top,
+                element,
+                kind,
+                firstStep + bottomStepCount,
+                consumer);
+        }
+    }
+    
+    /**
+     * The painter returned by {@link Painter#layered}.
+     */
+    static final class Layered extends CompositePainter {
+        private final Painter painter;
+        private final int     layerStepCount;
+        
+        /**
+         * Constructs a new painter drawing each layer with the given painter,
+         * from the lowest layer to the highest.
+         * 
+         * @param painter
+         *            the painter to use for each layer
+         */
+        public Layered(Painter painter) {
+            super(
+                (MAX_LAYER - MIN_LAYER + 1) * stepCount(painter),
+                kinds(painter));
+            this.painter = painter;
+            this.layerStepCount = stepCount(painter);
+        }
+        
+        @Override
+        void addSteps(List<Painter> steps) {
+            for (int i = MIN_LAYER; i <= MAX_LAYER; ++i) {
+                addStepsOf(painter, steps);
+            }
+        }
+        
+        @Override
+        void classify(Attributed<?> element, int kind, int firstStep,
+                IntConsumer consumer) {
+            int layer = element.attributes().layer(0);
+            
+            if (MIN_LAYER <= layer && layer <= MAX_LAYER) {
+                int layerFirstStep = firstStep + (layer - MIN_LAYER)
+                        * layerStepCount;
+                
+                classifyWith(painter, element, kind, layerFirstStep, consumer);
+            }
+        }
+    }
+    
+    /**
+     * The painter returned by {@link Painter#within}.
+     */
+    static final class Within extends CompositePainter {
+        private final Painter  painter;
+        private final Envelope envelope;
+        
+        /**
+         * Constructs a new painter drawing the elements whose envelope
+         * intersects the given one with the given painter.
+         * 
+         * @param painter
+         *            the painter to use
+         * @param envelope
+         *            the envelope the elements must intersect
+         */
+        public Within(Painter painter, Envelope envelope) {
+            super(stepCount(painter), kinds(painter));
+            this.painter = painter;
+            this.envelope = envelope;
+        }
+        
+        // When it is not part of another composite painter, the elements are
+        // found with the spatial index of the map.
+        @Override
+        public void drawMap(Map map, Canvas canvas) {
+            painter.drawMap(map.query(envelope), canvas);
+        }
+        
+        @Override
+        void addSteps(List<Painter> steps) {
+            addStepsOf(painter, steps);
+        }
+        
+        @Override
+        void classify(Attributed<?> element, int kind, int firstStep,
+                IntConsumer consumer) {
+            Envelope elementEnvelope;
+            
+            if (kind == POLYGONS) {
+                elementEnvelope = ((Polygon) element.value()).envelope();
+            }
+            else {
+                elementEnvelope = ((PolyLine) element.value()).envelope();
+            }
+            
+            if (envelope.intersects(elementEnvelope)) {
+                classifyWith(painter, element, kind, firstStep, consumer);
+            }
+        }
+    }
+    
+    /**
+     * A painter drawing only one kind of elements of its map, to which the
+     * elements of the other kind are not given by composite painters.
+     */
+    static final class Restricted implements Painter {
+        private final Painter painter;
+        private final int     kinds;
+        
+        /**
+         * Constructs a new painter drawing only the given kinds of elements
+         * with the given painter.
+         * 
+         * @param painter
+         *            the painter to use, which must ignore the elements of
+         *            other kinds
+         * @param kinds
+         *            the kinds of elements drawn by <code>painter</code>
+         */
+        public Restricted(Painter painter, int kinds) {
+            this.painter = painter;
+            this.kinds = kinds;
+        }
+        
+        @Override
+        public void drawMap(Map map, Canvas canvas) {
+            painter.drawMap(map, canvas);
+        }
+    }
+}
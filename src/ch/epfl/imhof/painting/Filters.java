@@ -1,15 +1,17 @@
 package ch.epfl.imhof.painting;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.function.Predicate;
 
+import ch.epfl.imhof.AttributeIds;
 import ch.epfl.imhof.Attributed;
 
 /**
  * This class contains some useful filters that can be used to target only some
  * {@link Attributed} objects.
+ * <p>
+ * The filters look for the {@link AttributeIds} of the names and values they
+ * are given, which they find when they are created, so that testing an
+ * object only compares integers.
  * 
  * @author Matthieu Bovel (250300)
  */
@@ -29,7 +31,9 @@ public final class Filters {
      *         <code>false</code> otherwise
      */
     static public Predicate<Attributed<?>> tagged(String name) {
-        return a -> a.hasAttribute(name);
+        int nameId = AttributeIds.of(name);
+        
+        return a -> a.attributes().contains(nameId);
     }
     
     // Should it support integers as attribute values?
@@ -47,10 +51,26 @@ public final class Filters {
      *         value is one of the given values, <code>false</code> otherwise
      */
     static public Predicate<Attributed<?>> tagged(String name, String... values) {
-        Set<String> valuesSet = new HashSet<String>(Arrays.asList(values));
+        int nameId = AttributeIds.of(name);
+        int[] valueIds = new int[values.length];
+        
+        for (int i = 0; i != values.length; ++i) {
+            valueIds[i] = AttributeIds.of(values[i]);
+        }
         
-        return a -> a.hasAttribute(name)
-                && valuesSet.contains(a.attributeValue(name));
+        return a -> {
+            int valueId = a.attributes().valueId(nameId);
+            
+            if (valueId != -1) {
+                for (int id : valueIds) {
+                    if (id == valueId) {
+                        return true;
+                    }
+                }
+            }
+            
+            return false;
+        };
     }
     
     /**
@@ -64,6 +84,6 @@ public final class Filters {
      *         its parameter is on a given layer, <code>false</code> otherwise
      */
     static public Predicate<Attributed<?>> onLayer(int layer) {
-        return a -> a.attributeValue("layer", 0) == layer;
+        return a -> a.attributes().layer(0) == layer;
     }
 }
@@ -5,12 +5,13 @@ import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
 
 import java.awt.BasicStroke;
 import java.awt.Graphics2D;
-import java.awt.geom.Area;
 import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
-import java.util.function.Function;
+import java.util.IdentityHashMap;
+import java.util.List;
 
 import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.Envelope;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
@@ -19,6 +20,20 @@ import ch.epfl.imhof.geometry.Polygon;
  * This implementation of the {@link Canvas} interface use Java2D classes to
  * draw polylines and polygons on a {@link BufferedImage}. The result is
  * accessible with the {@link #image} getter.
+ * <p>
+ * Polylines and polygons whose {@link Envelope} does not intersect the part
+ * of the plane covered by the image (grown by the extent of the stroke, for
+ * polylines) are not drawn at all, and those that go out of it are clipped
+ * before being drawn, so that Java2D only works on their visible parts.
+ * <p>
+ * They can also be simplified, so that Java2D does not work on details smaller
+ * than a pixel. This changes a few antialiased pixels, so it is only done when
+ * a simplification tolerance is given: by default, the image is the same as
+ * the one drawn from the whole polylines and polygons.
+ * <p>
+ * The Java2D strokes and colors are made once per {@link LineStyle} and
+ * {@link Color} object, and only given to Java2D when they change, as
+ * painters draw many elements in a row with the same style.
  * 
  * @see <a
  *      href="https://docs.oracle.com/javase/tutorial/2d/overview/index.html">Java2D
@@ -26,9 +41,21 @@ import ch.epfl.imhof.geometry.Polygon;
  * @author Matteo Besançon (245826)
  */
 public final class Java2DCanvas implements Canvas {
-    private final Function<Point, Point> change;
-    private final BufferedImage          image;
-    private final Graphics2D             context;
+    /**
+     * A simplification tolerance, in pixels, small enough for the simplified
+     * polylines and polygons not to be told apart from the original ones.
+     */
+    public static final double  SIMPLIFICATION_TOLERANCE = 0.25;
+    
+    private final double        resolutionFactor;
+    private final Viewport      viewport;
+    private final BufferedImage image;
+    private final Graphics2D    context;
+    
+    private final IdentityHashMap<LineStyle, BasicStroke> strokes    = new IdentityHashMap<>();
+    private final IdentityHashMap<Color, java.awt.Color>  javaColors = new IdentityHashMap<>();
+    private BasicStroke                                   stroke;
+    private Color                                         color;
     
     /**
      * Constructs a new <code>Java2DCanvas</code> with given arguments.
@@ -52,15 +79,43 @@ public final class Java2DCanvas implements Canvas {
      */
     public Java2DCanvas(Point bl, Point tr, int width, int height,
             int resolution, Color background) {
-        double resolutionFactor = resolution / 72.0;
+        this(bl, tr, width, height, resolution, background, 0);
+    }
+    
+    /**
+     * Constructs a new <code>Java2DCanvas</code> with given arguments, that
+     * simplifies what it draws with the given tolerance.
+     * 
+     * @param bl
+     *            the point at the bottom left of the image
+     * @param tr
+     *            the point at the top right of the image
+     * @param width
+     *            width of generated image, in pixels
+     * @param height
+     *            height of generated image, in pixels
+     * @param resolution
+     *            resolution of the generated image
+     * @param background
+     *            color of the background
+     * @param simplificationTolerance
+     *            the largest distance (in pixels) between a line to draw and
+     *            the simplified one actually drawn, or <code>0</code> for no
+     *            simplification (see {@link #SIMPLIFICATION_TOLERANCE})
+     */
+    public Java2DCanvas(Point bl, Point tr, int width, int height,
+            int resolution, Color background, double simplificationTolerance) {
+        resolutionFactor = resolution / 72.0;
+        
         double relWidth = width / resolutionFactor;
         double relHeight = height / resolutionFactor;
         
-        change = Point.alignedCoordinateChange(
+        viewport = new Viewport(
             bl,
-            new Point(0, relHeight),
             tr,
-            new Point(relWidth, 0));
+            relWidth,
+            relHeight,
+            simplificationTolerance / resolutionFactor);
         
         image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         
@@ -73,10 +128,43 @@ public final class Java2DCanvas implements Canvas {
         context.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
         
         // fill the background
-        context.setColor(background.toJavaColor());
+        setColor(background);
         context.fillRect(0, 0, (int) relWidth + 1, (int) relHeight + 1);
     }
     
+    /**
+     * Constructs a new <code>Java2DCanvas</code> drawing only on the given
+     * rectangle of the image of the given canvas, exactly as the given canvas
+     * would. Several such canvases can draw on disjoint parts of the same
+     * image at the same time.
+     * 
+     * @param canvas
+     *            the canvas whose image to draw on
+     * @param x
+     *            the x-coordinate of the rectangle, in pixels
+     * @param y
+     *            the y-coordinate of the rectangle, in pixels
+     * @param width
+     *            the width of the rectangle, in pixels
+     * @param height
+     *            the height of the rectangle, in pixels
+     */
+    Java2DCanvas(Java2DCanvas canvas, int x, int y, int width, int height) {
+        resolutionFactor = canvas.resolutionFactor;
+        image = canvas.image;
+        viewport = canvas.viewport.part(
+            x / resolutionFactor,
+            y / resolutionFactor,
+            width / resolutionFactor,
+            height / resolutionFactor);
+        
+        // The clip is set before the scaling, so that it is in pixels.
+        context = image.createGraphics();
+        context.clipRect(x, y, width, height);
+        context.scale(resolutionFactor, resolutionFactor);
+        context.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+    }
+    
     /**
      * Returns the result as an image buffer.
      * 
@@ -86,17 +174,36 @@ public final class Java2DCanvas implements Canvas {
         return image;
     }
     
+    /**
+     * Returns the part of the plane covered by this canvas.
+     * 
+     * @return the part of the plane covered by this canvas
+     */
+    Envelope viewport() {
+        return viewport.envelope();
+    }
+    
     /**
      * {@inheritDoc}
      */
     @Override
     public void drawPolyLine(PolyLine toDraw, LineStyle style) {
-        BasicStroke stroke = lineStyleToBasicStroke(style);
+        List<PolyLine> parts = viewport.visibleParts(toDraw, style);
         
-        context.setStroke(stroke);
-        context.setColor(style.color().toJavaColor());
+        if (parts.isEmpty()) {
+            return;
+        }
+        
+        Path2D path = new Path2D.Double();
+        
+        for (PolyLine part : parts) {
+            appendToPath2D(path, part);
+        }
+        
+        setStroke(style);
+        setColor(style.color());
         
-        context.draw(polyLineToPath2D(toDraw));
+        context.draw(path);
     }
     
     /**
@@ -104,39 +211,65 @@ public final class Java2DCanvas implements Canvas {
      */
     @Override
     public void drawPolygon(Polygon toDraw, Color color) {
-        Path2D path = polyLineToPath2D(toDraw.shell());
-        Area area = new Area(path);
+        Polygon clipped = viewport.visiblePart(toDraw);
         
-        for (ClosedPolyLine hole : toDraw.holes()) {
-            area.subtract(new Area(polyLineToPath2D(hole)));
+        if (clipped == null) {
+            return;
         }
         
-        context.setColor(color.toJavaColor());
+        // The holes are inside the shell and do not overlap, so a point is in
+        // the polygon if and only if it is inside an odd number of its rings.
+        Path2D path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
         
-        context.fill(area);
+        appendToPath2D(path, clipped.shell());
+        
+        for (ClosedPolyLine hole : clipped.holes()) {
+            appendToPath2D(path, hole);
+        }
+        
+        setColor(color);
+        
+        context.fill(path);
     }
     
-    private Path2D polyLineToPath2D(PolyLine toDraw) {
-        Path2D path = new Path2D.Double();
-        boolean first = true;
+    private void setStroke(LineStyle style) {
+        BasicStroke newStroke = strokes.get(style);
+        
+        if (newStroke == null) {
+            newStroke = lineStyleToBasicStroke(style);
+            strokes.put(style, newStroke);
+        }
         
-        for (Point point : toDraw.points()) {
-            Point relPoint = change.apply(point);
+        if (newStroke != stroke) {
+            context.setStroke(newStroke);
+            stroke = newStroke;
+        }
+    }
+    
+    private void setColor(Color newColor) {
+        if (newColor != color) {
+            java.awt.Color javaColor = javaColors.get(newColor);
             
-            if (first) {
-                path.moveTo(relPoint.x(), relPoint.y());
-                first = false;
-            }
-            else {
-                path.lineTo(relPoint.x(), relPoint.y());
+            if (javaColor == null) {
+                javaColor = newColor.toJavaColor();
+                javaColors.put(newColor, javaColor);
             }
+            
+            context.setColor(javaColor);
+            color = newColor;
+        }
+    }
+    
+    private void appendToPath2D(Path2D path, PolyLine toDraw) {
+        path.moveTo(viewport.x(toDraw.x(0)), viewport.y(toDraw.y(0)));
+        
+        for (int i = 1; i != toDraw.size(); ++i) {
+            path.lineTo(viewport.x(toDraw.x(i)), viewport.y(toDraw.y(i)));
         }
         
         if (toDraw.isClosed()) {
             path.closePath();
         }
-        
-        return path;
     }
     
     static private BasicStroke lineStyleToBasicStroke(LineStyle style) {
@@ -150,7 +283,7 @@ public final class Java2DCanvas implements Canvas {
             style.width(),
             convertCap(style),
             convertJoin(style),
-            10.0f,
+            Viewport.MITER_LIMIT,
             dash,
             0.0f);
     }
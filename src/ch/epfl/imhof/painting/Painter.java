@@ -1,17 +1,21 @@
 package ch.epfl.imhof.painting;
 
-import java.util.List;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import ch.epfl.imhof.Attributed;
 import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.Envelope;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
 
 /**
  * Functional interface representing a way to draw a {@link Map} on a
  * {@link Canvas}.
+ * <p>
+ * The painters built by {@link #when}, {@link #above}, {@link #layered} and
+ * {@link #within} do not filter the map themselves: the whole combination is
+ * compiled into a list of steps, and each element of the map is classified
+ * once to find the steps that draw it.
  * 
  * @author Matthieu Bovel (250300)
  */
@@ -35,23 +39,21 @@ public interface Painter {
      * @return the new <code>Painter</code>
      */
     default Painter when(Predicate<Attributed<?>> filter) {
-        return (map, canvas) -> {
-            List<Attributed<Polygon>> filteredPolygons = map
-                .polygons()
-                .stream()
-                .filter(filter)
-                .collect(Collectors.toList());
-            
-            List<Attributed<PolyLine>> filteredPolyLines = map
-                .polyLines()
-                .stream()
-                .filter(filter)
-                .collect(Collectors.toList());
-            
-            Map filteredMap = new Map(filteredPolyLines, filteredPolygons);
-            
-            drawMap(filteredMap, canvas);
-        };
+        return new CompositePainter.When(this, filter);
+    }
+    
+    /**
+     * Returns a new <code>Painter</code> that draws only the elements of this
+     * painter's {@link Map} whose {@link Envelope} intersects the given one,
+     * found with {@link Map#query}.
+     * 
+     * @param envelope
+     *            the area in which to draw, including the margin needed for
+     *            lines whose stroke is partly in it
+     * @return the new <code>Painter</code>
+     */
+    default Painter within(Envelope envelope) {
+        return new CompositePainter.Within(this, envelope);
     }
     
     /**
@@ -63,10 +65,7 @@ public interface Painter {
      * @return the combined <code>Painter</code>
      */
     default Painter above(Painter that) {
-        return (map, canvas) -> {
-            that.drawMap(map, canvas);
-            drawMap(map, canvas);
-        };
+        return new CompositePainter.Above(this, that);
     }
     
     /**
@@ -77,12 +76,7 @@ public interface Painter {
      * @return the new <code>Painter</code>
      */
     default Painter layered() {
-        return (map, canvas) -> {
-            for (int i = -5; i != 6; ++i) {
-                Painter layerPainter = when(Filters.onLayer(i));
-                layerPainter.drawMap(map, canvas);
-            }
-        };
+        return new CompositePainter.Layered(this);
     }
     
     /**
@@ -104,11 +98,11 @@ public interface Painter {
      * @return the new <code>Painter</code>
      */
     static Painter polygon(Color color) {
-        return (map, canvas) -> {
+        return new CompositePainter.Restricted((map, canvas) -> {
             for (Attributed<Polygon> polygon : map.polygons()) {
                 canvas.drawPolygon(polygon.value(), color);
             }
-        };
+        }, CompositePainter.POLYGONS);
     }
     
     /**
@@ -120,11 +114,11 @@ public interface Painter {
      * @return the new <code>Painter</code>
      */
     static Painter line(LineStyle style) {
-        return (map, canvas) -> {
+        return new CompositePainter.Restricted((map, canvas) -> {
             for (Attributed<PolyLine> polyline : map.polyLines()) {
                 canvas.drawPolyLine(polyline.value(), style);
             }
-        };
+        }, CompositePainter.POLYLINES);
     }
     
     /**
@@ -179,7 +173,7 @@ public interface Painter {
      * @return the new <code>Painter</code>
      */
     static Painter outline(LineStyle style) {
-        return (map, canvas) -> {
+        return new CompositePainter.Restricted((map, canvas) -> {
             for (Attributed<Polygon> polygon : map.polygons()) {
                 canvas.drawPolyLine(polygon.value().shell(), style);
                 
@@ -188,7 +182,7 @@ public interface Painter {
                 }
                 
             }
-        };
+        }, CompositePainter.POLYGONS);
     }
     
     /**
@@ -0,0 +1,294 @@
+package ch.epfl.imhof.painting;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import ch.epfl.imhof.geometry.GeometryCodec;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * A {@link Canvas} that does not draw anything, but records what is drawn on
+ * it (a display list), so that it can be drawn again later on any other
+ * canvas, for example on {@link Java2DCanvas Java2DCanvases} of different
+ * areas or resolutions, without using the {@link Painter} and the map again.
+ * <p>
+ * The display list is made of a table of the {@link LineStyle LineStyles}
+ * and {@link Color Colors} used and, for each drawing, the index of its style
+ * or color in the table and the drawn geometry. It can be written to a binary
+ * file, where the coordinates of all the geometries are packed in a single
+ * array of <code>double</code>s, and read back.
+ * 
+ * @author Matthieu Bovel (250300)
+ */
+public final class RecordingCanvas implements Canvas {
+    private static final long MAGIC   = 0x494D484F46444C53L; // "IMHOFDLS"
+    private static final int  VERSION = 1;
+    
+    private final List<LineStyle>                     styles       = new ArrayList<>();
+    private final List<Color>                         colors       = new ArrayList<>();
+    private final IdentityHashMap<LineStyle, Integer> styleIndices = new IdentityHashMap<>();
+    private final IdentityHashMap<Color, Integer>     colorIndices = new IdentityHashMap<>();
+    
+    // For each drawing, the index of its style for a polyline, or -1 minus
+    // the index of its color for a polygon. The geometries are immutable, so
+    // they are kept as they are.
+    private int[]                                     drawings     = new int[16];
+    private Object[]                                  geometries   = new Object[16];
+    private int                                       size         = 0;
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drawPolyLine(PolyLine toDraw, LineStyle style) {
+        Integer index = styleIndices.get(style);
+        
+        if (index == null) {
+            index = styles.size();
+            styles.add(style);
+            styleIndices.put(style, index);
+            colorIndex(style.color());
+        }
+        
+        add(index, toDraw);
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drawPolygon(Polygon toDraw, Color color) {
+        add(-1 - colorIndex(color), toDraw);
+    }
+    
+    /**
+     * Returns the number of drawings recorded.
+     * 
+     * @return the number of drawings recorded
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Draws on the given canvas everything that has been drawn on this one, in
+     * the same order.
+     * 
+     * @param canvas
+     *            the canvas to draw on
+     */
+    public void replay(Canvas canvas) {
+        for (int i = 0; i != size; ++i) {
+            if (drawings[i] >= 0) {
+                canvas.drawPolyLine(
+                    (PolyLine) geometries[i],
+                    styles.get(drawings[i]));
+            }
+            else {
+                canvas.drawPolygon(
+                    (Polygon) geometries[i],
+                    colors.get(-1 - drawings[i]));
+            }
+        }
+    }
+    
+    /**
+     * Writes what has been drawn on this canvas to the given file.
+     * 
+     * @param file
+     *            the file to write
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            
+            out.writeInt(colors.size());
+            
+            for (Color color : colors) {
+                out.writeFloat(color.r());
+                out.writeFloat(color.g());
+                out.writeFloat(color.b());
+            }
+            
+            out.writeInt(styles.size());
+            
+            for (LineStyle style : styles) {
+                out.writeFloat(style.width());
+                out.writeInt(colorIndices.get(style.color()));
+                out.writeByte(style.cap().ordinal());
+                out.writeByte(style.join().ordinal());
+                out.writeInt(style.dashingPattern().length);
+                
+                for (float dash : style.dashingPattern()) {
+                    out.writeFloat(dash);
+                }
+            }
+            
+            // Structure first, so that coordinates can be read in one go.
+            out.writeInt(size);
+            
+            for (int i = 0; i != size; ++i) {
+                out.writeInt(drawings[i]);
+                
+                if (drawings[i] >= 0) {
+                    GeometryCodec.writeStructure(
+                        out,
+                        (PolyLine) geometries[i]);
+                }
+                else {
+                    GeometryCodec.writeStructure(out, (Polygon) geometries[i]);
+                }
+            }
+            
+            for (int i = 0; i != size; ++i) {
+                if (drawings[i] >= 0) {
+                    GeometryCodec.writeCoordinates(
+                        out,
+                        (PolyLine) geometries[i]);
+                }
+                else {
+                    GeometryCodec.writeCoordinates(
+                        out,
+                        (Polygon) geometries[i]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reads a file written by {@link #write}.
+     * 
+     * @param file
+     *            the file to read
+     * @return a <code>RecordingCanvas</code> on which the drawings of the
+     *         file have been drawn
+     * @throws IOException
+     *             if the file cannot be read or was not written by
+     *             {@link #write}
+     */
+    public static RecordingCanvas read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+            file.toPath(),
+            StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(
+                MapMode.READ_ONLY,
+                0,
+                channel.size());
+            
+            if (buffer.getLong() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(file + " is not a display list file");
+            }
+            
+            Color[] colors = new Color[count(buffer)];
+            
+            for (int i = 0; i != colors.length; ++i) {
+                colors[i] = Color.rgb(
+                    buffer.getFloat(),
+                    buffer.getFloat(),
+                    buffer.getFloat());
+            }
+            
+            LineStyle[] styles = new LineStyle[count(buffer)];
+            
+            for (int i = 0; i != styles.length; ++i) {
+                float width = buffer.getFloat();
+                Color color = colors[buffer.getInt()];
+                LineStyle.LineCap cap = LineStyle.LineCap.values()[buffer
+                    .get()];
+                LineStyle.LineJoin join = LineStyle.LineJoin.values()[buffer
+                    .get()];
+                float[] dashingPattern = new float[count(buffer)];
+                
+                for (int j = 0; j != dashingPattern.length; ++j) {
+                    dashingPattern[j] = buffer.getFloat();
+                }
+                
+                styles[i] = new LineStyle(
+                    width,
+                    color,
+                    cap,
+                    join,
+                    dashingPattern);
+            }
+            
+            int[] drawings = new int[count(buffer)];
+            int[][] structures = new int[drawings.length][];
+            
+            for (int i = 0; i != drawings.length; ++i) {
+                drawings[i] = buffer.getInt();
+                structures[i] = drawings[i] >= 0
+                        ? GeometryCodec.readPolyLineStructure(buffer)
+                        : GeometryCodec.readPolygonStructure(buffer);
+            }
+            
+            DoubleBuffer coordinates = buffer.slice().asDoubleBuffer();
+            RecordingCanvas recording = new RecordingCanvas();
+            
+            for (int i = 0; i != drawings.length; ++i) {
+                if (drawings[i] >= 0) {
+                    recording.drawPolyLine(
+                        GeometryCodec.readPolyLine(coordinates, structures[i]),
+                        styles[drawings[i]]);
+                }
+                else {
+                    recording.drawPolygon(
+                        GeometryCodec.readPolygon(coordinates, structures[i]),
+                        colors[-1 - drawings[i]]);
+                }
+            }
+            
+            return recording;
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException
+                | IllegalArgumentException e) {
+            throw new IOException(
+                file + " is not a valid display list file",
+                e);
+        }
+    }
+    
+    private int colorIndex(Color color) {
+        Integer index = colorIndices.get(color);
+        
+        if (index == null) {
+            index = colors.size();
+            colors.add(color);
+            colorIndices.put(color, index);
+        }
+        
+        return index;
+    }
+    
+    private void add(int drawing, Object geometry) {
+        if (size == drawings.length) {
+            drawings = Arrays.copyOf(drawings, 2 * size);
+            geometries = Arrays.copyOf(geometries, 2 * size);
+        }
+        
+        drawings[size] = drawing;
+        geometries[size] = geometry;
+        ++size;
+    }
+    
+    private static int count(ByteBuffer buffer) throws IOException {
+        return GeometryCodec.readCount(buffer);
+    }
+}
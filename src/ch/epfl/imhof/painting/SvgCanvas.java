@@ -0,0 +1,307 @@
+package ch.epfl.imhof.painting;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * This implementation of the {@link Canvas} interface writes an SVG image to
+ * an {@link OutputStream}, as it is drawn on: each polyline or polygon is
+ * written right away as a <code>&lt;path&gt;</code> element, so that the
+ * memory used does not depend on the size of the image. The image is complete
+ * once the canvas is {@link #close closed}.
+ * <p>
+ * Each distinct {@link LineStyle} and polygon {@link Color} is written once,
+ * as a CSS class, the first time it is used, and paths only refer to their
+ * class. Coordinates are written in points (1/72 inch), rounded to
+ * {@value #DECIMALS} decimals and relative to the previous point, and
+ * polylines and polygons are culled, clipped and simplified as by a
+ * {@link Java2DCanvas}.
+ * 
+ * @see <a href="https://www.w3.org/TR/SVG11/paths.html">SVG paths, W3C</a>
+ * @author Matthieu Bovel (250300)
+ */
+public final class SvgCanvas implements Canvas, Closeable {
+    // Coordinates are written as integer numbers of 1/SCALE points, and the
+    // simplification tolerance (in points) is the size of this unit.
+    private static final int    DECIMALS                 = 2;
+    private static final long   SCALE                    = (long) Math.pow(10, DECIMALS);
+    private static final double SIMPLIFICATION_TOLERANCE = 1.0 / SCALE;
+    
+    private final Viewport      viewport;
+    private final Writer        out;
+    private final StringBuilder path                     = new StringBuilder();
+    
+    private final IdentityHashMap<Object, String> classes      = new IdentityHashMap<>();
+    private final HashMap<String, String>         declarations = new HashMap<>();
+    
+    /**
+     * Constructs a new <code>SvgCanvas</code> writing to the given stream an
+     * image of the same size as a {@link Java2DCanvas} constructed with the
+     * same arguments.
+     * 
+     * @param bl
+     *            the point at the bottom left of the image
+     * @param tr
+     *            the point at the top right of the image
+     * @param width
+     *            width of the image, in pixels
+     * @param height
+     *            height of the image, in pixels
+     * @param resolution
+     *            resolution of the image, from which its size in points is
+     *            computed
+     * @param background
+     *            color of the background
+     * @param stream
+     *            the stream to write the image to, closed when the canvas is
+     * @throws IOException
+     *             if the beginning of the image cannot be written
+     */
+    public SvgCanvas(Point bl, Point tr, int width, int height,
+            int resolution, Color background, OutputStream stream)
+            throws IOException {
+        double relWidth = width * 72.0 / resolution;
+        double relHeight = height * 72.0 / resolution;
+        
+        viewport = new Viewport(
+            bl,
+            tr,
+            relWidth,
+            relHeight,
+            SIMPLIFICATION_TOLERANCE);
+        
+        out = new BufferedWriter(new OutputStreamWriter(
+            stream,
+            StandardCharsets.UTF_8));
+        
+        String w = number(relWidth);
+        String h = number(relHeight);
+        
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\""
+                + " width=\"" + w + "pt\" height=\"" + h + "pt\""
+                + " viewBox=\"0 0 " + w + " " + h + "\">\n");
+        out.write("<rect width=\"100%\" height=\"100%\" fill=\""
+                + hex(background) + "\"/>\n");
+    }
+    
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws UncheckedIOException
+     *             if the polyline cannot be written
+     */
+    @Override
+    public void drawPolyLine(PolyLine toDraw, LineStyle style) {
+        path.setLength(0);
+        
+        for (PolyLine part : viewport.visibleParts(toDraw, style)) {
+            appendToPath(part);
+        }
+        
+        if (path.length() != 0) {
+            writePath(style);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws UncheckedIOException
+     *             if the polygon cannot be written
+     */
+    @Override
+    public void drawPolygon(Polygon toDraw, Color color) {
+        Polygon clipped = viewport.visiblePart(toDraw);
+        
+        if (clipped == null) {
+            return;
+        }
+        
+        path.setLength(0);
+        appendToPath(clipped.shell());
+        
+        for (ClosedPolyLine hole : clipped.holes()) {
+            appendToPath(hole);
+        }
+        
+        writePath(color);
+    }
+    
+    /**
+     * Ends the image and closes the stream it is written to.
+     * 
+     * @throws IOException
+     *             if the end of the image cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write("</svg>\n");
+        }
+        finally {
+            out.close();
+        }
+    }
+    
+    // Writes the path being built, with the class of the given style (a
+    // LineStyle or a Color), writing the class first if it is new.
+    private void writePath(Object style) {
+        try {
+            String name = classes.get(style);
+            
+            if (name == null) {
+                String declaration = style instanceof LineStyle
+                        ? declaration((LineStyle) style)
+                        : declaration((Color) style);
+                
+                name = declarations.get(declaration);
+                
+                if (name == null) {
+                    name = "s" + declarations.size();
+                    declarations.put(declaration, name);
+                    out.write("<style>." + name + "{" + declaration
+                            + "}</style>\n");
+                }
+                
+                classes.put(style, name);
+            }
+            
+            out.write("<path class=\"");
+            out.write(name);
+            out.write("\" d=\"");
+            out.append(path);
+            out.write("\"/>\n");
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    // Appends the given polyline to the path, with each point (after the
+    // first one) relative to the rounded previous one, so that rounding
+    // errors do not add up.
+    private void appendToPath(PolyLine toDraw) {
+        long x = Math.round(viewport.x(toDraw.x(0)) * SCALE);
+        long y = Math.round(viewport.y(toDraw.y(0)) * SCALE);
+        
+        if (path.length() != 0) {
+            path.append(' ');
+        }
+        
+        path.append('M');
+        appendNumber(path, x);
+        path.append(' ');
+        appendNumber(path, y);
+        
+        if (toDraw.size() > 1) {
+            path.append('l');
+        }
+        
+        for (int i = 1; i != toDraw.size(); ++i) {
+            long newX = Math.round(viewport.x(toDraw.x(i)) * SCALE);
+            long newY = Math.round(viewport.y(toDraw.y(i)) * SCALE);
+            
+            if (i != 1) {
+                path.append(' ');
+            }
+            
+            appendNumber(path, newX - x);
+            path.append(' ');
+            appendNumber(path, newY - y);
+            x = newX;
+            y = newY;
+        }
+        
+        if (toDraw.isClosed()) {
+            path.append('z');
+        }
+    }
+    
+    // Appends the given number of 1/SCALE units, without trailing zeros.
+    private static void appendNumber(StringBuilder builder, long units) {
+        if (units < 0) {
+            builder.append('-');
+            units = -units;
+        }
+        
+        builder.append(units / SCALE);
+        
+        long decimals = units % SCALE;
+        
+        if (decimals != 0) {
+            builder.append('.');
+            
+            for (long unit = SCALE / 10; decimals != 0; unit /= 10) {
+                builder.append((char) ('0' + decimals / unit));
+                decimals %= unit;
+            }
+        }
+    }
+    
+    private static String number(double value) {
+        StringBuilder builder = new StringBuilder();
+        
+        appendNumber(builder, Math.round(value * SCALE));
+        
+        return builder.toString();
+    }
+    
+    private static String declaration(LineStyle style) {
+        StringBuilder declaration = new StringBuilder("fill:none;stroke:");
+        
+        declaration
+            .append(hex(style.color()))
+            .append(";stroke-width:")
+            .append(number(style.width()))
+            .append(";stroke-linecap:")
+            .append(style.cap().name().toLowerCase(Locale.ROOT))
+            .append(";stroke-linejoin:")
+            .append(style.join().name().toLowerCase(Locale.ROOT))
+            .append(";stroke-miterlimit:")
+            .append(number(Viewport.MITER_LIMIT));
+        
+        if (style.dashingPattern().length != 0) {
+            declaration.append(";stroke-dasharray:");
+            
+            for (int i = 0; i != style.dashingPattern().length; ++i) {
+                if (i != 0) {
+                    declaration.append(',');
+                }
+                
+                declaration.append(number(style.dashingPattern()[i]));
+            }
+        }
+        
+        return declaration.toString();
+    }
+    
+    // The holes are inside the shell and do not overlap, so a point is in the
+    // polygon if and only if it is inside an odd number of its rings.
+    private static String declaration(Color color) {
+        return "fill:" + hex(color) + ";fill-rule:evenodd;stroke:none";
+    }
+    
+    // Rounds the components as java.awt.Color does.
+    private static String hex(Color color) {
+        int rgb = (int) (color.r() * 255 + 0.5) << 16
+                | (int) (color.g() * 255 + 0.5) << 8
+                | (int) (color.b() * 255 + 0.5);
+        
+        return String.format("#%06x", rgb);
+    }
+}
@@ -0,0 +1,126 @@
+package ch.epfl.imhof.painting;
+
+import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
+
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.Point;
+
+/**
+ * Draws a whole {@link Map} with a {@link Painter} on a {@link BufferedImage},
+ * using all the available processors.
+ * <p>
+ * The image is split into square tiles of {@value #TILE_SIZE} pixels, which
+ * are drawn in parallel, each by its own {@link Java2DCanvas} that only draws
+ * on its tile. Each tile is drawn with the elements of the map that can be
+ * seen on it (found with {@link Map#query}), in the same order, so that the
+ * image is the same as the one drawn by a single {@link Java2DCanvas}.
+ * 
+ * @author Matthieu Bovel (250300)
+ */
+public final class TiledJava2DCanvas {
+    private static final int   TILE_SIZE = 512;
+    
+    private final Java2DCanvas canvas;
+    private final int          width;
+    private final int          height;
+    
+    /**
+     * Constructs a new <code>TiledJava2DCanvas</code> with the same arguments
+     * as a {@link Java2DCanvas}, that does not simplify what it draws.
+     * 
+     * @param bl
+     *            the point at the bottom left of the image
+     * @param tr
+     *            the point at the top right of the image
+     * @param width
+     *            width of generated image, in pixels
+     * @param height
+     *            height of generated image, in pixels
+     * @param resolution
+     *            resolution of the generated image
+     * @param background
+     *            color of the background
+     */
+    public TiledJava2DCanvas(Point bl, Point tr, int width, int height,
+            int resolution, Color background) {
+        this(bl, tr, width, height, resolution, background, 0);
+    }
+    
+    /**
+     * Constructs a new <code>TiledJava2DCanvas</code> with the same arguments
+     * as a {@link Java2DCanvas} that simplifies what it draws.
+     * 
+     * @param bl
+     *            the point at the bottom left of the image
+     * @param tr
+     *            the point at the top right of the image
+     * @param width
+     *            width of generated image, in pixels
+     * @param height
+     *            height of generated image, in pixels
+     * @param resolution
+     *            resolution of the generated image
+     * @param background
+     *            color of the background
+     * @param simplificationTolerance
+     *            the simplification tolerance, in pixels, or <code>0</code>
+     *            for no simplification (see
+     *            {@link Java2DCanvas})
+     */
+    public TiledJava2DCanvas(Point bl, Point tr, int width, int height,
+            int resolution, Color background, double simplificationTolerance) {
+        this.canvas = new Java2DCanvas(
+            bl,
+            tr,
+            width,
+            height,
+            resolution,
+            background,
+            simplificationTolerance);
+        this.width = width;
+        this.height = height;
+    }
+    
+    /**
+     * Returns the result as an image buffer.
+     * 
+     * @return the result as an image buffer
+     */
+    public BufferedImage image() {
+        return canvas.image();
+    }
+    
+    /**
+     * Draws the given {@link Map} with the given {@link Painter}, tile by
+     * tile, and returns when all the tiles are drawn.
+     * 
+     * @param painter
+     *            the painter to use, which must be able to draw from several
+     *            threads at the same time (as the painters of
+     *            {@link Painter} are)
+     * @param map
+     *            the map to draw
+     * @param margin
+     *            the distance (in the coordinate system of the map) up to
+     *            which an element outside a tile can still be seen on it,
+     *            because of the width of its stroke
+     */
+    public void drawMap(Painter painter, Map map, double margin) {
+        int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        
+        IntStream.range(0, columns * rows).parallel().forEach(i -> {
+            int x = (i % columns) * TILE_SIZE;
+            int y = (i / columns) * TILE_SIZE;
+            Java2DCanvas tile = new Java2DCanvas(
+                canvas,
+                x,
+                y,
+                Math.min(TILE_SIZE, width - x),
+                Math.min(TILE_SIZE, height - y));
+            
+            painter.within(tile.viewport().grownBy(margin)).drawMap(map, tile);
+        });
+    }
+}
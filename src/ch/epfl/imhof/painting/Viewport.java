@@ -0,0 +1,196 @@
+package ch.epfl.imhof.painting;
+
+import java.util.Collections;
+import java.util.List;
+
+import ch.epfl.imhof.geometry.Envelope;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * The part of the plane drawn by a canvas, and the coordinate change from the
+ * plane to the image, in points (1/72 inch) from its top left corner.
+ * <p>
+ * It gives the visible parts of the polylines and polygons to draw: those
+ * whose {@link Envelope} does not intersect the viewport (grown by the extent
+ * of the stroke, for polylines) are not visible at all, and those that go out
+ * of it are clipped to it. They are also simplified with the tolerance given
+ * when the viewport is constructed (unless it is <code>0</code>), so that
+ * canvases do not work on details too small to be seen.
+ * 
+ * @author Matteo Besançon (245826)
+ */
+final class Viewport {
+    static final float     MITER_LIMIT = 10.0f;
+    
+    private final double   ax;
+    private final double   bx;
+    private final double   ay;
+    private final double   by;
+    private final Envelope envelope;
+    private final double   pointSize;
+    private final double   tolerance;
+    
+    /**
+     * Constructs a new viewport mapping the given points to the corners of an
+     * image of the given size.
+     * 
+     * @param bl
+     *            the point at the bottom left of the image
+     * @param tr
+     *            the point at the top right of the image
+     * @param width
+     *            the width of the image, in points
+     * @param height
+     *            the height of the image, in points
+     * @param tolerance
+     *            the simplification tolerance, in points, or <code>0</code>
+     *            for no simplification
+     */
+    Viewport(Point bl, Point tr, double width, double height,
+            double tolerance) {
+        // Coefficients of the coordinate change given by
+        // Point#alignedCoordinateChange, kept so that points can be changed
+        // without creating any object.
+        ax = (0 - width) / (bl.x() - tr.x());
+        bx = 0 - ax * bl.x();
+        ay = (height - 0) / (bl.y() - tr.y());
+        by = height - ay * bl.y();
+        
+        envelope = Envelope.of(bl, tr);
+        pointSize = 1 / Math.min(Math.abs(ax), Math.abs(ay));
+        this.tolerance = tolerance * pointSize;
+    }
+    
+    private Viewport(Viewport viewport, Envelope envelope) {
+        ax = viewport.ax;
+        bx = viewport.bx;
+        ay = viewport.ay;
+        by = viewport.by;
+        pointSize = viewport.pointSize;
+        tolerance = viewport.tolerance;
+        this.envelope = envelope;
+    }
+    
+    /**
+     * Returns a viewport with the same coordinate change, covering only the
+     * given rectangle of the image.
+     * 
+     * @param x
+     *            the x-coordinate of the rectangle, in points
+     * @param y
+     *            the y-coordinate of the rectangle, in points
+     * @param width
+     *            the width of the rectangle, in points
+     * @param height
+     *            the height of the rectangle, in points
+     * @return a viewport covering the given rectangle of the image
+     */
+    Viewport part(double x, double y, double width, double height) {
+        return new Viewport(this, Envelope.of(
+            new Point((x - bx) / ax, (y - by) / ay),
+            new Point((x + width - bx) / ax, (y + height - by) / ay)));
+    }
+    
+    /**
+     * Returns the part of the plane covered by the image.
+     * 
+     * @return the part of the plane covered by the image
+     */
+    Envelope envelope() {
+        return envelope;
+    }
+    
+    /**
+     * Returns the x-coordinate on the image of the given x-coordinate.
+     * 
+     * @param x
+     *            an x-coordinate in the plane
+     * @return the corresponding x-coordinate on the image, in points
+     */
+    double x(double x) {
+        return ax * x + bx;
+    }
+    
+    /**
+     * Returns the y-coordinate on the image of the given y-coordinate.
+     * 
+     * @param y
+     *            a y-coordinate in the plane
+     * @return the corresponding y-coordinate on the image, in points
+     */
+    double y(double y) {
+        return ay * y + by;
+    }
+    
+    /**
+     * Returns the visible parts of the given polyline drawn with the given
+     * style, simplified.
+     * 
+     * @param polyLine
+     *            the polyline to draw
+     * @param style
+     *            the style to draw it with
+     * @return the visible parts of <code>polyLine</code>, possibly none
+     */
+    List<PolyLine> visibleParts(PolyLine polyLine, LineStyle style) {
+        Envelope window = window(strokeExtent(style));
+        
+        if (!window.intersects(polyLine.envelope())) {
+            return Collections.emptyList();
+        }
+        
+        PolyLine simplified = tolerance == 0
+                ? polyLine
+                : polyLine.simplified(tolerance);
+        
+        // Clipping a dashed line would restart its dashing pattern where it
+        // enters the window.
+        if (style.dashingPattern().length != 0) {
+            return Collections.singletonList(simplified);
+        }
+        
+        return simplified.clippedTo(window);
+    }
+    
+    /**
+     * Returns the visible part of the given polygon, simplified.
+     * 
+     * @param polygon
+     *            the polygon to draw
+     * @return the visible part of <code>polygon</code>, or <code>null</code>
+     *         if it is not visible
+     */
+    Polygon visiblePart(Polygon polygon) {
+        Envelope window = window(0);
+        
+        if (!window.intersects(polygon.envelope())) {
+            return null;
+        }
+        
+        if (tolerance != 0) {
+            polygon = polygon.simplified(tolerance);
+        }
+        
+        return polygon.clippedTo(window);
+    }
+    
+    // Returns the part of the plane in which what is drawn can be seen on
+    // the image, given the margin (in points) needed around what is drawn.
+    // One more point is added for the antialiasing.
+    private Envelope window(double margin) {
+        return envelope.grownBy((margin + 1) * pointSize);
+    }
+    
+    // Largest distance between a polyline and the border of the stroke drawn
+    // with the given style: half the width, or more at square caps (width
+    // times sqrt(2) / 2) and miter joins (width times the miter limit / 2).
+    private static double strokeExtent(LineStyle style) {
+        if (style.join() == LineStyle.LineJoin.MITER) {
+            return MITER_LIMIT / 2 * style.width();
+        }
+        
+        return style.width();
+    }
+}
@@ -24,33 +24,10 @@ public final class CH1903Projection implements Projection {
      */
     @Override
     public Point project(PointGeo point) {
-        double lambda1, phi1, x, y;
-        double lambda = Math.toDegrees(point.longitude());
-        double phi = Math.toDegrees(point.latitude());
+        double lambda1 = lambda1(point.longitude());
+        double phi1 = phi1(point.latitude());
         
-        // Implementation of the algorithm described here:
-        // http://cs108.epfl.ch/p01_points.html#unnumbered-3
-        // The longitude lambda and the latitude phi are in degrees
-        // @formatter:off
-        lambda1 = 1 / 10000.0 * (lambda * 3600.0 - 26782.5);
-
-           phi1 = 1 / 10000.0 * (phi * 3600.0 - 169028.66);
-
-               x =   600072.37
-                   + 211455.93 * lambda1
-                   - 10938.51 * lambda1 * phi1
-                   - 0.36 * lambda1 * Math.pow(phi1, 2.0)
-                   - 44.54 * Math.pow(lambda1, 3.0);
-
-               y =   200147.07
-                   + 308807.95 * phi1
-                   + 3745.25 * Math.pow(lambda1, 2.0)
-                   + 76.63 * Math.pow(phi1, 2.0)
-                   - 194.56 * Math.pow(lambda1, 2.0) * phi1
-                   + 119.79 * Math.pow(phi1, 3.0);
-        // @formatter:on
-        
-        return new Point(x, y);
+        return new Point(x(lambda1, phi1), y(lambda1, phi1));
     }
     
     /**
@@ -63,33 +40,97 @@ public final class CH1903Projection implements Projection {
      */
     @Override
     public PointGeo inverse(Point point) {
-        double lambda0, phi0, x1, y1, lambda, phi;
+        double x1 = x1(point.x());
+        double y1 = y1(point.y());
         
-        // Discussion about Math.pow caching
-        // https://piazza.com/class/i39wbwd15v83mt?cid=275
-        // @formatter:off
-             x1 = (point.x() - 600000.0) / 1000000.0;
-
-             y1 = (point.y() - 200000.0) / 1000000.0;
-
-        lambda0 =   2.6779094
-                   + 4.728982 * x1
-                   + 0.791484 * x1 * y1
-                   + 0.1306 * x1 * Math.pow(y1, 2.0)
-                   - 0.0436 * Math.pow(x1, 3.0);
-
-           phi0 =   16.9023892
-                   + 3.238272 * y1
-                   - 0.270978 * Math.pow(x1, 2.0)
-                   - 0.002528 * Math.pow(y1, 2.0)
-                   - 0.0447 * Math.pow(x1, 2.0) * y1
-                   - 0.0140 * Math.pow(y1, 3.0);
-
-          lambda = lambda0 * (100.0 / 36.0);
-
-             phi = phi0 * (100.0 / 36.0);
-        // @formatter:on
+        return new PointGeo(longitude(x1, y1), latitude(x1, y1));
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The result is the same as the one of {@link #project(PointGeo)} for
+     * each point.
+     */
+    @Override
+    public void project(double[] coordinates, int offset, int count) {
+        for (int i = offset; i != offset + 2 * count; i += 2) {
+            double lambda1 = lambda1(coordinates[i]);
+            double phi1 = phi1(coordinates[i + 1]);
+            
+            coordinates[i] = x(lambda1, phi1);
+            coordinates[i + 1] = y(lambda1, phi1);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The result is the same as the one of {@link #inverse(Point)} for each
+     * point.
+     */
+    @Override
+    public void inverse(double[] coordinates, int offset, int count) {
+        for (int i = offset; i != offset + 2 * count; i += 2) {
+            double x1 = x1(coordinates[i]);
+            double y1 = y1(coordinates[i + 1]);
+            
+            coordinates[i] = longitude(x1, y1);
+            coordinates[i + 1] = latitude(x1, y1);
+        }
+    }
+    
+    // Implementation of the algorithm described here:
+    // http://cs108.epfl.ch/p01_points.html#unnumbered-3
+    // The polynomials are written in Horner form, which needs fewer
+    // multiplications than the powers of the original formulas.
+    
+    // The longitude lambda and the latitude phi are in degrees
+    private static double lambda1(double longitude) {
+        return 1 / 10000.0 * (Math.toDegrees(longitude) * 3600.0 - 26782.5);
+    }
+    
+    private static double phi1(double latitude) {
+        return 1 / 10000.0 * (Math.toDegrees(latitude) * 3600.0 - 169028.66);
+    }
+    
+    // @formatter:off
+    private static double x(double lambda1, double phi1) {
+        return 600072.37 + lambda1 * (211455.93
+                                      - phi1 * (10938.51 + 0.36 * phi1)
+                                      - 44.54 * lambda1 * lambda1);
+    }
+    
+    private static double y(double lambda1, double phi1) {
+        return 200147.07 + phi1 * (308807.95
+                                   + phi1 * (76.63 + 119.79 * phi1))
+                         + lambda1 * lambda1 * (3745.25 - 194.56 * phi1);
+    }
+    // @formatter:on
+    
+    private static double x1(double x) {
+        return (x - 600000.0) / 1000000.0;
+    }
+    
+    private static double y1(double y) {
+        return (y - 200000.0) / 1000000.0;
+    }
+    
+    // @formatter:off
+    private static double longitude(double x1, double y1) {
+        double lambda0 = 2.6779094 + x1 * (4.728982
+                                           + y1 * (0.791484 + 0.1306 * y1)
+                                           - 0.0436 * x1 * x1);
+        
+        return Math.toRadians(lambda0 * (100.0 / 36.0));
+    }
+    
+    private static double latitude(double x1, double y1) {
+        double phi0 = 16.9023892 + y1 * (3.238272
+                                          - y1 * (0.002528 + 0.0140 * y1))
+                                 - x1 * x1 * (0.270978 + 0.0447 * y1);
         
-        return new PointGeo(Math.toRadians(lambda), Math.toRadians(phi));
+        return Math.toRadians(phi0 * (100.0 / 36.0));
     }
+    // @formatter:on
 }
@@ -38,4 +38,20 @@ public final class EquirectangularProjection implements Projection {
     public PointGeo inverse(Point point) {
         return new PointGeo(point.x(), point.y());
     }
+    
+    /**
+     * Does nothing, as the cartesian coordinates of a point are its spherical
+     * coordinates.
+     */
+    @Override
+    public void project(double[] coordinates, int offset, int count) {
+    }
+    
+    /**
+     * Does nothing, as the spherical coordinates of a point are its cartesian
+     * coordinates.
+     */
+    @Override
+    public void inverse(double[] coordinates, int offset, int count) {
+    }
 }
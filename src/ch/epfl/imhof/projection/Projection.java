@@ -29,4 +29,58 @@ public interface Projection {
      * @return a point in spherical coordinates
      */
     public PointGeo inverse(Point point);
+    
+    /**
+     * Transforms points in spherical coordinates to points in cartesian
+     * coordinates, in place.
+     * <p>
+     * The points are stored in an array as consecutive pairs: the longitude
+     * and the latitude (in radians) of a point are replaced by its
+     * x-coordinate and its y-coordinate. The default implementation calls
+     * {@link #project(PointGeo)} for each point, implementations should
+     * override it with a loop that does not create any object.
+     * 
+     * @param coordinates
+     *            the coordinates of the points
+     * @param offset
+     *            the index of the longitude of the first point to transform
+     * @param count
+     *            the number of points to transform
+     */
+    public default void project(double[] coordinates, int offset, int count) {
+        for (int i = offset; i != offset + 2 * count; i += 2) {
+            Point point = project(new PointGeo(
+                coordinates[i],
+                coordinates[i + 1]));
+            coordinates[i] = point.x();
+            coordinates[i + 1] = point.y();
+        }
+    }
+    
+    /**
+     * Transforms points in cartesian coordinates to points in spherical
+     * coordinates, in place.
+     * <p>
+     * The points are stored in an array as consecutive pairs: the
+     * x-coordinate and the y-coordinate of a point are replaced by its
+     * longitude and its latitude (in radians). The default implementation
+     * calls {@link #inverse(Point)} for each point, implementations should
+     * override it with a loop that does not create any object.
+     * 
+     * @param coordinates
+     *            the coordinates of the points
+     * @param offset
+     *            the index of the x-coordinate of the first point to transform
+     * @param count
+     *            the number of points to transform
+     */
+    public default void inverse(double[] coordinates, int offset, int count) {
+        for (int i = offset; i != offset + 2 * count; i += 2) {
+            PointGeo point = inverse(new Point(
+                coordinates[i],
+                coordinates[i + 1]));
+            coordinates[i] = point.longitude();
+            coordinates[i + 1] = point.latitude();
+        }
+    }
 }
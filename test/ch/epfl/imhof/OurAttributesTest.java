@@ -102,5 +102,67 @@ public class OurAttributesTest {
         assertEquals(attrs.get("firstname", "Marilyn"), "Marilyn");
     }
     
+    @Test
+    public void valueIdIsIdOfValue() {
+        map.put("highway", "primary");
+        map.put("bridge", "yes");
+        map.put("name", "Route de Berne");
+        
+        Attributes attrs = new Attributes(map);
+        
+        assertEquals(AttributeIds.of("primary"), attrs.valueId(AttributeIds
+            .of("highway")));
+        assertEquals(AttributeIds.of("yes"), attrs.valueId(AttributeIds
+            .of("bridge")));
+        assertEquals(-1, attrs.valueId(AttributeIds.of("tunnel")));
+        assertTrue(attrs.contains(AttributeIds.of("name")));
+        assertFalse(attrs.contains(AttributeIds.of("tunnel")));
+    }
+    
+    @Test
+    public void layerIsParsedOnce() {
+        map.put("layer", "-2");
+        
+        assertEquals(-2, new Attributes(map).layer(0));
+        assertEquals(-2, new Attributes(map).get("layer", 0));
+        
+        map.put("layer", "bridge");
+        
+        assertEquals(3, new Attributes(map).layer(3));
+        assertEquals(3, new Attributes(map).get("layer", 3));
+        
+        map.remove("layer");
+        
+        assertEquals(4, new Attributes(map).layer(4));
+    }
+    
+    @Test
+    public void attributeIdsAreDistinctAndStable() {
+        int id = AttributeIds.of("natural");
+        
+        assertEquals(id, AttributeIds.of(new String("natural")));
+        assertEquals(id, AttributeIds.find("natural"));
+        assertFalse(id == AttributeIds.of("landuse"));
+        assertEquals(-1, AttributeIds.find("not used by any attribute"));
+    }
+    
+    @Test
+    public void onlyKeysAndAskedValuesHaveIds() {
+        map.put("name", "Chemin des Valeurs Libres");
+        map.put("surface", "gravier de test");
+        map.put("access", null);
+        
+        Attributes attrs = new Attributes(map);
+        
+        assertEquals(-1, AttributeIds.find("Chemin des Valeurs Libres"));
+        assertEquals(-1, attrs.valueId(AttributeIds.find("surface")));
+        assertEquals(AttributeIds.of("gravier de test"), attrs.valueId(AttributeIds
+            .find("surface")));
+        assertTrue(attrs.contains("access"));
+        assertEquals(null, attrs.get("access"));
+        assertFalse(attrs.contains(null));
+        assertEquals(7, attrs.get(null, 7));
+    }
+    
     // TODO keepOnlyKeys
 }
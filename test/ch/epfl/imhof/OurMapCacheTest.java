@@ -0,0 +1,222 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.testUtils.OurTestsUtils;
+
+public class OurMapCacheTest {
+    @Test
+    public void readGivesWrittenMap() throws IOException {
+        Attributes road = new Attributes.Builder()
+            .put("highway", "primary")
+            .put("name", "Rue du Lac é")
+            .build();
+        Attributes building = new Attributes.Builder()
+            .put("building", "yes")
+            .build();
+        Map.Builder builder = new Map.Builder();
+        
+        builder.addPolyLine(new Attributed<>(new OpenPolyLine(Arrays.asList(
+            new Point(0, 0),
+            new Point(1.5, -2))), road));
+        builder.addPolyLine(new Attributed<>(new ClosedPolyLine(Arrays.asList(
+            new Point(0, 0),
+            new Point(1, 0),
+            new Point(1, 1))), road));
+        builder.addPolygon(new Attributed<>(new Polygon(
+            square(0, 0, 10),
+            Arrays.asList(square(1, 1, 2), square(5, 5, 1))), building));
+        builder.addPolygon(new Attributed<>(
+            new Polygon(square(20, 20, 1)),
+            new Attributes.Builder().build()));
+        
+        checkWriteThenRead(builder.build());
+    }
+    
+    @Test
+    public void readGivesWrittenMapOnSmallFiles() throws IOException,
+            SAXException {
+        checkWriteThenRead(OurTestsUtils
+            .readOSMFileToMap("test/data/simpleOpenWay.osm"));
+        checkWriteThenRead(OurTestsUtils
+            .readOSMFileToMap("test/data/simpleRelation.osm"));
+        checkWriteThenRead(OurTestsUtils
+            .readOSMFileToMap("test/data/oneOuterAndTwoInnerRings.osm"));
+    }
+    
+    @Test
+    public void cacheIsUpToDateUntilSourceChanges() throws IOException {
+        File source = File.createTempFile("source", ".osm");
+        File cache = File.createTempFile("source", ".osm.map");
+        
+        try {
+            MapCache.write(new Map.Builder().build(), cache, source);
+            assertTrue(MapCache.isUpToDate(cache, source));
+            
+            try (FileOutputStream out = new FileOutputStream(source)) {
+                out.write(new byte[] { '<', 'o', 's', 'm', '/', '>' });
+            }
+            
+            assertFalse(MapCache.isUpToDate(cache, source));
+        }
+        finally {
+            source.delete();
+            cache.delete();
+        }
+    }
+    
+    @Test
+    public void cacheIsNotUpToDateIfMissingOrInvalid() throws IOException {
+        File source = File.createTempFile("source", ".osm");
+        File cache = File.createTempFile("source", ".osm.map");
+        
+        try {
+            assertFalse(MapCache.isUpToDate(cache, source));
+            
+            cache.delete();
+            assertFalse(MapCache.isUpToDate(cache, source));
+        }
+        finally {
+            source.delete();
+            cache.delete();
+        }
+    }
+    
+    @Test
+    public void failedWriteLeavesNoTemporaryFile() throws IOException {
+        File source = File.createTempFile("source", ".osm");
+        // A directory that is not empty cannot be replaced by the cache file.
+        File cache = File.createTempFile("source", ".osm.map");
+        File inCache = new File(cache, "file");
+        File temporary = new File(cache.getPath() + ".tmp");
+        
+        cache.delete();
+        cache.mkdir();
+        inCache.createNewFile();
+        
+        try {
+            MapCache.write(new Map.Builder().build(), cache, source);
+            fail("the cache file cannot be written");
+        }
+        catch (IOException e) {
+            assertFalse(temporary.exists());
+        }
+        finally {
+            source.delete();
+            inCache.delete();
+            cache.delete();
+            temporary.delete();
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void readingInvalidFileThrowsException() throws IOException {
+        File cache = File.createTempFile("source", ".osm.map");
+        
+        try (FileOutputStream out = new FileOutputStream(cache)) {
+            out.write(new byte[100]);
+        }
+        
+        try {
+            MapCache.read(cache);
+        }
+        finally {
+            cache.delete();
+        }
+    }
+    
+    private static ClosedPolyLine square(double x, double y, double size) {
+        return new ClosedPolyLine(Arrays.asList(
+            new Point(x, y),
+            new Point(x + size, y),
+            new Point(x + size, y + size),
+            new Point(x, y + size)));
+    }
+    
+    private static void checkWriteThenRead(Map expected) throws IOException {
+        File source = File.createTempFile("source", ".osm");
+        File cache = File.createTempFile("source", ".osm.map");
+        
+        try {
+            MapCache.write(expected, cache, source);
+            Map actual = MapCache.read(cache);
+            
+            assertEquals(
+                expected.polyLines().size(),
+                actual.polyLines().size());
+            assertEquals(expected.polygons().size(), actual.polygons().size());
+            
+            for (int i = 0; i < expected.polyLines().size(); ++i) {
+                Attributed<PolyLine> e = expected.polyLines().get(i);
+                Attributed<PolyLine> a = actual.polyLines().get(i);
+                
+                assertEquals(e.value().isClosed(), a.value().isClosed());
+                checkSamePoints(e.value(), a.value());
+                checkSameAttributes(e.attributes(), a.attributes());
+            }
+            
+            for (int i = 0; i < expected.polygons().size(); ++i) {
+                Polygon e = expected.polygons().get(i).value();
+                Polygon a = actual.polygons().get(i).value();
+                List<ClosedPolyLine> eHoles = e.holes();
+                List<ClosedPolyLine> aHoles = a.holes();
+                
+                checkSamePoints(e.shell(), a.shell());
+                assertEquals(eHoles.size(), aHoles.size());
+                
+                for (int j = 0; j < eHoles.size(); ++j) {
+                    checkSamePoints(eHoles.get(j), aHoles.get(j));
+                }
+                
+                checkSameAttributes(
+                    expected.polygons().get(i).attributes(),
+                    actual.polygons().get(i).attributes());
+            }
+        }
+        finally {
+            source.delete();
+            cache.delete();
+        }
+    }
+    
+    private static void checkSamePoints(PolyLine expected, PolyLine actual) {
+        assertEquals(expected.points().size(), actual.points().size());
+        
+        for (int i = 0; i < expected.points().size(); ++i) {
+            assertEquals(expected.points().get(i).x(), actual
+                .points()
+                .get(i)
+                .x(), 0);
+            assertEquals(expected.points().get(i).y(), actual
+                .points()
+                .get(i)
+                .y(), 0);
+        }
+    }
+    
+    private static void checkSameAttributes(Attributes expected,
+            Attributes actual) {
+        assertEquals(expected.keys(), actual.keys());
+        
+        for (String key : expected.keys()) {
+            assertEquals(expected.get(key), actual.get(key));
+        }
+    }
+}
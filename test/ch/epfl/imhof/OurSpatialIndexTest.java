@@ -0,0 +1,107 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.Envelope;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+public class OurSpatialIndexTest {
+    @Test
+    public void queryGivesSameResultAsScan() {
+        Random random = new Random(1);
+        
+        for (int count : new int[] { 0, 1, 2, 15, 16, 17, 300, 5000 }) {
+            List<Envelope> envelopes = randomEnvelopes(random, count);
+            SpatialIndex index = new SpatialIndex(envelopes);
+            
+            for (int i = 0; i < 50; ++i) {
+                Envelope query = randomEnvelopes(random, 1).get(0).grownBy(
+                    50 * random.nextDouble());
+                
+                assertArrayEquals(scan(envelopes, query), index.query(query));
+            }
+        }
+    }
+    
+    @Test
+    public void queryWorksWithIdenticalEnvelopes() {
+        List<Envelope> envelopes = new ArrayList<>();
+        
+        for (int i = 0; i < 100; ++i) {
+            envelopes.add(new Envelope(1, 1, 2, 2));
+        }
+        
+        SpatialIndex index = new SpatialIndex(envelopes);
+        
+        assertEquals(100, index.query(new Envelope(2, 2, 3, 3)).length);
+        assertEquals(0, index.query(new Envelope(3, 3, 4, 4)).length);
+    }
+    
+    @Test
+    public void mapQueryKeepsIntersectingEntitiesInOrder() {
+        Attributes attributes = new Attributes.Builder().build();
+        Map.Builder builder = new Map.Builder();
+        
+        for (int i = 0; i < 100; ++i) {
+            PolyLine line = new OpenPolyLine(new double[] { i, 0, i + 0.5, 1 });
+            ClosedPolyLine shell = new ClosedPolyLine(new double[] {
+                    0, i, 1, i, 1, i + 0.5 });
+            
+            builder.addPolyLine(new Attributed<>(line, attributes));
+            builder.addPolygon(new Attributed<>(
+                new Polygon(shell),
+                attributes));
+        }
+        
+        Map map = builder.build();
+        Map queried = map.query(new Envelope(10.2, 10.2, 20.2, 20.2));
+        
+        assertEquals(0, queried.polyLines().size());
+        assertEquals(0, queried.polygons().size());
+        
+        queried = map.query(new Envelope(-5, -5, 10.2, 20.2));
+        
+        assertEquals(11, queried.polyLines().size());
+        assertEquals(21, queried.polygons().size());
+        
+        for (int i = 0; i < 11; ++i) {
+            assertEquals(map.polyLines().get(i), queried.polyLines().get(i));
+        }
+        
+        for (int i = 0; i < 21; ++i) {
+            assertEquals(map.polygons().get(i), queried.polygons().get(i));
+        }
+    }
+    
+    private static List<Envelope> randomEnvelopes(Random random, int count) {
+        Envelope[] envelopes = new Envelope[count];
+        
+        for (int i = 0; i < count; ++i) {
+            double x = 1000 * random.nextDouble();
+            double y = 500 * random.nextDouble();
+            
+            envelopes[i] = new Envelope(x, y, x + 20 * random.nextDouble(), y
+                    + 20 * random.nextDouble());
+        }
+        
+        return Arrays.asList(envelopes);
+    }
+    
+    private static int[] scan(List<Envelope> envelopes, Envelope query) {
+        return java.util.stream.IntStream
+            .range(0, envelopes.size())
+            .filter(i -> envelopes.get(i).intersects(query))
+            .toArray();
+    }
+}
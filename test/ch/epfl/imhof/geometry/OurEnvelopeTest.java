@@ -0,0 +1,77 @@
+package ch.epfl.imhof.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class OurEnvelopeTest {
+    @Test
+    public void ofWorksWithAnyCorners() {
+        Envelope envelope = Envelope.of(new Point(3, -1), new Point(-2, 4));
+        
+        assertEquals(-2, envelope.minX(), 0);
+        assertEquals(-1, envelope.minY(), 0);
+        assertEquals(3, envelope.maxX(), 0);
+        assertEquals(4, envelope.maxY(), 0);
+    }
+    
+    @Test
+    public void intersectsWorks() {
+        Envelope envelope = new Envelope(0, 0, 10, 10);
+        
+        assertTrue(envelope.intersects(new Envelope(5, 5, 15, 15)));
+        assertTrue(envelope.intersects(new Envelope(2, 2, 3, 3)));
+        assertTrue(envelope.intersects(new Envelope(-5, -5, 15, 15)));
+        assertTrue(envelope.intersects(new Envelope(10, 10, 11, 11)));
+        assertFalse(envelope.intersects(new Envelope(11, 0, 12, 10)));
+        assertFalse(envelope.intersects(new Envelope(0, -3, 10, -1)));
+    }
+    
+    @Test
+    public void grownByWorks() {
+        Envelope envelope = new Envelope(0, 0, 10, 10).grownBy(2);
+        
+        assertEquals(-2, envelope.minX(), 0);
+        assertEquals(-2, envelope.minY(), 0);
+        assertEquals(12, envelope.maxX(), 0);
+        assertEquals(12, envelope.maxY(), 0);
+        assertTrue(envelope.intersects(new Envelope(11, 11, 13, 13)));
+    }
+    
+    @Test
+    public void polyLineEnvelopeContainsAllPoints() {
+        PolyLine polyLine = new OpenPolyLine(Arrays.asList(
+            new Point(1, 5),
+            new Point(-3, 2),
+            new Point(4, -7)));
+        Envelope envelope = polyLine.envelope();
+        
+        assertEquals(-3, envelope.minX(), 0);
+        assertEquals(-7, envelope.minY(), 0);
+        assertEquals(4, envelope.maxX(), 0);
+        assertEquals(5, envelope.maxY(), 0);
+    }
+    
+    @Test
+    public void polygonEnvelopeIsShellEnvelope() {
+        ClosedPolyLine shell = new ClosedPolyLine(new double[] {
+                0, 0, 4, 0, 4, 4 });
+        Polygon polygon = new Polygon(shell);
+        
+        assertEquals(shell.envelope(), polygon.envelope());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBoundsThrowException() {
+        new Envelope(1, 0, 0, 1);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMarginThrowsException() {
+        new Envelope(0, 0, 1, 1).grownBy(-1);
+    }
+}
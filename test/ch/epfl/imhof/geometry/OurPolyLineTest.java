@@ -0,0 +1,255 @@
+package ch.epfl.imhof.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OurPolyLineTest {
+    @Test
+    public void coordinatesAreThoseOfPoints() {
+        PolyLine polyLine = new OpenPolyLine(Arrays.asList(
+            new Point(1, 2),
+            new Point(3, 4),
+            new Point(5, 6)));
+        
+        assertEquals(3, polyLine.size());
+        assertEquals(3, polyLine.points().size());
+        
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(2 * i + 1, polyLine.x(i), 0);
+            assertEquals(2 * i + 2, polyLine.y(i), 0);
+            assertEquals(2 * i + 1, polyLine.points().get(i).x(), 0);
+            assertEquals(2 * i + 2, polyLine.points().get(i).y(), 0);
+        }
+        
+        assertEquals(1, polyLine.firstPoint().x(), 0);
+        assertEquals(2, polyLine.firstPoint().y(), 0);
+    }
+    
+    @Test
+    public void coordinatesAreCopied() {
+        double[] coordinates = { 0, 0, 1, 0, 1, 1 };
+        ClosedPolyLine polyLine = new ClosedPolyLine(coordinates);
+        
+        coordinates[0] = 10;
+        
+        assertEquals(0, polyLine.x(0), 0);
+        assertEquals(0.5, polyLine.area(), 0);
+    }
+    
+    @Test
+    public void builderGivesAddedPoints() {
+        PolyLine.Builder builder = new PolyLine.Builder();
+        
+        for (int i = 0; i < 100; ++i) {
+            builder.addPoint(i, -i);
+        }
+        
+        builder.addPoint(new Point(0.5, 0.25));
+        
+        ClosedPolyLine closed = builder.buildClosed();
+        OpenPolyLine open = builder.buildOpen();
+        
+        assertEquals(101, closed.size());
+        assertEquals(101, open.size());
+        assertEquals(42, closed.x(42), 0);
+        assertEquals(-42, open.y(42), 0);
+        assertEquals(0.5, closed.x(100), 0);
+        assertEquals(0.25, open.y(100), 0);
+    }
+    
+    @Test
+    public void containsPointWorksWithPackedCoordinates() {
+        ClosedPolyLine square = new ClosedPolyLine(new double[] {
+                0, 0, 2, 0, 2, 2, 0, 2 });
+        
+        assertTrue(square.containsPoint(new Point(1, 1)));
+        assertFalse(square.containsPoint(new Point(3, 1)));
+        assertEquals(4, square.area(), 0);
+    }
+    
+    @Test
+    public void clippedToGivesSameLineWhenInside() {
+        PolyLine polyLine = new OpenPolyLine(new double[] { 1, 1, 2, 3 });
+        List<PolyLine> parts = polyLine.clippedTo(new Envelope(0, 0, 5, 5));
+        
+        assertEquals(1, parts.size());
+        assertSame(polyLine, parts.get(0));
+        assertTrue(new OpenPolyLine(new double[] { 6, 6, 7, 8 }).clippedTo(
+            new Envelope(0, 0, 5, 5)).isEmpty());
+    }
+    
+    @Test
+    public void clippedToDropsSegmentsOutside() {
+        // Goes in, out and back in.
+        PolyLine polyLine = new OpenPolyLine(new double[] {
+                -5, 2, 2, 2, 2, 10, 4, 10, 4, 4 });
+        List<PolyLine> parts = polyLine.clippedTo(new Envelope(0, 0, 5, 5));
+        
+        assertEquals(2, parts.size());
+        checkCoordinates(parts.get(0), -5, 2, 2, 2, 2, 10);
+        checkCoordinates(parts.get(1), 4, 10, 4, 4);
+        assertFalse(parts.get(0).isClosed());
+    }
+    
+    @Test
+    public void clippedToDoesNotCutClosedLineAtFirstPoint() {
+        PolyLine polyLine = new ClosedPolyLine(new double[] {
+                1, 1, 10, 1, 10, 4, 1, 4 });
+        List<PolyLine> parts = polyLine.clippedTo(new Envelope(0, 0, 5, 5));
+        
+        assertEquals(1, parts.size());
+        checkCoordinates(parts.get(0), 10, 4, 1, 4, 1, 1, 10, 1);
+    }
+    
+    @Test
+    public void clippedToKeepsClosedLineWhoseSegmentsAllIntersect() {
+        // Sticks out of the window at each corner.
+        PolyLine polyLine = new ClosedPolyLine(new double[] {
+                -1, 2, 2, -1, 6, 2, 2, 6 });
+        List<PolyLine> parts = polyLine.clippedTo(new Envelope(0, 0, 5, 5));
+        
+        assertEquals(1, parts.size());
+        assertSame(polyLine, parts.get(0));
+        assertTrue(parts.get(0).isClosed());
+    }
+    
+    @Test
+    public void clippedToDropsSegmentsWhoseEnvelopeOnlyIntersects() {
+        // The second segment passes by a corner of the window.
+        PolyLine polyLine = new OpenPolyLine(new double[] {
+                -5, -5, 10, 10, 10, 2, 2, 12 });
+        List<PolyLine> parts = polyLine.clippedTo(new Envelope(0, 0, 5, 5));
+        
+        assertEquals(1, parts.size());
+        checkCoordinates(parts.get(0), -5, -5, 10, 10);
+    }
+    
+    @Test
+    public void simplifiedRemovesOnlyCloseEnoughPoints() {
+        OpenPolyLine polyLine = new OpenPolyLine(new double[] {
+                0, 0, 1, 0.1, 2, 0, 3, 1, 4, 0 });
+        
+        assertSame(polyLine, polyLine.simplified(0.05));
+        checkCoordinates(polyLine.simplified(0.2), 0, 0, 2, 0, 3, 1, 4, 0);
+        checkCoordinates(polyLine.simplified(2), 0, 0, 4, 0);
+    }
+    
+    @Test
+    public void simplifiedKeepsFirstAndFarthestPointsOfClosedLine() {
+        ClosedPolyLine polyLine = new ClosedPolyLine(new double[] {
+                0, 0, 1, 0.01, 2, 0, 2, 1, 1, 1.01, 0, 1 });
+        
+        checkCoordinates(polyLine.simplified(0.1), 0, 0, 2, 0, 2, 1, 0, 1);
+        checkCoordinates(polyLine.simplified(10), 0, 0, 2, 1);
+        assertTrue(polyLine.simplified(0.1).isClosed());
+    }
+    
+    @Test
+    public void simplifiedGivesSamePointsAsDouglasPeucker() {
+        Random random = new Random(2);
+        
+        for (int n : new int[] { 1, 2, 3, 10, 1000 }) {
+            PolyLine.Builder builder = new PolyLine.Builder();
+            double x = 0, y = 0;
+            
+            for (int i = 0; i < n; ++i) {
+                x += random.nextDouble();
+                y += random.nextDouble() - 0.5;
+                builder.addPoint(x, y);
+            }
+            
+            OpenPolyLine polyLine = builder.buildOpen();
+            
+            for (double tolerance : new double[] { 0.01, 0.1, 0.5, 3 }) {
+                List<Integer> kept = new ArrayList<>();
+                
+                kept.add(0);
+                douglasPeucker(polyLine, 0, n - 1, tolerance, kept);
+                
+                PolyLine simplified = polyLine.simplified(tolerance);
+                
+                assertEquals(n == 1 ? 1 : kept.size(), simplified.size());
+                
+                for (int i = 0; i < simplified.size(); ++i) {
+                    assertEquals(polyLine.x(kept.get(i)), simplified.x(i), 0);
+                    assertEquals(polyLine.y(kept.get(i)), simplified.y(i), 0);
+                }
+            }
+        }
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void pointsCannotBeModified() {
+        new OpenPolyLine(new double[] { 0, 0 }).points().add(new Point(1, 1));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void oddNumberOfCoordinatesThrowsException() {
+        new OpenPolyLine(new double[] { 0, 0, 1 });
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void noCoordinatesThrowsException() {
+        new ClosedPolyLine(new double[0]);
+    }
+    
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void invalidIndexThrowsException() {
+        new OpenPolyLine(new double[] { 0, 0 }).y(1);
+    }
+    
+    // Adds the points kept between first (excluded) and last (included).
+    private static void douglasPeucker(PolyLine polyLine, int first, int last,
+            double tolerance, List<Integer> kept) {
+        int farthest = -1;
+        double farthestDistance = tolerance;
+        
+        for (int i = first + 1; i < last; ++i) {
+            double distance = distance(polyLine, i, first, last);
+            
+            if (distance > farthestDistance) {
+                farthest = i;
+                farthestDistance = distance;
+            }
+        }
+        
+        if (farthest != -1) {
+            douglasPeucker(polyLine, first, farthest, tolerance, kept);
+            douglasPeucker(polyLine, farthest, last, tolerance, kept);
+        }
+        else if (last > first) {
+            kept.add(last);
+        }
+    }
+    
+    private static double distance(PolyLine polyLine, int i, int a, int b) {
+        double dx = polyLine.x(b) - polyLine.x(a);
+        double dy = polyLine.y(b) - polyLine.y(a);
+        double px = polyLine.x(i) - polyLine.x(a);
+        double py = polyLine.y(i) - polyLine.y(a);
+        double t = (px * dx + py * dy) / (dx * dx + dy * dy);
+        
+        t = Math.max(0, Math.min(1, t));
+        
+        return Math.hypot(px - t * dx, py - t * dy);
+    }
+    
+    private static void checkCoordinates(PolyLine polyLine,
+            double... coordinates) {
+        assertEquals(coordinates.length / 2, polyLine.size());
+        
+        for (int i = 0; i < polyLine.size(); ++i) {
+            assertEquals(coordinates[2 * i], polyLine.x(i), 1e-9);
+            assertEquals(coordinates[2 * i + 1], polyLine.y(i), 1e-9);
+        }
+    }
+}
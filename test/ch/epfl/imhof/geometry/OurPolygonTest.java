@@ -0,0 +1,56 @@
+package ch.epfl.imhof.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class OurPolygonTest {
+    private static final Envelope WINDOW = new Envelope(0, 0, 10, 10);
+    
+    @Test
+    public void clippedToGivesSamePolygonWhenInside() {
+        Polygon polygon = new Polygon(square(1, 1, 5));
+        
+        assertSame(polygon, polygon.clippedTo(WINDOW));
+    }
+    
+    @Test
+    public void clippedToGivesNullWhenOutside() {
+        assertNull(new Polygon(square(11, 1, 5)).clippedTo(WINDOW));
+    }
+    
+    @Test
+    public void clippedToKeepsOnlyInsideArea() {
+        Polygon polygon = new Polygon(square(-5, -5, 30), Arrays.asList(
+            square(8, 8, 4),
+            square(20, 20, 1),
+            square(2, 2, 1)));
+        Polygon clipped = polygon.clippedTo(WINDOW);
+        
+        assertEquals(100, clipped.shell().area(), 1e-9);
+        assertEquals(2, clipped.holes().size());
+        assertEquals(4, clipped.holes().get(0).area(), 1e-9);
+        assertEquals(1, clipped.holes().get(1).area(), 1e-9);
+    }
+    
+    @Test
+    public void clippedToWorksWithConcaveShell() {
+        // A U shape whose two arms go out of the window.
+        ClosedPolyLine shell = new ClosedPolyLine(new double[] {
+                2, 2, 8, 2, 8, 20, 6, 20, 6, 4, 4, 4, 4, 20, 2, 20 });
+        Polygon clipped = new Polygon(shell).clippedTo(WINDOW);
+        
+        assertEquals(6 * 2 + 2 * 2 * 6, clipped.shell().area(), 1e-9);
+        assertEquals(true, clipped.shell().containsPoint(new Point(3, 9)));
+        assertEquals(false, clipped.shell().containsPoint(new Point(5, 9)));
+    }
+    
+    private static ClosedPolyLine square(double x, double y, double size) {
+        return new ClosedPolyLine(new double[] {
+                x, y, x + size, y, x + size, y + size, x, y + size });
+    }
+}
@@ -1,13 +1,31 @@
 package ch.epfl.imhof.osm;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.Test;
 import org.xml.sax.SAXException;
 
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.projection.CH1903Projection;
 import ch.epfl.imhof.testUtils.OurTestsUtils;
 
 public class OurOSMMapReaderTest {
@@ -60,6 +78,28 @@ public class OurOSMMapReaderTest {
         checkNode(way10.nodes().get(3), 8, 46.2, 6.8);
     }
     
+    @Test
+    public void relationIsCorrectlyParsedWithMappedNodeStore()
+            throws IOException, SAXException {
+        File file = File.createTempFile("nodes", ".bin");
+        
+        try (OSMNodeStore nodeStore = new OSMNodeMappedStore(file)) {
+            OSMMap map = OSMMapReader.readOSMFile(
+                "test/data/simpleRelation.osm",
+                false,
+                nodeStore);
+            OSMRelation relation = map.relations().get(0);
+            OSMWay way10 = (OSMWay) relation.members().get(1).member();
+            
+            assertTrue(way10.isClosed());
+            checkNode(way10.nodes().get(0), 5, 46.8, 6.8);
+            checkNode(way10.nodes().get(2), 7, 46.2, 6.2);
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
     @Test
     public void lausanneIsCorrectlyParsed() throws IOException, SAXException {
         checkListsSizes("test/data/big/lausanne.osm", 139901, 3704);
@@ -90,6 +130,399 @@ public class OurOSMMapReaderTest {
         checkListsSizes("test/data/big/interlaken.osm.gz", 77946, 973);
     }
     
+    @Test
+    public void gzippedFilesAreDecompressedAheadOnlyIfAsked()
+            throws IOException {
+        File file = File.createTempFile("imhof", ".osm.gz");
+        
+        try {
+            new GZIPOutputStream(new FileOutputStream(file)).close();
+            
+            try (InputStream input = OSMMapReader.open(
+                file.getPath(),
+                true,
+                false)) {
+                assertTrue(input instanceof GZIPInputStream);
+            }
+            
+            try (InputStream input = OSMMapReader.open(
+                file.getPath(),
+                true,
+                true)) {
+                assertTrue(input instanceof ParallelGZIPInputStream);
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    @Test
+    public void streamingGivesSameMapOnSmallFiles() throws IOException,
+            SAXException {
+        checkStreamingGivesSameMap("test/data/simpleOpenWay.osm");
+        checkStreamingGivesSameMap("test/data/simpleRelation.osm");
+        checkStreamingGivesSameMap("test/data/oneOuterAndTwoInnerRings.osm");
+        checkStreamingGivesSameMap("test/data/twoDisjunctOuterRings.osm");
+        checkStreamingGivesSameMap("test/data/multipleWaysFormingARing.osm");
+    }
+    
+    @Test
+    public void streamingGivesSameMapOnLausanne() throws IOException,
+            SAXException {
+        checkStreamingGivesSameMap("test/data/big/lausanne.osm.gz");
+    }
+    
+    @Test
+    public void filteringDropsOtherKeysAndUntaggedWays() throws IOException,
+            SAXException {
+        OSMMap map = OSMMapReader.readOSMFile(
+            "test/data/simpleOpenWay.osm",
+            false,
+            Collections.singleton("name"));
+        
+        assertEquals(0, map.ways().size());
+    }
+    
+    @Test
+    public void filteringKeepsUntaggedMembersOfRelations() throws IOException,
+            SAXException {
+        OSMMap map = OSMMapReader.readOSMFile(
+            "test/data/simpleRelation.osm",
+            false,
+            Collections.singleton("type"));
+        OSMRelation relation = map.relations().get(0);
+        
+        assertEquals(2, map.ways().size());
+        assertEquals("multipolygon", relation.attributeValue("type"));
+        assertFalse(relation.hasAttribute("building"));
+    }
+    
+    @Test
+    public void filteringGivesSameMapOnSmallFiles() throws IOException,
+            SAXException {
+        checkFilteringGivesSameMap("test/data/simpleOpenWay.osm");
+        checkFilteringGivesSameMap("test/data/simpleRelation.osm");
+        checkFilteringGivesSameMap("test/data/oneOuterAndTwoInnerRings.osm");
+        checkFilteringGivesSameMap("test/data/twoDisjunctOuterRings.osm");
+        checkFilteringGivesSameMap("test/data/multipleWaysFormingARing.osm");
+    }
+    
+    @Test
+    public void filteringGivesSameMapOnLausanne() throws IOException,
+            SAXException {
+        checkFilteringGivesSameMap("test/data/big/lausanne.osm.gz");
+    }
+    
+    @Test
+    public void boundingBoxKeepsWaysCrossingIt() throws IOException,
+            SAXException {
+        // No node of the way is in the box, but the way crosses it.
+        OSMMap map = OSMMapReader.readOSMFile(
+            "test/data/simpleOpenWay.osm",
+            false,
+            pointGeo(6.4, 46.9),
+            pointGeo(6.6, 47.1),
+            0);
+        
+        assertEquals(1, map.ways().size());
+    }
+    
+    @Test
+    public void boundingBoxDropsWaysOutsideIt() throws IOException,
+            SAXException {
+        OSMMap map = OSMMapReader.readOSMFile(
+            "test/data/simpleOpenWay.osm",
+            false,
+            pointGeo(8, 46),
+            pointGeo(9, 47),
+            0);
+        
+        assertEquals(0, map.ways().size());
+    }
+    
+    @Test
+    public void boundingBoxKeepsAllMembersOfRelations() throws IOException,
+            SAXException {
+        OSMMap map = OSMMapReader.readOSMFile(
+            "test/data/simpleRelation.osm",
+            false,
+            pointGeo(6.05, 46.05),
+            pointGeo(6.15, 46.15),
+            0);
+        
+        assertEquals(1, map.ways().size());
+        assertEquals(1, map.relations().size());
+        assertEquals(2, map.relations().get(0).members().size());
+    }
+    
+    @Test
+    public void boundingBoxMarginIsTakenIntoAccount() throws IOException,
+            SAXException {
+        // The inner ring of the relation starts at (6.2, 46.2), about 600 m
+        // from the top right corner of the box.
+        OSMMap withoutMargin = OSMMapReader.readOSMFile(
+            "test/data/simpleRelation.osm",
+            false,
+            pointGeo(6.19, 46.19),
+            pointGeo(6.195, 46.195),
+            0);
+        OSMMap withMargin = OSMMapReader.readOSMFile(
+            "test/data/simpleRelation.osm",
+            false,
+            pointGeo(6.19, 46.19),
+            pointGeo(6.195, 46.195),
+            1000);
+        
+        assertEquals(1, withoutMargin.ways().size());
+        assertEquals(2, withMargin.ways().size());
+    }
+    
+    @Test
+    public void boundingBoxAroundWholeWorldGivesSameMapOnSmallFiles()
+            throws IOException, SAXException {
+        checkBoundingBoxGivesSameMap("test/data/simpleOpenWay.osm");
+        checkBoundingBoxGivesSameMap("test/data/simpleRelation.osm");
+        checkBoundingBoxGivesSameMap("test/data/oneOuterAndTwoInnerRings.osm");
+        checkBoundingBoxGivesSameMap("test/data/twoDisjunctOuterRings.osm");
+        checkBoundingBoxGivesSameMap("test/data/multipleWaysFormingARing.osm");
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void boundingBoxWithInvertedCornersThrowsException()
+            throws IOException, SAXException {
+        OSMMapReader.readOSMFile(
+            "test/data/simpleOpenWay.osm",
+            false,
+            pointGeo(7, 47),
+            pointGeo(6, 46),
+            0);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void boundingBoxWithNegativeMarginThrowsException()
+            throws IOException, SAXException {
+        OSMMapReader.readOSMFile(
+            "test/data/simpleOpenWay.osm",
+            false,
+            pointGeo(6, 46),
+            pointGeo(7, 47),
+            -1);
+    }
+    
+    private static PointGeo pointGeo(double longitude, double latitude) {
+        return new PointGeo(
+            Math.toRadians(longitude),
+            Math.toRadians(latitude));
+    }
+    
+    private static void checkFilteringGivesSameMap(final String fileName)
+            throws IOException, SAXException {
+        OSMToGeoTransformer transformer = new OSMToGeoTransformer(
+            new CH1903Projection());
+        Map expected = OurTestsUtils.readOSMFileToMap(fileName);
+        Map actual = transformer.transform(OSMMapReader.readOSMFile(
+            fileName,
+            fileName.endsWith(".gz"),
+            transformer.relevantKeys()));
+        
+        checkSameMap(fileName, expected, actual);
+    }
+    
+    private static void checkBoundingBoxGivesSameMap(final String fileName)
+            throws IOException, SAXException {
+        OSMToGeoTransformer transformer = new OSMToGeoTransformer(
+            new CH1903Projection());
+        Map expected = OurTestsUtils.readOSMFileToMap(fileName);
+        Map actual = transformer.transform(OSMMapReader.readOSMFile(
+            fileName,
+            false,
+            pointGeo(-180, -89),
+            pointGeo(180, 89),
+            0));
+        
+        checkSameMap(fileName, expected, actual);
+    }
+    
+    private static void checkStreamingGivesSameMap(final String fileName)
+            throws IOException, SAXException {
+        Map expected = OurTestsUtils.readOSMFileToMap(fileName);
+        Map actual = OurTestsUtils.readOSMFileToMapStreaming(fileName);
+        
+        checkSameMapInAnyOrder(fileName, expected, actual);
+    }
+    
+    // Package visibility so that other readers' tests can use it. The
+    // elements of both maps must be the same, in the same order.
+    static void checkSameMap(String fileName, Map expected, Map actual) {
+        checkSameElements(
+            "polylines of " + fileName,
+            polyLines(expected),
+            polyLines(actual),
+            false);
+        checkSameElements(
+            "polygons of " + fileName,
+            polygons(expected),
+            polygons(actual),
+            false);
+    }
+    
+    // For maps whose elements can be in another order, as the ones built by
+    // the streaming reader or by an OSMMapUpdater: they are compared as
+    // multisets.
+    static void checkSameMapInAnyOrder(String fileName, Map expected,
+            Map actual) {
+        checkSameElements(
+            "polylines of " + fileName,
+            polyLines(expected),
+            polyLines(actual),
+            true);
+        checkSameElements(
+            "polygons of " + fileName,
+            polygons(expected),
+            polygons(actual),
+            true);
+    }
+    
+    private static void checkSameElements(String message,
+            List<Element> expected, List<Element> actual, boolean anyOrder) {
+        assertEquals("number of " + message, expected.size(), actual.size());
+        
+        if (!anyOrder) {
+            for (int i = 0; i < expected.size(); ++i) {
+                expected.get(i).check(
+                    message + ", element " + i,
+                    actual.get(i));
+            }
+            
+            return;
+        }
+        
+        // Only elements with the same description can be the same.
+        HashMap<String, List<Element>> remaining = new HashMap<>();
+        
+        for (Element element : actual) {
+            remaining
+                .computeIfAbsent(element.description, k -> new ArrayList<>())
+                .add(element);
+        }
+        
+        // Each actual element can only match one expected element.
+        for (Element element : expected) {
+            Iterator<Element> candidates = remaining.getOrDefault(
+                element.description,
+                Collections.emptyList()).iterator();
+            
+            while (true) {
+                if (!candidates.hasNext()) {
+                    fail("no element like " + element.description + " in "
+                            + message);
+                }
+                
+                if (element.isSameAs(candidates.next())) {
+                    candidates.remove();
+                    break;
+                }
+            }
+        }
+    }
+    
+    private static List<Element> polyLines(Map map) {
+        List<Element> elements = new ArrayList<>();
+        
+        for (Attributed<PolyLine> polyLine : map.polyLines()) {
+            elements.add(new Element(
+                polyLine.attributes(),
+                polyLine.value().isClosed() ? "closed" : "open",
+                Collections.singletonList(polyLine.value())));
+        }
+        
+        return elements;
+    }
+    
+    private static List<Element> polygons(Map map) {
+        List<Element> elements = new ArrayList<>();
+        
+        for (Attributed<Polygon> polygon : map.polygons()) {
+            List<PolyLine> rings = new ArrayList<>();
+            
+            rings.add(polygon.value().shell());
+            rings.addAll(polygon.value().holes());
+            elements.add(new Element(polygon.attributes(), "polygon", rings));
+        }
+        
+        return elements;
+    }
+    
+    /**
+     * An element of a map, given by a description of its attributes, its
+     * kind and the number of points of its rings, and by the coordinates of
+     * its rings.
+     */
+    private static final class Element {
+        private final String     description;
+        private final double[][] rings;
+        
+        public Element(ch.epfl.imhof.Attributes attributes, String kind,
+                List<? extends PolyLine> rings) {
+            List<String> keys = new ArrayList<>(attributes.keys());
+            StringBuilder description = new StringBuilder(kind);
+            
+            Collections.sort(keys);
+            
+            for (String key : keys) {
+                description.append(' ').append(key).append('=').append(
+                    attributes.get(key));
+            }
+            
+            this.rings = new double[rings.size()][];
+            
+            for (int i = 0; i < rings.size(); ++i) {
+                PolyLine ring = rings.get(i);
+                
+                this.rings[i] = new double[2 * ring.size()];
+                description.append(" [").append(ring.size()).append(']');
+                
+                for (int j = 0; j < ring.size(); ++j) {
+                    this.rings[i][2 * j] = ring.x(j);
+                    this.rings[i][2 * j + 1] = ring.y(j);
+                }
+            }
+            
+            this.description = description.toString();
+        }
+        
+        public void check(String message, Element actual) {
+            assertEquals(message, description, actual.description);
+            
+            for (int i = 0; i < rings.length; ++i) {
+                for (int j = 0; j < rings[i].length; ++j) {
+                    assertEquals(
+                        message + ", ring " + i + ", coordinate " + j,
+                        rings[i][j],
+                        actual.rings[i][j],
+                        DELTA);
+                }
+            }
+        }
+        
+        public boolean isSameAs(Element that) {
+            if (!description.equals(that.description)) {
+                return false;
+            }
+            
+            for (int i = 0; i < rings.length; ++i) {
+                for (int j = 0; j < rings[i].length; ++j) {
+                    if (Math.abs(rings[i][j] - that.rings[i][j]) > DELTA) {
+                        return false;
+                    }
+                }
+            }
+            
+            return true;
+        }
+    }
+    
     private static void checkListsSizes(final String fileName,
             int exceptedWaysN, int exceptedRelsN) throws IOException,
             SAXException {
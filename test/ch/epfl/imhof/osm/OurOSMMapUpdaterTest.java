@@ -0,0 +1,171 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.projection.CH1903Projection;
+import ch.epfl.imhof.testUtils.OurTestsUtils;
+
+public class OurOSMMapUpdaterTest {
+    private static final OSMToGeoTransformer TRANSFORMER = new OSMToGeoTransformer(
+                                                             new CH1903Projection());
+    
+    @Test
+    public void mapIsTheTransformedMapBeforeAnyChange() throws IOException,
+            SAXException {
+        String fileName = "test/data/oneOuterAndTwoInnerRings.osm";
+        OSMMapUpdater updater = newUpdater(fileName);
+        
+        OurOSMMapReaderTest.checkSameMapInAnyOrder(
+            fileName,
+            OurTestsUtils.readOSMFileToMap(fileName),
+            updater.map());
+    }
+    
+    @Test
+    public void changeGivesSameMapAsChangedFile() throws IOException,
+            SAXException {
+        OSMMapUpdater updater = newUpdater("test/data/simpleRelation.osm");
+        updater.applyChangeFile("test/data/simpleRelation.osc", false);
+        
+        Map expected = OurTestsUtils
+            .readOSMFileToMap("test/data/simpleRelationChanged.osm");
+        Map actual = updater.map();
+        
+        OurOSMMapReaderTest.checkSameMapInAnyOrder(
+            "test/data/simpleRelation.osc",
+            expected,
+            actual);
+        checkSamePoints(
+            expected.polygons().get(0).value().holes().get(0).points(),
+            actual.polygons().get(0).value().holes().get(0).points());
+        assertEquals(
+            "residential",
+            actual.polyLines().get(0).attributeValue("highway"));
+    }
+    
+    @Test
+    public void deletingNodeDropsItsWaysAndRelations() throws IOException,
+            SAXException {
+        OSMMapUpdater updater = newUpdater("test/data/simpleRelation.osm");
+        updater.applyChangeFile(
+            "test/data/simpleRelationDeleteNode.osc",
+            false);
+        
+        assertEquals(0, updater.map().polygons().size());
+    }
+    
+    @Test
+    public void deletingRelationDropsItsPolygons() throws IOException,
+            SAXException {
+        OSMMapUpdater updater = newUpdater("test/data/simpleRelation.osm");
+        updater.applyChangeFile(
+            "test/data/simpleRelationDeleteRelation.osc",
+            false);
+        
+        assertEquals(0, updater.map().polygons().size());
+        assertEquals(0, updater.map().polyLines().size());
+    }
+    
+    @Test
+    public void newWayCanUseNodesOfNoWay() throws IOException, SAXException {
+        OSMMapUpdater updater = newUpdater("test/data/loneNodes.osm");
+        updater.applyChangeFile("test/data/loneNodesNewWay.osc", false);
+        
+        assertEquals(1, updater.map().polyLines().size());
+    }
+    
+    @Test
+    public void relationIsBuiltAgainWhenMissingMemberIsCreated()
+            throws IOException, SAXException {
+        OSMMapUpdater updater = newUpdater("test/data/simpleRelation.osm");
+        updater.applyChangeFile("test/data/simpleRelationDeleteWay.osc", false);
+        
+        assertEquals(0, updater.map().polygons().size());
+        
+        updater.applyChangeFile("test/data/simpleRelationCreateWay.osc", false);
+        
+        OurOSMMapReaderTest.checkSameMapInAnyOrder(
+            "test/data/simpleRelationCreateWay.osc",
+            OurTestsUtils.readOSMFileToMap("test/data/simpleRelation.osm"),
+            updater.map());
+    }
+    
+    @Test
+    public void savedUpdaterIsLoadedWithoutReadingOsmFile()
+            throws IOException, SAXException {
+        File file = File.createTempFile("simpleRelation", ".osm.updater");
+        File cache = new File(file.getPath() + ".map");
+        
+        try {
+            OSMMapUpdater updater = newUpdater("test/data/simpleRelation.osm");
+            updater.applyChangeFile(
+                "test/data/simpleRelationDeleteWay.osc",
+                false);
+            updater.save(file);
+            
+            OSMMapUpdater loaded = new OSMMapUpdater(file, TRANSFORMER);
+            
+            OurOSMMapReaderTest.checkSameMap(
+                file.getPath(),
+                updater.map(),
+                loaded.map());
+            
+            updater.applyChangeFile(
+                "test/data/simpleRelationCreateWay.osc",
+                false);
+            loaded.applyChangeFile(
+                "test/data/simpleRelationCreateWay.osc",
+                false);
+            
+            assertEquals(1, loaded.map().polygons().size());
+            OurOSMMapReaderTest.checkSameMap(
+                "test/data/simpleRelationCreateWay.osc",
+                updater.map(),
+                loaded.map());
+        }
+        finally {
+            file.delete();
+            cache.delete();
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void savedUpdaterIsNotLoadedWithoutItsMap() throws IOException,
+            SAXException {
+        File file = File.createTempFile("simpleRelation", ".osm.updater");
+        
+        try {
+            newUpdater("test/data/simpleRelation.osm").save(file);
+            new File(file.getPath() + ".map").delete();
+            
+            new OSMMapUpdater(file, TRANSFORMER);
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    private static OSMMapUpdater newUpdater(String fileName)
+            throws IOException, SAXException {
+        return new OSMMapUpdater(fileName, false, TRANSFORMER);
+    }
+    
+    private static void checkSamePoints(List<Point> expected,
+            List<Point> actual) {
+        assertEquals(expected.size(), actual.size());
+        
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.get(i).x(), actual.get(i).x(), 1e-9);
+            assertEquals(expected.get(i).y(), actual.get(i).y(), 1e-9);
+        }
+    }
+}
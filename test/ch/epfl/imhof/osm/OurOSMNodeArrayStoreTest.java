@@ -0,0 +1,79 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OurOSMNodeArrayStoreTest {
+    private static final double DELTA = 0.000001;
+    
+    @Test
+    public void findsNodesAddedInOrder() {
+        OSMNodeArrayStore store = new OSMNodeArrayStore();
+        
+        for (long id = 1; id <= 5000; ++id) {
+            store.add(id * 3, id, -id);
+        }
+        
+        assertEquals(5000, store.size());
+        checkNode(store, 3, 1, -1);
+        checkNode(store, 15000, 5000, -5000);
+        assertEquals(-1, store.indexOf(4));
+    }
+    
+    @Test
+    public void findsNodesAddedOutOfOrder() {
+        OSMNodeArrayStore store = new OSMNodeArrayStore();
+        
+        for (long id = 5000; id >= 1; --id) {
+            store.add(id * 3, id, -id);
+        }
+        
+        assertEquals(5000, store.size());
+        checkNode(store, 3, 1, -1);
+        checkNode(store, 15000, 5000, -5000);
+        assertEquals(-1, store.indexOf(4));
+    }
+    
+    @Test
+    public void replacesNodesWithSameId() {
+        OSMNodeArrayStore store = new OSMNodeArrayStore();
+        
+        store.add(1, 1, 1);
+        store.add(2, 2, 2);
+        store.add(2, 3, 3);
+        store.add(0, 4, 4);
+        store.add(1, 5, 5);
+        
+        assertEquals(3, store.size());
+        checkNode(store, 0, 4, 4);
+        checkNode(store, 1, 5, 5);
+        checkNode(store, 2, 3, 3);
+    }
+    
+    @Test
+    public void builderReturnsSameNodeForSameId() {
+        OSMMap.Builder builder = new OSMMap.Builder(new OSMNodeArrayStore());
+        
+        builder.addNode(7, 0.1, 0.2);
+        
+        OSMNode node = builder.nodeForId(7);
+        
+        assertTrue(node == builder.nodeForId(7));
+        assertEquals(0.1, node.position().longitude(), DELTA);
+        
+        builder.addNode(7, 0.3, 0.4);
+        
+        assertEquals(0.3, builder.nodeForId(7).position().longitude(), DELTA);
+        assertTrue(builder.nodeForId(7) == builder.nodeForId(7));
+    }
+    
+    private static void checkNode(OSMNodeArrayStore store, long id,
+            double lon, double lat) {
+        int i = store.indexOf(id);
+        
+        assertEquals(lon, store.longitude(i), DELTA);
+        assertEquals(lat, store.latitude(i), DELTA);
+    }
+}
@@ -0,0 +1,80 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.PointGeo;
+
+public class OurOSMNodeMappedStoreTest {
+    private static final double DELTA = 0.0000001;
+    
+    @Test
+    public void findsAddedNodes() throws IOException {
+        File file = File.createTempFile("nodes", ".bin");
+        
+        try (OSMNodeMappedStore store = new OSMNodeMappedStore(file)) {
+            store.add(1, Math.toRadians(6.5), Math.toRadians(46.5));
+            store.add(200_000_000L, Math.toRadians(-7.25), Math.toRadians(-0.5));
+            store.add(3, 0, 0);
+            
+            checkPosition(store.positionOf(1), 6.5, 46.5);
+            checkPosition(store.positionOf(200_000_000L), -7.25, -0.5);
+            checkPosition(store.positionOf(3), 0, 0);
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    @Test
+    public void returnsNullForMissingNodes() throws IOException {
+        File file = File.createTempFile("nodes", ".bin");
+        
+        try (OSMNodeMappedStore store = new OSMNodeMappedStore(file)) {
+            store.add(10, 0.1, 0.1);
+            
+            assertNull(store.positionOf(9));
+            assertNull(store.positionOf(11));
+            assertNull(store.positionOf(-1));
+            assertNull(store.positionOf(1_000_000_000_000L));
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    @Test
+    public void forEachGivesEveryAddedNode() throws IOException {
+        File file = File.createTempFile("nodes", ".bin");
+        
+        try (OSMNodeMappedStore store = new OSMNodeMappedStore(file)) {
+            HashMap<Long, PointGeo> nodes = new HashMap<>();
+            
+            store.add(1, Math.toRadians(6.5), Math.toRadians(46.5));
+            store.add(200_000_000L, Math.toRadians(-7.25), Math.toRadians(-0.5));
+            store.add(3, 0, 0);
+            store.forEach((id, longitude, latitude) -> nodes.put(
+                id,
+                new PointGeo(longitude, latitude)));
+            
+            assertEquals(3, nodes.size());
+            checkPosition(nodes.get(1L), 6.5, 46.5);
+            checkPosition(nodes.get(200_000_000L), -7.25, -0.5);
+            checkPosition(nodes.get(3L), 0, 0);
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    private static void checkPosition(PointGeo p, double lonDeg, double latDeg) {
+        assertEquals(Math.toRadians(lonDeg), p.longitude(), DELTA);
+        assertEquals(Math.toRadians(latDeg), p.latitude(), DELTA);
+    }
+}
@@ -0,0 +1,139 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import ch.epfl.imhof.testUtils.OurTestsUtils;
+
+public class OurOSMPbfReaderTest {
+    private static final double DELTA = 0.000001;
+    
+    @Test
+    public void wayIsCorrectlyParsed() throws IOException, SAXException {
+        OSMMap map = OurTestsUtils
+            .readOSMFile("test/data/simpleOpenWay.osm.pbf");
+        OSMWay way = map.ways().get(0);
+        
+        assertEquals(3, way.id());
+        assertEquals("unclassified", way.attributeValue("highway"));
+        
+        checkNode(way.nodes().get(0), 1, 47.0, 7.0);
+        checkNode(way.nodes().get(1), 2, 47.0, 6.0);
+    }
+    
+    @Test
+    public void relationIsCorrectlyParsed() throws IOException, SAXException {
+        OSMMap map = OurTestsUtils
+            .readOSMFile("test/data/simpleRelation.osm.pbf");
+        OSMRelation relation = map.relations().get(0);
+        
+        assertEquals(11, relation.id());
+        assertEquals("multipolygon", relation.attributeValue("type"));
+        
+        OSMWay way9 = (OSMWay) relation.members().get(0).member();
+        OSMWay way10 = (OSMWay) relation.members().get(1).member();
+        
+        assertEquals("outer", relation.members().get(0).role());
+        assertEquals("inner", relation.members().get(1).role());
+        
+        assertTrue(way9.isClosed());
+        assertEquals(1012362340L, way9.id());
+        checkNode(way9.nodes().get(0), 1, 47, 7);
+        checkNode(way9.nodes().get(1), 2, 47, 6);
+        checkNode(way9.nodes().get(2), 3, 46, 6);
+        checkNode(way9.nodes().get(3), 4, 46, 7);
+        
+        assertTrue(way10.isClosed());
+        assertEquals(1012362341L, way10.id());
+        checkNode(way10.nodes().get(0), 5, 46.8, 6.8);
+        checkNode(way10.nodes().get(1), 6, 46.8, 6.2);
+        checkNode(way10.nodes().get(2), 7, 46.2, 6.2);
+        checkNode(way10.nodes().get(3), 8, 46.2, 6.8);
+    }
+    
+    @Test
+    public void pbfGivesSameMapAsXmlOnSmallFiles() throws IOException,
+            SAXException {
+        checkSameMap("test/data/simpleOpenWay.osm");
+        checkSameMap("test/data/simpleRelation.osm");
+    }
+    
+    @Test(expected = IOException.class)
+    public void nonPbfFileThrowsException() throws IOException, SAXException {
+        OSMPbfReader.readOSMFile("test/data/simpleRelation.osm");
+    }
+    
+    @Test
+    public void lausanneIsCorrectlyParsed() throws IOException, SAXException {
+        checkListsSizes("test/data/big/lausanne.osm.pbf", 139901, 3704);
+    }
+    
+    @Test
+    public void berneIsCorrectlyParsed() throws IOException, SAXException {
+        checkListsSizes("test/data/big/berne.osm.pbf", 161980, 2436);
+    }
+    
+    @Test
+    public void interlakIsCorrectlyParsed() throws IOException, SAXException {
+        checkListsSizes("test/data/big/interlaken.osm.pbf", 77946, 973);
+    }
+    
+    private static void checkSameMap(final String fileName)
+            throws IOException, SAXException {
+        OSMMap expected = OurTestsUtils.readOSMFile(fileName);
+        OSMMap actual = OurTestsUtils.readOSMFile(fileName + ".pbf");
+        
+        assertEquals(expected.ways().size(), actual.ways().size());
+        assertEquals(expected.relations().size(), actual.relations().size());
+        
+        for (int i = 0; i < expected.ways().size(); ++i) {
+            OSMWay expectedWay = expected.ways().get(i);
+            OSMWay actualWay = actual.ways().get(i);
+            
+            assertEquals(expectedWay.id(), actualWay.id());
+            assertEquals(expectedWay.nodesCount(), actualWay.nodesCount());
+            
+            for (int j = 0; j < expectedWay.nodesCount(); ++j) {
+                OSMNode expectedNode = expectedWay.nodes().get(j);
+                
+                checkNode(
+                    actualWay.nodes().get(j),
+                    expectedNode.id(),
+                    Math.toDegrees(expectedNode.position().latitude()),
+                    Math.toDegrees(expectedNode.position().longitude()));
+            }
+        }
+    }
+    
+    private static void checkListsSizes(final String fileName,
+            int exceptedWaysN, int exceptedRelsN) throws IOException,
+            SAXException {
+        OSMMap map = OurTestsUtils.readOSMFile(fileName);
+        
+        assertEquals(
+            "check number of OSMWays in " + fileName,
+            exceptedWaysN,
+            map.ways().size());
+        
+        assertEquals(
+            "check number of OSMRelations in " + fileName,
+            exceptedRelsN,
+            map.relations().size());
+    }
+    
+    private static void checkNode(final OSMNode node, final long id,
+            final double latDeg, final double lonDeg) {
+        assertEquals("check node's id", id, node.id());
+        assertEquals("check nodes's latitude", Math.toRadians(latDeg), node
+            .position()
+            .latitude(), DELTA);
+        assertEquals("check node's longitude", Math.toRadians(lonDeg), node
+            .position()
+            .longitude(), DELTA);
+    }
+}
@@ -15,6 +15,7 @@ import org.xml.sax.SAXException;
 
 import ch.epfl.imhof.Attributed;
 import ch.epfl.imhof.Map;
+import ch.epfl.imhof.PointGeo;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
@@ -237,6 +238,100 @@ public class OurOSMToGeoTransformerTest {
     
     // TODO: Island within a hole
     
+    @Test
+    public void parallelTransformGivesSameMapOnSmallFiles()
+            throws IOException, SAXException {
+        checkParallelTransformGivesSameMap(OurTestsUtils
+            .readOSMFile("test/data/simpleOpenWay.osm"));
+        checkParallelTransformGivesSameMap(OurTestsUtils
+            .readOSMFile("test/data/oneOuterAndTwoInnerRings.osm"));
+        checkParallelTransformGivesSameMap(OurTestsUtils
+            .readOSMFile("test/data/twoDisjunctOuterRings.osm"));
+    }
+    
+    @Test
+    public void parallelTransformGivesSameMapWithManyChunks() {
+        List<OSMWay> ways = new ArrayList<>();
+        List<OSMRelation> relations = new ArrayList<>();
+        
+        // Squares, alternately buildings and roads, and a multipolygon
+        // relation for every tenth of them.
+        for (int i = 0; i < 5000; ++i) {
+            double x = i * 0.03;
+            OSMNode a = node(4 * i, x, 0);
+            OSMNode b = node(4 * i + 1, x + 0.01, 0);
+            OSMNode c = node(4 * i + 2, x + 0.01, 0.01);
+            OSMNode d = node(4 * i + 3, x, 0.01);
+            OSMWay.Builder wayBuilder = new OSMWay.Builder(i);
+            
+            for (OSMNode n : Arrays.asList(a, b, c, d, a)) {
+                wayBuilder.addNode(n);
+            }
+            
+            wayBuilder.setAttribute(i % 2 == 0 ? "building" : "highway", "yes");
+            ways.add(wayBuilder.build());
+            
+            if (i % 10 == 0) {
+                OSMRelation.Builder relBuilder = new OSMRelation.Builder(i);
+                relBuilder.addMember(
+                    OSMRelation.Member.Type.WAY,
+                    "outer",
+                    ways.get(i));
+                relBuilder.setAttribute("type", "multipolygon");
+                relBuilder.setAttribute("landuse", "forest");
+                relations.add(relBuilder.build());
+            }
+        }
+        
+        checkParallelTransformGivesSameMap(new OSMMap(ways, relations));
+    }
+    
+    @Test
+    public void nodesAreProjectedWithArrayProjection() throws IOException,
+            SAXException {
+        // Projects arrays like an equirectangular projection, but not single
+        // points.
+        Projection arraysOnly = new Projection() {
+            private final Projection projection = new EquirectangularProjection();
+            
+            @Override
+            public Point project(PointGeo point) {
+                throw new UnsupportedOperationException();
+            }
+            
+            @Override
+            public PointGeo inverse(Point point) {
+                throw new UnsupportedOperationException();
+            }
+            
+            @Override
+            public void project(double[] coordinates, int offset, int count) {
+                projection.project(coordinates, offset, count);
+            }
+        };
+        OSMToGeoTransformer transformer = new OSMToGeoTransformer(arraysOnly);
+        
+        for (String fileName : new String[] { "test/data/simpleOpenWay.osm",
+                "test/data/simpleArea.osm",
+                "test/data/oneOuterAndTwoInnerRings.osm" }) {
+            OSMMap osm = OurTestsUtils.readOSMFile(fileName);
+            Map expected = new OSMToGeoTransformer(
+                new EquirectangularProjection()).transform(osm);
+            Map actual = transformer.transform(osm);
+            
+            assertEquals(expected.polyLines().size(), actual
+                .polyLines()
+                .size());
+            assertEquals(expected.polygons().size(), actual.polygons().size());
+            
+            for (int i = 0; i < expected.polygons().size(); ++i) {
+                checkSamePoints(
+                    expected.polygons().get(i).value().shell(),
+                    actual.polygons().get(i).value().shell());
+            }
+        }
+    }
+    
     // TODO: Touching inner rings
     
     // TODO: Unclosed polygons
@@ -251,6 +346,56 @@ public class OurOSMToGeoTransformerTest {
         return new OSMToGeoTransformer(proj).transform(map);
     }
     
+    private static OSMNode node(long id, double lonDeg, double latDeg) {
+        return new OSMNode.Builder(id, new PointGeo(
+            Math.toRadians(lonDeg),
+            Math.toRadians(latDeg))).build();
+    }
+    
+    private static void checkParallelTransformGivesSameMap(OSMMap osm) {
+        OSMToGeoTransformer transformer = new OSMToGeoTransformer(
+            new EquirectangularProjection());
+        Map expected = transformer.transform(osm);
+        Map actual = transformer.transformInParallel(osm);
+        
+        assertEquals(expected.polyLines().size(), actual.polyLines().size());
+        assertEquals(expected.polygons().size(), actual.polygons().size());
+        
+        for (int i = 0; i < expected.polyLines().size(); ++i) {
+            checkSamePoints(expected.polyLines().get(i).value(), actual
+                .polyLines()
+                .get(i)
+                .value());
+        }
+        
+        for (int i = 0; i < expected.polygons().size(); ++i) {
+            Polygon e = expected.polygons().get(i).value();
+            Polygon a = actual.polygons().get(i).value();
+            
+            checkSamePoints(e.shell(), a.shell());
+            assertEquals(e.holes().size(), a.holes().size());
+            
+            for (int j = 0; j < e.holes().size(); ++j) {
+                checkSamePoints(e.holes().get(j), a.holes().get(j));
+            }
+        }
+    }
+    
+    private static void checkSamePoints(PolyLine expected, PolyLine actual) {
+        assertEquals(expected.points().size(), actual.points().size());
+        
+        for (int i = 0; i < expected.points().size(); ++i) {
+            assertEquals(expected.points().get(i).x(), actual
+                .points()
+                .get(i)
+                .x(), 0);
+            assertEquals(expected.points().get(i).y(), actual
+                .points()
+                .get(i)
+                .y(), 0);
+        }
+    }
+    
     private static void checkListsSizes(String fileName, int polyLinesN,
             int polygonsN) throws IOException, SAXException {
         Map map = transform(fileName);
@@ -0,0 +1,170 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.projection.CH1903Projection;
+import ch.epfl.imhof.testUtils.OurTestsUtils;
+
+public class OurOSMXMLScannerTest {
+    @Test(expected = IOException.class)
+    public void missingIDThrowsException() throws IOException {
+        OSMXMLScanner.readOSMFile("test/data/nodeMissingId.osm", false);
+    }
+    
+    @Test
+    public void scannerGivesSameMapOnSmallFiles() throws IOException,
+            SAXException {
+        checkSameMap("test/data/simpleOpenWay.osm");
+        checkSameMap("test/data/simpleClosedWay.osm");
+        checkSameMap("test/data/simpleArea.osm");
+        checkSameMap("test/data/simpleRelation.osm");
+        checkSameMap("test/data/oneOuterAndOneInnerRing.osm");
+        checkSameMap("test/data/oneOuterAndTwoInnerRings.osm");
+        checkSameMap("test/data/twoDisjunctOuterRings.osm");
+        checkSameMap("test/data/multipleWaysFormingARing.osm");
+    }
+    
+    @Test
+    public void scannerGivesSameMapOnLausanne() throws IOException,
+            SAXException {
+        checkSameMap("test/data/big/lausanne.osm.gz");
+    }
+    
+    @Test
+    public void filteringGivesSameMapOnSmallFiles() throws IOException,
+            SAXException {
+        checkFilteringGivesSameMap("test/data/simpleRelation.osm");
+        checkFilteringGivesSameMap("test/data/oneOuterAndTwoInnerRings.osm");
+        checkFilteringGivesSameMap("test/data/multipleWaysFormingARing.osm");
+    }
+    
+    @Test
+    public void filteringGivesSameMapOnLausanne() throws IOException,
+            SAXException {
+        checkFilteringGivesSameMap("test/data/big/lausanne.osm.gz");
+    }
+    
+    @Test
+    public void referencesAndCommentsAreHandled() throws IOException {
+        File file = File.createTempFile("references", ".osm");
+        
+        try {
+            try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+                writer.println("<?xml version='1.0' encoding='UTF-8'?>");
+                writer.println("<!-- a <comment> -->");
+                writer.println("<osm version=\"0.6\">");
+                writer.println(" <node id=\"1\" lat=\"46.5\" lon=\"6.5\"/>");
+                writer.println(" <node id='2' lat='-4.25e1' lon='6.6'>");
+                writer.println("  <tag k=\"name\" v=\"A &amp; B &#233;t&#xE9; &quot;\"/>");
+                writer.println(" </node>");
+                writer.println(" <way id=\"3\" visible=\"true\">");
+                writer.println("  <nd ref=\"1\"/><nd ref=\"2\"/>");
+                writer.println("  <tag k=\"name\" v=\"Rue de l'Église\"/>");
+                writer.println(" </way>");
+                writer.println("</osm>");
+            }
+            
+            OSMMap map = OSMXMLScanner.readOSMFile(file.getPath(), false);
+            OSMWay way = map.ways().get(0);
+            OSMNode node = way.nodes().get(1);
+            
+            assertEquals("Rue de l'Église", way.attributeValue("name"));
+            assertEquals("A & B été \"", node.attributeValue("name"));
+            assertEquals(Math.toRadians(-42.5), node.position().latitude(), 0);
+            assertEquals(
+                Math.toRadians(46.5),
+                way.nodes().get(0).position().latitude(),
+                0);
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    private static void checkFilteringGivesSameMap(final String fileName)
+            throws IOException, SAXException {
+        OSMToGeoTransformer transformer = new OSMToGeoTransformer(
+            new CH1903Projection());
+        Map expected = OurTestsUtils.readOSMFileToMap(fileName);
+        Map actual = transformer.transform(OSMXMLScanner.readOSMFile(
+            fileName,
+            fileName.endsWith(".gz"),
+            transformer.relevantKeys()));
+        
+        OurOSMMapReaderTest.checkSameMap(fileName, expected, actual);
+    }
+    
+    private static void checkSameMap(final String fileName)
+            throws IOException, SAXException {
+        OSMMap expected = OurTestsUtils.readOSMFile(fileName);
+        OSMMap actual = OSMXMLScanner.readOSMFile(
+            fileName,
+            fileName.endsWith(".gz"));
+        
+        assertEquals(expected.ways().size(), actual.ways().size());
+        assertEquals(expected.relations().size(), actual.relations().size());
+        
+        for (int i = 0; i < expected.ways().size(); ++i) {
+            checkSameWay(expected.ways().get(i), actual.ways().get(i));
+        }
+        
+        for (int i = 0; i < expected.relations().size(); ++i) {
+            OSMRelation expectedRel = expected.relations().get(i);
+            OSMRelation actualRel = actual.relations().get(i);
+            
+            assertEquals(expectedRel.id(), actualRel.id());
+            assertEquals(
+                expectedRel.attributes().get("type"),
+                actualRel.attributes().get("type"));
+            assertEquals(
+                expectedRel.members().size(),
+                actualRel.members().size());
+            
+            for (int j = 0; j < expectedRel.members().size(); ++j) {
+                OSMRelation.Member expectedMember = expectedRel.members().get(j);
+                OSMRelation.Member actualMember = actualRel.members().get(j);
+                
+                assertEquals(expectedMember.type(), actualMember.type());
+                assertEquals(expectedMember.role(), actualMember.role());
+                assertEquals(
+                    expectedMember.member().id(),
+                    actualMember.member().id());
+            }
+        }
+    }
+    
+    private static void checkSameWay(OSMWay expected, OSMWay actual) {
+        assertEquals(expected.id(), actual.id());
+        assertEquals(expected.nodesCount(), actual.nodesCount());
+        assertEquals(
+            expected.attributes().get("highway"),
+            actual.attributes().get("highway"));
+        assertEquals(
+            expected.attributes().get("building"),
+            actual.attributes().get("building"));
+        
+        for (int j = 0; j < expected.nodesCount(); ++j) {
+            OSMNode expectedNode = expected.nodes().get(j);
+            OSMNode actualNode = actual.nodes().get(j);
+            
+            assertEquals(expectedNode.id(), actualNode.id());
+            // Numbers are parsed exactly like Double.parseDouble does.
+            assertEquals(
+                expectedNode.position().latitude(),
+                actualNode.position().latitude(),
+                0);
+            assertEquals(
+                expectedNode.position().longitude(),
+                actualNode.position().longitude(),
+                0);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class OurParallelGZIPInputStreamTest {
+    private static final byte[] DATA = randomText(1_000_000);
+    
+    @Test
+    public void singleMemberIsCorrectlyInflated() throws IOException {
+        assertArrayEquals(DATA, inflate(gzip(DATA)));
+    }
+    
+    @Test
+    public void multipleMembersAreCorrectlyInflated() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        for (int i = 0; i < DATA.length; i += 100_000) {
+            out.write(gzip(Arrays.copyOfRange(DATA, i, i + 100_000)));
+        }
+        
+        assertArrayEquals(DATA, inflate(out.toByteArray()));
+    }
+    
+    @Test
+    public void bgzfMembersAreCorrectlyInflated() throws IOException {
+        assertArrayEquals(DATA, inflate(bgzf(DATA)));
+    }
+    
+    @Test
+    public void bgzfFollowedByOrdinaryMemberIsCorrectlyInflated()
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(bgzf(Arrays.copyOf(DATA, 500_000)));
+        out.write(gzip(Arrays.copyOfRange(DATA, 500_000, DATA.length)));
+        
+        assertArrayEquals(DATA, inflate(out.toByteArray()));
+    }
+    
+    @Test
+    public void emptyStreamIsCorrectlyInflated() throws IOException {
+        assertEquals(0, inflate(new byte[0]).length);
+    }
+    
+    @Test(expected = ZipException.class)
+    public void corruptBgzfMemberThrowsException() throws IOException {
+        byte[] bytes = bgzf(DATA);
+        // Flips a bit of the CRC of the first member.
+        int firstSize = (bytes[16] & 0xFF | (bytes[17] & 0xFF) << 8) + 1;
+        bytes[firstSize - 8] ^= 1;
+        
+        inflate(bytes);
+    }
+    
+    @Test(timeout = 10000)
+    public void readAfterFailureThrowsAgain() throws IOException {
+        byte[] bytes = bgzf(DATA);
+        int firstSize = (bytes[16] & 0xFF | (bytes[17] & 0xFF) << 8) + 1;
+        bytes[firstSize - 8] ^= 1;
+        
+        try (InputStream in = new ParallelGZIPInputStream(
+            new ByteArrayInputStream(bytes))) {
+            for (int i = 0; i < 2; ++i) {
+                try {
+                    in.read(new byte[4096]);
+                    fail();
+                }
+                catch (ZipException e) {
+                    // Expected, both times.
+                }
+            }
+        }
+    }
+    
+    @Test(timeout = 10000, expected = IOException.class)
+    public void readAfterCloseThrowsException() throws IOException {
+        InputStream in = new ParallelGZIPInputStream(new ByteArrayInputStream(
+            gzip(DATA)));
+        
+        in.close();
+        in.read(new byte[4096]);
+    }
+    
+    @Test
+    public void gzippedOsmFileIsCorrectlyParsed() throws IOException,
+            SAXException {
+        File file = File.createTempFile("simpleRelation", ".osm.gz");
+        
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(bgzf(Files.readAllBytes(Paths
+                    .get("test/data/simpleRelation.osm"))));
+            }
+            
+            OSMMap map = OSMMapReader.readOSMFile(file.getPath(), true, true);
+            
+            assertEquals(1, map.relations().size());
+            assertEquals(2, map.ways().size());
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        try (InputStream in = new ParallelGZIPInputStream(
+            new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        
+        return out.toByteArray();
+    }
+    
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        
+        return out.toByteArray();
+    }
+    
+    // Writes data as BGZF members of at most 65280 bytes, as bgzip does,
+    // followed by the empty end-of-file member.
+    private static byte[] bgzf(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        for (int i = 0; i < data.length; i += 65280) {
+            bgzfMember(out, Arrays.copyOfRange(
+                data,
+                i,
+                Math.min(i + 65280, data.length)));
+        }
+        
+        bgzfMember(out, new byte[0]);
+        return out.toByteArray();
+    }
+    
+    private static void bgzfMember(ByteArrayOutputStream out, byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        
+        byte[] deflated = new byte[data.length + 1024];
+        int size = deflater.deflate(deflated);
+        deflater.end();
+        
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        
+        int blockSize = 18 + size + 8;
+        byte[] header = { 31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6,
+                0, 'B', 'C', 2, 0, (byte) (blockSize - 1),
+                (byte) ((blockSize - 1) >> 8) };
+        
+        out.write(header, 0, header.length);
+        out.write(deflated, 0, size);
+        writeInt(out, (int) crc.getValue());
+        writeInt(out, data.length);
+    }
+    
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        for (int i = 0; i < 4; ++i) {
+            out.write(value >> 8 * i);
+        }
+    }
+    
+    private static byte[] randomText(int length) {
+        Random random = new Random(42);
+        byte[] text = new byte[length];
+        
+        for (int i = 0; i < length; ++i) {
+            text[i] = (byte) ('a' + random.nextInt(8));
+        }
+        
+        return text;
+    }
+}
@@ -1,10 +1,13 @@
 package ch.epfl.imhof.painting;
 
+import static org.junit.Assert.assertEquals;
+
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 import org.junit.Test;
 
+import ch.epfl.imhof.geometry.ClosedPolyLine;
 import ch.epfl.imhof.geometry.OpenPolyLine;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.PolyLine;
@@ -40,6 +43,125 @@ public class OurJava2DCanvasTest {
             drawCrazyGreenPolygon(300));
     }
     
+    @Test
+    public void lineOutsideImageButCloserThanItsWidthIsDrawn() {
+        Java2DCanvas canvas = new Java2DCanvas(
+            new Point(0, 0),
+            new Point(100, 100),
+            100,
+            100,
+            72,
+            Color.WHITE);
+        
+        canvas.drawPolyLine(
+            new OpenPolyLine(new double[] { -3, 10, -3, 90 }),
+            new LineStyle(10, Color.RED));
+        canvas.drawPolyLine(
+            new OpenPolyLine(new double[] { 120, 10, 120, 90 }),
+            new LineStyle(10, Color.RED));
+        
+        assertEquals(
+            Color.RED.toJavaColor().getRGB(),
+            canvas.image().getRGB(0, 50));
+        assertEquals(
+            Color.WHITE.toJavaColor().getRGB(),
+            canvas.image().getRGB(99, 50));
+    }
+    
+    @Test
+    public void clippingDoesNotChangeVisiblePart() {
+        // The small canvas shows the center of the big one, at the same
+        // scale: most of what is drawn on it is clipped, not on the big one.
+        Java2DCanvas small = new Java2DCanvas(
+            new Point(100, 100),
+            new Point(200, 200),
+            100,
+            100,
+            72,
+            Color.WHITE);
+        Java2DCanvas big = new Java2DCanvas(
+            new Point(0, 0),
+            new Point(300, 300),
+            300,
+            300,
+            72,
+            Color.WHITE);
+        PolyLine.Builder star = new PolyLine.Builder();
+        PolyLine.Builder zigzag = new PolyLine.Builder();
+        
+        for (int i = 0; i < 50; ++i) {
+            double angle = 2 * Math.PI * i / 50;
+            double radius = i % 2 == 0 ? 140 : 40;
+            
+            star.addPoint(
+                150 + radius * Math.cos(angle),
+                150 + radius * Math.sin(angle));
+            zigzag.addPoint(-20 + 7 * i, i % 2 == 0 ? 90 : 210);
+        }
+        
+        Polygon polygon = new Polygon(star.buildClosed());
+        LineStyle style = new LineStyle(5, Color.RED).withJoin(
+            LineStyle.LineJoin.MITER);
+        
+        for (Canvas canvas : new Canvas[] { small, big }) {
+            canvas.drawPolygon(polygon, Color.GREEN);
+            canvas.drawPolyLine(zigzag.buildOpen(), style);
+            canvas.drawPolyLine(polygon.shell(), style.withColor(Color.BLUE));
+        }
+        
+        int different = 0;
+        
+        for (int x = 0; x < 100; ++x) {
+            for (int y = 0; y < 100; ++y) {
+                if (small.image().getRGB(x, y) != big.image().getRGB(
+                    x + 100,
+                    y + 100)) {
+                    ++different;
+                }
+            }
+        }
+        
+        assertEquals(0, different);
+    }
+    
+    @Test
+    public void styleOfEachDrawingIsUsedWhenStylesAlternate() {
+        Java2DCanvas canvas = new Java2DCanvas(
+            new Point(0, 0),
+            new Point(100, 100),
+            100,
+            100,
+            72,
+            Color.WHITE);
+        LineStyle red = new LineStyle(4, Color.RED);
+        LineStyle thinBlue = new LineStyle(1, Color.BLUE);
+        
+        canvas.drawPolyLine(
+            new OpenPolyLine(new double[] { 10, 0, 10, 100 }),
+            red);
+        canvas.drawPolygon(
+            new Polygon(new ClosedPolyLine(new double[] {
+                    30, 10, 50, 10, 50, 30, 30, 30 })),
+            Color.GREEN);
+        canvas.drawPolyLine(
+            new OpenPolyLine(new double[] { 70, 0, 70, 100 }),
+            red);
+        canvas.drawPolyLine(
+            new OpenPolyLine(new double[] { 90, 0, 90, 100 }),
+            thinBlue);
+        canvas.drawPolyLine(
+            new OpenPolyLine(new double[] { 0, 90, 100, 90 }),
+            red);
+        
+        BufferedImage image = canvas.image();
+        
+        assertEquals(0xFFFF0000, image.getRGB(11, 50));
+        assertEquals(0xFF00FF00, image.getRGB(40, 80));
+        assertEquals(0xFFFF0000, image.getRGB(71, 50));
+        assertEquals(0xFFFFFFFF, image.getRGB(91, 50));
+        assertEquals(0xFFFF0000, image.getRGB(50, 11));
+    }
+    
     static private BufferedImage drawAmazingRedLine(int res) {
         Java2DCanvas canvas = new Java2DCanvas(new Point(0, 0), new Point(
             200,
@@ -1,14 +1,26 @@
 package ch.epfl.imhof.painting;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.function.Predicate;
 
 import org.junit.Test;
 import org.xml.sax.SAXException;
 
 import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Attributes;
 import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.Envelope;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.Polygon;
 import ch.epfl.imhof.testUtils.OurTestsUtils;
 
 public class OurPainterTest {
@@ -47,4 +59,80 @@ public class OurPainterTest {
             "test/data/big/lausanne_bb.png",
             canvas.image());
     }
+    
+    @Test
+    public void composedPainterDrawsInTheOrderOfItsParts() {
+        IdentityHashMap<Object, String> names = new IdentityHashMap<>();
+        Map.Builder builder = new Map.Builder();
+        
+        builder.addPolyLine(
+            polyLine(names, "a", 0, "layer", "1", "road", "yes"));
+        builder.addPolyLine(polyLine(names, "b", 1, "road", "yes"));
+        builder.addPolyLine(polyLine(names, "c", 10, "layer", "-1"));
+        builder.addPolyLine(
+            polyLine(names, "d", 2, "layer", "7", "road", "yes"));
+        builder.addPolygon(polygon(names, "p", 0, "building", "yes"));
+        builder.addPolygon(
+            polygon(names, "q", 1, "layer", "2", "building", "yes"));
+        
+        Painter roads = Painter.line(2, Color.RED).when(Filters.tagged("road"));
+        Painter lines = Painter.line(1, Color.BLUE);
+        Painter buildings = Painter.polygon(Color.GREEN).when(
+            Filters.tagged("building"));
+        Painter painter = roads
+            .above(lines)
+            .above(buildings)
+            .layered()
+            .above(
+                Painter.line(3, Color.BLACK).within(
+                    new Envelope(-1, -1, 5, 5)));
+        
+        List<String> drawn = new ArrayList<>();
+        
+        painter.drawMap(builder.build(), new Canvas() {
+            @Override
+            public void drawPolyLine(PolyLine polyLine, LineStyle style) {
+                drawn.add(names.get(polyLine) + (int) style.width());
+            }
+            
+            @Override
+            public void drawPolygon(Polygon polygon, Color color) {
+                drawn.add(names.get(polygon));
+            }
+        });
+        
+        assertEquals(
+            Arrays.asList(
+                "a3", "b3", "d3", "c1", "p", "b1", "b2", "a1", "a2", "q"),
+            drawn);
+    }
+    
+    private static Attributed<PolyLine> polyLine(
+            IdentityHashMap<Object, String> names, String name, double x,
+            String... attributes) {
+        PolyLine polyLine = new OpenPolyLine(new double[] { x, 0, x, 1 });
+        
+        names.put(polyLine, name);
+        return new Attributed<>(polyLine, attributes(attributes));
+    }
+    
+    private static Attributed<Polygon> polygon(
+            IdentityHashMap<Object, String> names, String name, double x,
+            String... attributes) {
+        Polygon polygon = new Polygon(new ClosedPolyLine(new double[] {
+                x, 0, x + 1, 0, x, 1 }));
+        
+        names.put(polygon, name);
+        return new Attributed<>(polygon, attributes(attributes));
+    }
+    
+    private static Attributes attributes(String... keysAndValues) {
+        Attributes.Builder builder = new Attributes.Builder();
+        
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            builder.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        
+        return builder.build();
+    }
 }
@@ -0,0 +1,148 @@
+package ch.epfl.imhof.painting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+public class OurRecordingCanvasTest {
+    private static Map map() {
+        Map.Builder builder = new Map.Builder();
+        Attributes attributes = new Attributes.Builder().build();
+        PolyLine.Builder star = new PolyLine.Builder();
+        PolyLine.Builder hole = new PolyLine.Builder();
+        PolyLine.Builder zigzag = new PolyLine.Builder();
+        
+        for (int i = 0; i < 40; ++i) {
+            double angle = 2 * Math.PI * i / 40;
+            double radius = i % 2 == 0 ? 90 : 40;
+            
+            star.addPoint(
+                100 + radius * Math.cos(angle),
+                100 + radius * Math.sin(angle));
+            hole.addPoint(
+                100 + 20 * Math.cos(-angle),
+                100 + 20 * Math.sin(-angle));
+            zigzag.addPoint(-10 + 6 * i, i % 2 == 0 ? 30 : 170);
+        }
+        
+        Polygon polygon = new Polygon(star.buildClosed(), Arrays.asList(hole
+            .buildClosed()));
+        
+        builder.addPolygon(new Attributed<>(polygon, attributes));
+        builder.addPolyLine(new Attributed<>(zigzag.buildOpen(), attributes));
+        builder.addPolyLine(new Attributed<>(hole.buildClosed(), attributes));
+        
+        return builder.build();
+    }
+    
+    private static Painter painter() {
+        LineStyle mitered = new LineStyle(3, Color.RED)
+            .withJoin(LineStyle.LineJoin.MITER)
+            .withCap(LineStyle.LineCap.SQUARE);
+        LineStyle dashed = new LineStyle(1, Color.BLACK)
+            .withDashingPattern(new float[] { 4, 3 });
+        
+        return Painter
+            .line(mitered)
+            .above(Painter.line(dashed))
+            .above(Painter.outline(2, Color.BLUE))
+            .above(Painter.polygon(Color.GREEN));
+    }
+    
+    private static Java2DCanvas canvas(int resolution) {
+        int size = 200 * resolution / 72;
+        
+        return new Java2DCanvas(
+            new Point(0, 0),
+            new Point(200, 200),
+            size,
+            size,
+            resolution,
+            Color.WHITE);
+    }
+    
+    private static int differentPixels(Java2DCanvas c1, Java2DCanvas c2) {
+        int different = 0;
+        
+        for (int x = 0; x < c1.image().getWidth(); ++x) {
+            for (int y = 0; y < c1.image().getHeight(); ++y) {
+                if (c1.image().getRGB(x, y) != c2.image().getRGB(x, y)) {
+                    ++different;
+                }
+            }
+        }
+        
+        return different;
+    }
+    
+    @Test
+    public void replayDrawsSameImageAsPainterAtAnyResolution() {
+        RecordingCanvas recording = new RecordingCanvas();
+        
+        painter().drawMap(map(), recording);
+        
+        for (int resolution : new int[] { 72, 150 }) {
+            Java2DCanvas direct = canvas(resolution);
+            Java2DCanvas replayed = canvas(resolution);
+            
+            painter().drawMap(map(), direct);
+            recording.replay(replayed);
+            
+            assertEquals(0, differentPixels(direct, replayed));
+        }
+    }
+    
+    @Test
+    public void readRecordingDrawsSameImageAsWrittenOne() throws IOException {
+        RecordingCanvas recording = new RecordingCanvas();
+        File file = File.createTempFile("imhof", ".dls");
+        
+        try {
+            painter().drawMap(map(), recording);
+            recording.write(file);
+            
+            RecordingCanvas read = RecordingCanvas.read(file);
+            Java2DCanvas written = canvas(150);
+            Java2DCanvas replayed = canvas(150);
+            
+            recording.replay(written);
+            read.replay(replayed);
+            
+            assertEquals(recording.size(), read.size());
+            assertEquals(0, differentPixels(written, replayed));
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    @Test(expected = IOException.class)
+    public void readFailsOnOtherFiles() throws IOException {
+        File file = File.createTempFile("imhof", ".dls");
+        
+        try {
+            new RecordingCanvas().write(file);
+            
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.writeLong(0);
+            }
+            
+            RecordingCanvas.read(file);
+        }
+        finally {
+            file.delete();
+        }
+    }
+}
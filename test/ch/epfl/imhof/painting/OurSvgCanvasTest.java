@@ -0,0 +1,122 @@
+package ch.epfl.imhof.painting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.Polygon;
+
+public class OurSvgCanvasTest {
+    private static Document document(ByteArrayOutputStream out)
+            throws Exception {
+        return DocumentBuilderFactory
+            .newInstance()
+            .newDocumentBuilder()
+            .parse(new ByteArrayInputStream(out.toByteArray()));
+    }
+    
+    private static SvgCanvas canvas(ByteArrayOutputStream out)
+            throws Exception {
+        return new SvgCanvas(
+            new Point(0, 0),
+            new Point(200, 100),
+            200,
+            100,
+            72,
+            Color.WHITE,
+            out);
+    }
+    
+    @Test
+    public void pathsAreWrittenWithRoundedRelativeCoordinates()
+            throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        try (SvgCanvas canvas = canvas(out)) {
+            canvas.drawPolyLine(
+                new OpenPolyLine(new double[] { 10, 10.123, 20, 30.5, 15, 50 }),
+                new LineStyle(1, Color.BLACK));
+            canvas.drawPolygon(new Polygon(
+                new ClosedPolyLine(new double[] { 0, 0, 50, 0, 50, 50 }),
+                Arrays.asList(new ClosedPolyLine(new double[] { 30, 10, 40,
+                        10, 40, 20 }))), Color.RED);
+        }
+        
+        Document document = document(out);
+        NodeList paths = document.getElementsByTagName("path");
+        
+        assertEquals("200pt", document.getDocumentElement().getAttribute(
+            "width"));
+        assertEquals(2, paths.getLength());
+        assertEquals(
+            "M10 89.88l10 -20.38 -5 -19.5",
+            ((Element) paths.item(0)).getAttribute("d"));
+        assertEquals(
+            "M0 100l50 0 0 -50z M30 90l10 0 0 -10z",
+            ((Element) paths.item(1)).getAttribute("d"));
+    }
+    
+    @Test
+    public void eachStyleIsWrittenOnce() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LineStyle dashed = new LineStyle(1.5f, Color.BLUE)
+            .withDashingPattern(new float[] { 2, 1 });
+        LineStyle sameDashed = new LineStyle(1.5f, Color.BLUE)
+            .withDashingPattern(new float[] { 2, 1 });
+        OpenPolyLine line = new OpenPolyLine(new double[] { 10, 10, 20, 20 });
+        
+        try (SvgCanvas canvas = canvas(out)) {
+            canvas.drawPolyLine(line, dashed);
+            canvas.drawPolyLine(line, new LineStyle(1, Color.BLACK));
+            canvas.drawPolyLine(line, sameDashed);
+            canvas.drawPolyLine(line, dashed);
+        }
+        
+        Document document = document(out);
+        NodeList styles = document.getElementsByTagName("style");
+        NodeList paths = document.getElementsByTagName("path");
+        
+        assertEquals(2, styles.getLength());
+        assertEquals(
+            ".s0{fill:none;stroke:#0000ff;stroke-width:1.5;"
+                    + "stroke-linecap:butt;stroke-linejoin:miter;"
+                    + "stroke-miterlimit:10;stroke-dasharray:2,1}",
+            styles.item(0).getTextContent());
+        assertEquals(4, paths.getLength());
+        
+        for (int i : new int[] { 0, 2, 3 }) {
+            assertEquals("s0", ((Element) paths.item(i)).getAttribute("class"));
+        }
+        
+        assertEquals("s1", ((Element) paths.item(1)).getAttribute("class"));
+    }
+    
+    @Test
+    public void elementsOutsideImageAreNotWritten() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        try (SvgCanvas canvas = canvas(out)) {
+            canvas.drawPolyLine(
+                new OpenPolyLine(new double[] { 300, 10, 400, 20 }),
+                new LineStyle(1, Color.BLACK));
+            canvas.drawPolygon(
+                new Polygon(new ClosedPolyLine(new double[] { 0, 200, 50,
+                        200, 50, 250 })),
+                Color.RED);
+        }
+        
+        assertEquals(0, document(out).getElementsByTagName("path").getLength());
+    }
+}
@@ -0,0 +1,98 @@
+package ch.epfl.imhof.painting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+public class OurTiledJava2DCanvasTest {
+    @Test
+    public void tiledImageIsSameAsSingleOne() {
+        checkTiledImageIsSameAsSingleOne(0);
+    }
+    
+    @Test
+    public void tiledImageIsSameAsSingleOneWhenSimplified() {
+        checkTiledImageIsSameAsSingleOne(Java2DCanvas.SIMPLIFICATION_TOLERANCE);
+    }
+    
+    private static void checkTiledImageIsSameAsSingleOne(double tolerance) {
+        Point bl = new Point(0, 0);
+        Point tr = new Point(500, 400);
+        Map.Builder builder = new Map.Builder();
+        Attributes attributes = new Attributes.Builder().build();
+        PolyLine.Builder star = new PolyLine.Builder();
+        PolyLine.Builder hole = new PolyLine.Builder();
+        PolyLine.Builder zigzag = new PolyLine.Builder();
+        
+        for (int i = 0; i < 60; ++i) {
+            double angle = 2 * Math.PI * i / 60;
+            double radius = i % 2 == 0 ? 230 : 80;
+            
+            star.addPoint(
+                250 + radius * Math.cos(angle),
+                200 + radius * Math.sin(angle));
+            hole.addPoint(
+                250 + 30 * Math.cos(-angle),
+                200 + 30 * Math.sin(-angle));
+            zigzag.addPoint(-20 + 9 * i, i % 2 == 0 ? 60 : 340);
+        }
+        
+        Polygon polygon = new Polygon(star.buildClosed(), Arrays.asList(hole
+            .buildClosed()));
+        
+        builder.addPolygon(new Attributed<>(polygon, attributes));
+        builder.addPolyLine(new Attributed<>(zigzag.buildOpen(), attributes));
+        
+        Map map = builder.build();
+        LineStyle mitered = new LineStyle(3, Color.RED)
+            .withJoin(LineStyle.LineJoin.MITER);
+        LineStyle dashed = new LineStyle(1, Color.BLACK)
+            .withDashingPattern(new float[] { 4, 3 });
+        Painter painter = Painter
+            .line(mitered)
+            .above(Painter.line(dashed))
+            .above(Painter.outline(2, Color.BLUE))
+            .above(Painter.polygon(Color.GREEN));
+        
+        Java2DCanvas single = new Java2DCanvas(
+            bl,
+            tr,
+            1250,
+            1000,
+            180,
+            Color.WHITE,
+            tolerance);
+        TiledJava2DCanvas tiled = new TiledJava2DCanvas(
+            bl,
+            tr,
+            1250,
+            1000,
+            180,
+            Color.WHITE,
+            tolerance);
+        
+        painter.drawMap(map, single);
+        tiled.drawMap(painter, map, 20);
+        
+        int different = 0;
+        
+        for (int x = 0; x < 1250; ++x) {
+            for (int y = 0; y < 1000; ++y) {
+                if (single.image().getRGB(x, y) != tiled.image().getRGB(x, y)) {
+                    ++different;
+                }
+            }
+        }
+        
+        assertEquals(0, different);
+    }
+}
@@ -0,0 +1,154 @@
+package ch.epfl.imhof.projection;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.PointGeo;
+import ch.epfl.imhof.geometry.Point;
+
+public class OurCH1903ProjectionTest {
+    private static final Projection PROJECTION = new CH1903Projection();
+    
+    @Test
+    public void projectGivesSameResultAsOriginalFormulas() {
+        for (PointGeo p : randomPoints(1000)) {
+            Point actual = PROJECTION.project(p);
+            Point expected = originalProject(p);
+            
+            assertEquals(expected.x(), actual.x(), 1e-6);
+            assertEquals(expected.y(), actual.y(), 1e-6);
+        }
+    }
+    
+    @Test
+    public void inverseGivesSameResultAsOriginalFormulas() {
+        for (PointGeo p : randomPoints(1000)) {
+            Point point = PROJECTION.project(p);
+            PointGeo actual = PROJECTION.inverse(point);
+            PointGeo expected = originalInverse(point);
+            
+            assertEquals(expected.longitude(), actual.longitude(), 1e-12);
+            assertEquals(expected.latitude(), actual.latitude(), 1e-12);
+        }
+    }
+    
+    @Test
+    public void projectArrayGivesSameResultAsProject() {
+        PointGeo[] points = randomPoints(100);
+        double[] coordinates = new double[2 * points.length + 2];
+        
+        for (int i = 0; i < points.length; ++i) {
+            coordinates[2 * i + 1] = points[i].longitude();
+            coordinates[2 * i + 2] = points[i].latitude();
+        }
+        
+        PROJECTION.project(coordinates, 1, points.length);
+        
+        for (int i = 0; i < points.length; ++i) {
+            Point expected = PROJECTION.project(points[i]);
+            
+            assertEquals(expected.x(), coordinates[2 * i + 1], 0);
+            assertEquals(expected.y(), coordinates[2 * i + 2], 0);
+        }
+        
+        assertEquals(0, coordinates[0], 0);
+    }
+    
+    @Test
+    public void inverseArrayGivesSameResultAsInverse() {
+        PointGeo[] points = randomPoints(100);
+        double[] coordinates = new double[2 * points.length];
+        
+        for (int i = 0; i < points.length; ++i) {
+            Point point = PROJECTION.project(points[i]);
+            coordinates[2 * i] = point.x();
+            coordinates[2 * i + 1] = point.y();
+        }
+        
+        PROJECTION.inverse(coordinates, 0, points.length);
+        
+        for (int i = 0; i < points.length; ++i) {
+            PointGeo expected = PROJECTION.inverse(PROJECTION
+                .project(points[i]));
+            
+            assertEquals(expected.longitude(), coordinates[2 * i], 0);
+            assertEquals(expected.latitude(), coordinates[2 * i + 1], 0);
+        }
+    }
+    
+    @Test
+    public void defaultArrayMethodsUseSinglePointMethods() {
+        // Only implements the single point methods.
+        Projection projection = new Projection() {
+            @Override
+            public Point project(PointGeo point) {
+                return PROJECTION.project(point);
+            }
+            
+            @Override
+            public PointGeo inverse(Point point) {
+                return PROJECTION.inverse(point);
+            }
+        };
+        PointGeo p = randomPoints(1)[0];
+        double[] coordinates = { p.longitude(), p.latitude() };
+        Point expected = PROJECTION.project(p);
+        
+        projection.project(coordinates, 0, 1);
+        assertEquals(expected.x(), coordinates[0], 0);
+        assertEquals(expected.y(), coordinates[1], 0);
+        
+        PointGeo inverse = PROJECTION.inverse(expected);
+        
+        projection.inverse(coordinates, 0, 1);
+        assertEquals(inverse.longitude(), coordinates[0], 0);
+        assertEquals(inverse.latitude(), coordinates[1], 0);
+    }
+    
+    // Points in and around Switzerland.
+    private static PointGeo[] randomPoints(int n) {
+        Random random = new Random(1);
+        PointGeo[] points = new PointGeo[n];
+        
+        for (int i = 0; i < n; ++i) {
+            points[i] = new PointGeo(
+                Math.toRadians(5.5 + 5 * random.nextDouble()),
+                Math.toRadians(45.5 + 2.5 * random.nextDouble()));
+        }
+        
+        return points;
+    }
+    
+    private static Point originalProject(PointGeo point) {
+        double lambda = Math.toDegrees(point.longitude());
+        double phi = Math.toDegrees(point.latitude());
+        double lambda1 = 1 / 10000.0 * (lambda * 3600.0 - 26782.5);
+        double phi1 = 1 / 10000.0 * (phi * 3600.0 - 169028.66);
+        double x = 600072.37 + 211455.93 * lambda1 - 10938.51 * lambda1
+                * phi1 - 0.36 * lambda1 * Math.pow(phi1, 2.0) - 44.54
+                * Math.pow(lambda1, 3.0);
+        double y = 200147.07 + 308807.95 * phi1 + 3745.25
+                * Math.pow(lambda1, 2.0) + 76.63 * Math.pow(phi1, 2.0)
+                - 194.56 * Math.pow(lambda1, 2.0) * phi1 + 119.79
+                * Math.pow(phi1, 3.0);
+        
+        return new Point(x, y);
+    }
+    
+    private static PointGeo originalInverse(Point point) {
+        double x1 = (point.x() - 600000.0) / 1000000.0;
+        double y1 = (point.y() - 200000.0) / 1000000.0;
+        double lambda0 = 2.6779094 + 4.728982 * x1 + 0.791484 * x1 * y1
+                + 0.1306 * x1 * Math.pow(y1, 2.0) - 0.0436 * Math.pow(x1, 3.0);
+        double phi0 = 16.9023892 + 3.238272 * y1 - 0.270978
+                * Math.pow(x1, 2.0) - 0.002528 * Math.pow(y1, 2.0) - 0.0447
+                * Math.pow(x1, 2.0) * y1 - 0.0140 * Math.pow(y1, 3.0);
+        
+        return new PointGeo(
+            Math.toRadians(lambda0 * (100.0 / 36.0)),
+            Math.toRadians(phi0 * (100.0 / 36.0)));
+    }
+}
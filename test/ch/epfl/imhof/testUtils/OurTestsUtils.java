@@ -15,6 +15,7 @@ import org.xml.sax.SAXException;
 import ch.epfl.imhof.Map;
 import ch.epfl.imhof.osm.OSMMap;
 import ch.epfl.imhof.osm.OSMMapReader;
+import ch.epfl.imhof.osm.OSMPbfReader;
 import ch.epfl.imhof.osm.OSMToGeoTransformer;
 import ch.epfl.imhof.projection.CH1903Projection;
 import ch.epfl.imhof.projection.Projection;
@@ -25,6 +26,11 @@ public class OurTestsUtils {
     public static OSMMap readOSMFile(final String fileName) throws IOException,
             SAXException {
         assumeFileExists(fileName);
+        
+        if (fileExtension(fileName).equals("pbf")) {
+            return OSMPbfReader.readOSMFile(fileName);
+        }
+        
         final boolean unGZip = fileExtension(fileName).equals("gz");
         return OSMMapReader.readOSMFile(fileName, unGZip);
     }
@@ -36,6 +42,17 @@ public class OurTestsUtils {
         return new OSMToGeoTransformer(proj).transform(map);
     }
     
+    public static Map readOSMFileToMapStreaming(String path)
+            throws IOException, SAXException {
+        assumeFileExists(path);
+        final boolean unGZip = fileExtension(path).equals("gz");
+        Projection proj = new CH1903Projection();
+        return OSMMapReader.readOSMFileToMap(
+            path,
+            unGZip,
+            new OSMToGeoTransformer(proj));
+    }
+    
     private static void assumeFileExists(final String fileName) {
         // Conditionally ignoring tests in JUnit 4
         // http://stackoverflow.com/a/1689309